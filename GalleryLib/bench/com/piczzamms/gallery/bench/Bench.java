@@ -0,0 +1,291 @@
+package com.piczzamms.gallery.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks of the core package and compares them with a saved baseline.
+ *
+ * The core package has no Android dependencies, so this builds and runs on a plain JDK, from
+ * GalleryLib:
+ *
+ * <pre>
+ * javac -d bench/out src/com/piczzamms/gallery/core/*.java bench/com/piczzamms/gallery/bench/*.java
+ * java -cp bench/out com.piczzamms.gallery.bench.Bench [-update] [name filter]
+ * </pre>
+ *
+ * Each case runs in FORKS fresh JVMs, so one case's garbage and JIT decisions can't slow down the
+ * next. In each it is calibrated to take about ITERATION_MS per iteration, warmed up, then timed
+ * over ITERATIONS iterations. The median of the forks' median times per operation is compared
+ * with bench/baseline.txt and the run exits with status 1 if any case is more than TOLERANCE
+ * times slower, both in that run and in a second one. Times below NOISE_FLOOR_NS are compared as
+ * NOISE_FLOOR_NS. -update saves the results as the new baseline instead; do that on the machine
+ * that runs the check.
+ */
+public class Bench
+{
+	public static abstract class Case
+	{
+		final String	mName;
+
+		protected Case(String name)
+		{
+			mName = name;
+		}
+
+		/**
+		 * Perform ops operations.
+		 *
+		 * @return a value derived from the results, so the work can't be optimized away.
+		 */
+		protected abstract long run(int ops) throws Exception;
+
+		protected void setUp() throws Exception
+		{
+		}
+
+		protected void tearDown() throws Exception
+		{
+		}
+	}
+
+	static final String		BASELINE		= "bench/baseline.txt";
+	static final int		FORKS			= 3;
+	static final int		ITERATION_MS	= 50;
+	static final int		ITERATIONS		= 21;
+	// A few nanoseconds either way is timer and scheduling noise rather than a regression.
+	static final double		NOISE_FLOOR_NS	= 10;
+	static final double		TOLERANCE		= 1.5;
+	static final int		WARMUP			= 15;
+
+	static volatile long	sSink;
+
+	static List<Case> allCases()
+	{
+		ArrayList<Case> cases = new ArrayList<Case>();
+		cases.addAll(MergeBench.cases());
+		cases.addAll(CacheBench.cases());
+		cases.addAll(LoaderQueueBench.cases());
+		return cases;
+	}
+
+	/**
+	 * Measure a case in FORKS fresh JVMs, each running this class with -child.
+	 *
+	 * @return the median of their median times per operation, in nanoseconds.
+	 */
+	static double fork(Case c) throws Exception
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		double[] results = new double[FORKS];
+
+		for (int i = 0; i < FORKS; i++)
+		{
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					Bench.class.getName(), "-child", c.mName);
+			builder.redirectErrorStream(true);
+			Process process = builder.start();
+			StringBuilder output = new StringBuilder();
+			String last = null;
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			try
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					output.append(line).append('\n');
+					last = line;
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+			if (process.waitFor() != 0 || last == null)
+			{
+				throw new IOException(c.mName + " failed:\n" + output);
+			}
+			results[i] = Double.parseDouble(last.trim());
+		}
+		Arrays.sort(results);
+		return results[FORKS / 2];
+	}
+
+	static TreeMap<String, Double> load(File file) throws IOException
+	{
+		TreeMap<String, Double> values = new TreeMap<String, Double>();
+		if (!file.exists())
+		{
+			return values;
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+				{
+					continue;
+				}
+				int split = line.lastIndexOf(' ');
+				values.put(line.substring(0, split).trim(), Double.valueOf(line.substring(split + 1)));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return values;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		boolean update = false;
+		String filter = null;
+
+		if (args.length == 2 && args[0].equals("-child"))
+		{
+			// Measure a single case and print its time for fork() to read.
+			for (Case c : allCases())
+			{
+				if (c.mName.equals(args[1]))
+				{
+					System.out.println(measure(c));
+					return;
+				}
+			}
+			System.exit(2);
+		}
+		for (String arg : args)
+		{
+			if (arg.equals("-update"))
+			{
+				update = true;
+			}
+			else
+			{
+				filter = arg;
+			}
+		}
+		File file = new File(BASELINE);
+		TreeMap<String, Double> baseline = load(file);
+		TreeMap<String, Double> results = new TreeMap<String, Double>(baseline);
+		int regressions = 0;
+
+		for (Case c : allCases())
+		{
+			if (filter != null && !c.mName.contains(filter))
+			{
+				continue;
+			}
+			double nsPerOp = fork(c);
+			Double base = baseline.get(c.mName);
+			String verdict = "";
+
+			if (!update && base != null && ratio(nsPerOp, base) > TOLERANCE)
+			{
+				// A slow run on a busy machine is common; a regression shows up every time.
+				nsPerOp = Math.min(nsPerOp, fork(c));
+			}
+			results.put(c.mName, nsPerOp);
+
+			if (base != null)
+			{
+				double ratio = ratio(nsPerOp, base);
+				verdict = String.format(Locale.US, "%6.2fx", ratio);
+				if (ratio > TOLERANCE)
+				{
+					verdict += "  REGRESSION";
+					regressions++;
+				}
+			}
+			System.out.println(String.format(Locale.US, "%-40s %14.1f ns/op  %s", c.mName, nsPerOp, verdict));
+		}
+		if (update)
+		{
+			save(file, results);
+			System.out.println("baseline saved to " + file);
+		}
+		else if (regressions > 0)
+		{
+			System.out.println(regressions + " case(s) slower than " + TOLERANCE + "x baseline");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the median time per operation, in nanoseconds.
+	 */
+	static double measure(Case c) throws Exception
+	{
+		c.setUp();
+		try
+		{
+			int ops = 1;
+			while (true)
+			{
+				long start = System.nanoTime();
+				sSink += c.run(ops);
+				long elapsed = System.nanoTime() - start;
+				if (elapsed >= ITERATION_MS * 1000000L / 4 || ops >= 1 << 28)
+				{
+					ops = (int) Math.max(1, Math.min(1 << 28, ops * (ITERATION_MS * 1000000L) / Math.max(1, elapsed)));
+					break;
+				}
+				ops *= 2;
+			}
+			for (int i = 0; i < WARMUP; i++)
+			{
+				sSink += c.run(ops);
+			}
+			double[] times = new double[ITERATIONS];
+			for (int i = 0; i < ITERATIONS; i++)
+			{
+				long start = System.nanoTime();
+				sSink += c.run(ops);
+				times[i] = (double) (System.nanoTime() - start) / ops;
+			}
+			Arrays.sort(times);
+			return times[ITERATIONS / 2];
+		}
+		finally
+		{
+			c.tearDown();
+		}
+	}
+
+	static double ratio(double nsPerOp, double base)
+	{
+		return Math.max(nsPerOp, NOISE_FLOOR_NS) / Math.max(base, NOISE_FLOOR_NS);
+	}
+
+	static void save(File file, TreeMap<String, Double> results) throws IOException
+	{
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try
+		{
+			writer.println("# Median ns/op per case, written by Bench -update.");
+			for (String name : results.keySet())
+			{
+				writer.println(String.format(Locale.US, "%-40s %.1f", name, results.get(name)));
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
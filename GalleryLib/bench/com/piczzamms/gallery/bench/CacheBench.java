@@ -0,0 +1,182 @@
+package com.piczzamms.gallery.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import com.piczzamms.gallery.core.LruCache;
+import com.piczzamms.gallery.core.PositionCache;
+
+/**
+ * Image cache traffic: LruCache get-or-put from 1 to 8 threads, sized like BaseImageList's cache
+ * with a working set four times larger, and the viewer's PositionCache stepping back and forth.
+ */
+public class CacheBench
+{
+	static class LruCase extends Bench.Case
+	{
+		LruCache<Object>	mCache;
+		final int			mThreads;
+		final Object		mValue	= new Object();
+		Worker[]			mWorkers;
+		CyclicBarrier		mStart;
+		CyclicBarrier		mDone;
+
+		LruCase(int threads)
+		{
+			super("cache.lru.threads" + threads);
+			mThreads = threads;
+		}
+
+		@Override
+		protected long run(int ops) throws Exception
+		{
+			for (Worker worker : mWorkers)
+			{
+				worker.mOps = ops / mThreads;
+			}
+			mStart.await();
+			mDone.await();
+			long sum = 0;
+			for (Worker worker : mWorkers)
+			{
+				sum += worker.mResult;
+			}
+			return sum;
+		}
+
+		@Override
+		protected void setUp()
+		{
+			mCache = new LruCache<Object>(CAPACITY);
+			mStart = new CyclicBarrier(mThreads + 1);
+			mDone = new CyclicBarrier(mThreads + 1);
+			mWorkers = new Worker[mThreads];
+			for (int i = 0; i < mThreads; i++)
+			{
+				mWorkers[i] = new Worker(this, i);
+				mWorkers[i].start();
+			}
+		}
+
+		@Override
+		protected void tearDown() throws Exception
+		{
+			for (Worker worker : mWorkers)
+			{
+				worker.mOps = -1;
+			}
+			mStart.await();
+			for (Worker worker : mWorkers)
+			{
+				worker.join();
+			}
+		}
+	}
+
+	static class PositionCase extends Bench.Case
+	{
+		PositionCache<Object>	mCache;
+		final Object			mValue	= new Object();
+
+		PositionCase()
+		{
+			super("cache.position.step");
+		}
+
+		@Override
+		protected long run(int ops)
+		{
+			long sum = 0;
+			for (int i = 0; i < ops; i++)
+			{
+				// Forward through the list, with a step back every fourth image.
+				int pos = i - ((i & 3) == 3 ? 2 : 0);
+				if (!mCache.contains(pos))
+				{
+					mCache.put(pos, mValue);
+				}
+				sum += mCache.get(pos) == mValue ? 1 : 0;
+			}
+			return sum;
+		}
+
+		@Override
+		protected void setUp()
+		{
+			mCache = new PositionCache<Object>(3);
+		}
+	}
+
+	static class Worker extends Thread
+	{
+		final LruCase	mCase;
+		final int		mId;
+		volatile int	mOps;
+		long			mResult;
+
+		Worker(LruCase c, int id)
+		{
+			mCase = c;
+			mId = id;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			long seed = 0x9E3779B97F4A7C15L * (mId + 1);
+			try
+			{
+				while (true)
+				{
+					mCase.mStart.await();
+					int ops = mOps;
+					if (ops < 0)
+					{
+						return;
+					}
+					long sum = 0;
+					for (int i = 0; i < ops; i++)
+					{
+						seed ^= seed << 13;
+						seed ^= seed >>> 7;
+						seed ^= seed << 17;
+						// Mostly near the start of the list, as in a grid scrolled about the top.
+						int r = (int) ((seed >>> 1) % KEYS);
+						int key = (i & 1) == 0 ? r / 4 : r;
+						Object value = mCase.mCache.get(key);
+						if (value == null)
+						{
+							mCase.mCache.put(key, mCase.mValue);
+						}
+						else
+						{
+							sum++;
+						}
+					}
+					mResult = sum;
+					mCase.mDone.await();
+				}
+			}
+			catch (Exception ex)
+			{
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
+	static final int	CAPACITY	= 512;
+	static final int	KEYS		= CAPACITY * 4;
+
+	static List<Bench.Case> cases()
+	{
+		ArrayList<Bench.Case> cases = new ArrayList<Bench.Case>();
+		for (int threads = 1; threads <= 8; threads *= 2)
+		{
+			cases.add(new LruCase(threads));
+		}
+		cases.add(new PositionCase());
+		return cases;
+	}
+}
@@ -0,0 +1,129 @@
+package com.piczzamms.gallery.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.piczzamms.gallery.core.WorkQueue;
+
+/**
+ * The thumbnail loader's queue under fling-like churn: each operation queues a row of cells
+ * coming into view and cancels the row that left it three rows earlier, while a worker drains the
+ * queue. A second case queues a screenful and clears it, as leaving the grid does.
+ */
+public class LoaderQueueBench
+{
+	static class ClearCase extends Bench.Case
+	{
+		WorkQueue<Object, Object>	mQueue;
+
+		ClearCase()
+		{
+			super("queue.clear.screen");
+		}
+
+		@Override
+		protected long run(int ops)
+		{
+			long sum = 0;
+			for (int i = 0; i < ops; i++)
+			{
+				for (int j = 0; j < SCREEN; j++)
+				{
+					mQueue.add(KEYS[j], KEYS[j]);
+				}
+				sum += mQueue.clear().size();
+			}
+			return sum;
+		}
+
+		@Override
+		protected void setUp()
+		{
+			mQueue = new WorkQueue<Object, Object>();
+		}
+	}
+
+	static class FlingCase extends Bench.Case
+	{
+		WorkQueue<Object, Object>	mQueue;
+		Thread						mWorker;
+
+		FlingCase()
+		{
+			super("queue.fling.row" + ROW);
+		}
+
+		@Override
+		protected long run(int ops)
+		{
+			long sum = 0;
+			for (int i = 0; i < ops; i++)
+			{
+				int row = i % (KEYS.length / ROW);
+				for (int j = 0; j < ROW; j++)
+				{
+					mQueue.add(KEYS[row * ROW + j], KEYS[row * ROW + j]);
+				}
+				int gone = (row + KEYS.length / ROW - 3) % (KEYS.length / ROW);
+				for (int j = 0; j < ROW; j++)
+				{
+					if (mQueue.cancel(KEYS[gone * ROW + j]) != null)
+					{
+						sum++;
+					}
+				}
+			}
+			return sum;
+		}
+
+		@Override
+		protected void setUp()
+		{
+			mQueue = new WorkQueue<Object, Object>();
+			mWorker = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					// Stands in for a decode, long enough for work to back up.
+					while (mQueue.take() != null)
+					{
+						long end = System.nanoTime() + 2000;
+						while (System.nanoTime() < end)
+						{
+						}
+					}
+				}
+			};
+			mWorker.setDaemon(true);
+			mWorker.start();
+		}
+
+		@Override
+		protected void tearDown() throws InterruptedException
+		{
+			mQueue.close();
+			mWorker.join();
+		}
+	}
+
+	static final Object[]	KEYS	= new Object[256];
+	static final int		ROW		= 4;
+	static final int		SCREEN	= 24;
+
+	static
+	{
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			KEYS[i] = new Object();
+		}
+	}
+
+	static List<Bench.Case> cases()
+	{
+		ArrayList<Bench.Case> cases = new ArrayList<Bench.Case>();
+		cases.add(new FlingCase());
+		cases.add(new ClearCase());
+		return cases;
+	}
+}
@@ -0,0 +1,169 @@
+package com.piczzamms.gallery.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.piczzamms.gallery.core.MergeIndex;
+
+/**
+ * Random position lookups in merged lists, as ImageListUber does them for the grid.
+ *
+ * Lists of 1k to 100k items are split between sublists in four patterns: items alternating one
+ * at a time between two lists, runs of 100 across three lists, a photo library with one video for
+ * every hundred photos, and one where the second list has a single item in ten thousand. Cold
+ * cases merge from scratch for every lookup, warm ones look up positions in a fully merged index,
+ * and snapshot ones in a snapshot of it, the way ImageListUber's readers do.
+ */
+public class MergeBench
+{
+	static class ArraySource implements MergeIndex.Source
+	{
+		final long[]	mKeys;
+
+		ArraySource(long[] keys)
+		{
+			mKeys = keys;
+		}
+
+		public int getCount()
+		{
+			return mKeys.length;
+		}
+
+		public long getKey(int position)
+		{
+			return mKeys[position];
+		}
+	}
+
+	static class LookupCase extends Bench.Case
+	{
+		MergeIndex				mIndex;
+		final String			mMode;
+		int						mNext;
+		final String			mPattern;
+		int[]					mPositions;
+		final int				mSize;
+		MergeIndex.Snapshot		mSnapshot;
+		MergeIndex.Source[]		mSources;
+
+		LookupCase(String mode, String pattern, int size)
+		{
+			super("merge." + mode + "." + pattern + "." + size);
+			mMode = mode;
+			mPattern = pattern;
+			mSize = size;
+		}
+
+		@Override
+		protected long run(int ops)
+		{
+			long sum = 0;
+			for (int i = 0; i < ops; i++)
+			{
+				if (mSnapshot != null)
+				{
+					sum += mSnapshot.locate(mPositions[mNext]);
+				}
+				else
+				{
+					if (mMode.equals("cold"))
+					{
+						mIndex.reset();
+					}
+					sum += mIndex.locate(mPositions[mNext]);
+				}
+				mNext = (mNext + 1) % mPositions.length;
+			}
+			return sum;
+		}
+
+		@Override
+		protected void setUp()
+		{
+			mSources = sources(mPattern, mSize);
+			mIndex = new MergeIndex(mSources, false);
+			if (!mMode.equals("cold"))
+			{
+				mIndex.mergeTo(mSize);
+			}
+			mSnapshot = mMode.equals("snapshot") ? mIndex.snapshot() : null;
+			mPositions = new int[4096];
+			long seed = 0x2545F4914F6CDD1DL;
+			for (int i = 0; i < mPositions.length; i++)
+			{
+				seed ^= seed << 13;
+				seed ^= seed >>> 7;
+				seed ^= seed << 17;
+				mPositions[i] = (int) ((seed >>> 1) % mSize);
+			}
+		}
+	}
+
+	static final String[]	MODES		= { "cold", "warm", "snapshot" };
+	static final String[]	PATTERNS	= { "alternate", "dominant", "runs", "unbalanced" };
+	static final int[]		SIZES		= { 1000, 10000, 100000 };
+
+	static List<Bench.Case> cases()
+	{
+		ArrayList<Bench.Case> cases = new ArrayList<Bench.Case>();
+		for (String pattern : PATTERNS)
+		{
+			for (int size : SIZES)
+			{
+				for (String mode : MODES)
+				{
+					cases.add(new LookupCase(mode, pattern, size));
+				}
+			}
+		}
+		return cases;
+	}
+
+	/**
+	 * Split size descending keys between sublists in the given pattern.
+	 */
+	static MergeIndex.Source[] sources(String pattern, int size)
+	{
+		int lists = pattern.equals("runs") ? 3 : 2;
+		int[] owner = new int[size];
+		int[] counts = new int[lists];
+
+		for (int i = 0; i < size; i++)
+		{
+			if (pattern.equals("alternate"))
+			{
+				owner[i] = i % 2;
+			}
+			else if (pattern.equals("runs"))
+			{
+				owner[i] = (i / 100) % 3;
+			}
+			else if (pattern.equals("dominant"))
+			{
+				owner[i] = i % 10000 == 9999 ? 1 : 0;
+			}
+			else
+			{
+				owner[i] = i % 100 == 99 ? 1 : 0;
+			}
+			counts[owner[i]]++;
+		}
+		long[][] keys = new long[lists][];
+		for (int l = 0; l < lists; l++)
+		{
+			keys[l] = new long[counts[l]];
+			counts[l] = 0;
+		}
+		for (int i = 0; i < size; i++)
+		{
+			keys[owner[i]][counts[owner[i]]++] = (size - i) * 1000L;
+		}
+		MergeIndex.Source[] sources = new MergeIndex.Source[lists];
+		for (int l = 0; l < lists; l++)
+		{
+			sources[l] = new ArraySource(keys[l]);
+		}
+		return sources;
+	}
+}
@@ -19,21 +19,27 @@ package com.piczzamms.gallery.activities;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.concurrent.CountDownLatch;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.provider.MediaStore;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.view.Window;
@@ -45,6 +51,7 @@ import com.piczzamms.gallery.data.ImageManager;
 import com.piczzamms.gallery.data.parts.IImage;
 import com.piczzamms.gallery.data.parts.IImageList;
 import com.piczzamms.gallery.top.GalleryApplication;
+import com.piczzamms.gallery.top.GalleryMetrics;
 import com.piczzamms.gallery.ui.CropImageView;
 import com.piczzamms.gallery.ui.HighlightView;
 import com.piczzamms.gallery.util.MenuHelper;
@@ -52,10 +59,16 @@ import com.piczzamms.gallery.util.Util;
 
 /**
  * The activity can crop specific region of interest from an image.
+ *
+ * The crop UI works on a preview decoded to roughly the size of the screen. When the result is
+ * saved, the crop rectangle is mapped back to the original file and only that region is decoded,
+ * so the full resolution image is never held in memory.
  */
 public class CropImage extends MonitoredActivity
 {
 	static final String			TAG					= "CropImage";
+	/** Upper bound for a saved crop when no output size is requested. */
+	static final int			CROP_MAX_PIXELS		= 3 * 1024 * 1024;
 	public static final String	EXTRA_SQUARE_CROP	= "square_crop";
 	public static final String	EXTRA_ADD_ANOTHER	= "add_another";
 	public static final String	EXTRA_OUTPUT_FILE	= "output_file";
@@ -153,11 +166,238 @@ public class CropImage extends MonitoredActivity
 	IImage					mImage;
 	Typeface				mAltFont;
 
+	// The original image as stored in the file, before rotation. Zero when unknown, in which case
+	// crops are taken from the preview.
+	int						mSourceWidth, mSourceHeight;
+	int						mSourceDegrees;
+	// The saved crop in the coordinates of the original image, reported back to the caller.
+	Rect					mSavedCropRect;
+
+	/**
+	 * Crop the given rectangle of the preview, from the original file if fullSize is set and that is
+	 * possible, otherwise from the preview itself.
+	 */
+	Bitmap cropImage(Rect r, boolean fullSize)
+	{
+		Bitmap b = null;
+		if (fullSize && mSourceWidth > 0 && mSourceHeight > 0
+				&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1)
+		{
+			b = cropFromSource(r);
+		}
+		if (b == null)
+		{
+			b = cropFromPreview(r);
+		}
+		return b;
+	}
+
+	Bitmap cropFromPreview(Rect r)
+	{
+		Bitmap croppedImage;
+
+		// If the output is required to a specific size, create an new image
+		// with the cropped image in the center and the extra space filled.
+		if (mOutputX != 0 && mOutputY != 0 && !mScale)
+		{
+			// Don't scale the image but instead fill it so it's the
+			// required dimension
+			croppedImage = Bitmap.createBitmap(mOutputX, mOutputY, Bitmap.Config.RGB_565);
+			Canvas canvas = new Canvas(croppedImage);
+
+			Rect srcRect = new Rect(r);
+			Rect dstRect = new Rect(0, 0, mOutputX, mOutputY);
+			insetToFit(srcRect, dstRect);
+
+			// Draw the cropped bitmap in the center
+			canvas.drawBitmap(mBitmap, srcRect, dstRect, null);
+		}
+		else
+		{
+			int width = r.width();
+			int height = r.height();
+
+			// If we are circle cropping, we want alpha channel, which is the
+			// third param here.
+			croppedImage = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+
+			Canvas canvas = new Canvas(croppedImage);
+			Rect dstRect = new Rect(0, 0, width, height);
+			canvas.drawBitmap(mBitmap, r, dstRect, null);
+
+			// If the required dimension is specified, scale the image.
+			if (mOutputX != 0 && mOutputY != 0 && mScale)
+			{
+				croppedImage = Util.transform(new Matrix(), croppedImage, mOutputX, mOutputY, mScaleUp,
+						Util.RECYCLE_INPUT);
+			}
+		}
+		return croppedImage;
+	}
+
+	Bitmap cropFromSource(Rect r)
+	{
+		if (mOutputX != 0 && mOutputY != 0 && !mScale)
+		{
+			// Same layout as the preview crop, but with the source pixels scaled into place.
+			Rect srcRect = new Rect(r);
+			Rect dstRect = new Rect(0, 0, mOutputX, mOutputY);
+			insetToFit(srcRect, dstRect);
+
+			Bitmap region = decodeSource(srcRect, Math.max(dstRect.width(), dstRect.height()));
+			if (region == null)
+			{
+				return null;
+			}
+			Bitmap croppedImage = Bitmap.createBitmap(mOutputX, mOutputY, Bitmap.Config.RGB_565);
+			Canvas canvas = new Canvas(croppedImage);
+			canvas.drawBitmap(region, null, dstRect, null);
+			region.recycle();
+			return croppedImage;
+		}
+		boolean scale = mOutputX != 0 && mOutputY != 0 && mScale;
+		Bitmap croppedImage = decodeSource(r, scale ? Math.max(mOutputX, mOutputY) : IImage.UNCONSTRAINED);
+
+		if (croppedImage != null && scale)
+		{
+			croppedImage = Util.transform(new Matrix(), croppedImage, mOutputX, mOutputY, mScaleUp,
+					Util.RECYCLE_INPUT);
+		}
+		return croppedImage;
+	}
+
+	@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+	Bitmap decodeRegion(Rect rect, int sampleSize)
+	{
+		InputStream input = mImage.getFullSizeImageData();
+		if (input == null)
+		{
+			return null;
+		}
+		try
+		{
+			BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(input, false);
+			try
+			{
+				BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inSampleSize = sampleSize;
+				options.inPreferredConfig = Bitmap.Config.RGB_565;
+				return decoder.decodeRegion(rect, options);
+			}
+			finally
+			{
+				decoder.recycle();
+			}
+		}
+		catch (IOException ex)
+		{
+			Log.e(TAG, "Cannot decode region of " + mImage, ex);
+			return null;
+		}
+		catch (OutOfMemoryError ex)
+		{
+			Log.e(TAG, "Got oom decoding region of " + mImage, ex);
+			return null;
+		}
+		finally
+		{
+			Util.closeSilently(input);
+		}
+	}
+
+	/**
+	 * Decode the area of the original image under the given preview rectangle, at least minSide on
+	 * its short side if possible and never more than CROP_MAX_PIXELS. The result is rotated the same
+	 * way as the preview.
+	 */
+	Bitmap decodeSource(Rect r, int minSide)
+	{
+		Rect rect = mapToSource(r);
+		if (rect.isEmpty())
+		{
+			return null;
+		}
+		BitmapFactory.Options bounds = new BitmapFactory.Options();
+		bounds.outWidth = rect.width();
+		bounds.outHeight = rect.height();
+		int sampleSize = Util.computeSampleSize(bounds, minSide, CROP_MAX_PIXELS);
+
+		Bitmap b = decodeRegion(rect, sampleSize);
+		if (b != null)
+		{
+			b = Util.rotate(b, mSourceDegrees);
+		}
+		return b;
+	}
+
+	// If the source is too big, use its center part. If the destination is too big, use its center
+	// part.
+	static void insetToFit(Rect srcRect, Rect dstRect)
+	{
+		int dx = (srcRect.width() - dstRect.width()) / 2;
+		int dy = (srcRect.height() - dstRect.height()) / 2;
+
+		srcRect.inset(Math.max(0, dx), Math.max(0, dy));
+		dstRect.inset(Math.max(0, -dx), Math.max(0, -dy));
+	}
+
 	public boolean isSaving()
 	{
 		return mSaving;
 	}
 
+	/**
+	 * Build the matrix taking preview coordinates to the original image, either as displayed or, if
+	 * toFile is set, as stored in the file before rotation.
+	 */
+	Matrix mapFromPreview(boolean toFile)
+	{
+		boolean swap = (mSourceDegrees % 180) != 0;
+		float fullWidth = swap ? mSourceHeight : mSourceWidth;
+		float fullHeight = swap ? mSourceWidth : mSourceHeight;
+
+		Matrix m = new Matrix();
+		m.setScale(fullWidth / mBitmap.getWidth(), fullHeight / mBitmap.getHeight());
+		if (toFile && mSourceDegrees != 0)
+		{
+			RectF bounds = new RectF(0, 0, fullWidth, fullHeight);
+			m.postRotate(-mSourceDegrees);
+			Matrix rotate = new Matrix();
+			rotate.setRotate(-mSourceDegrees);
+			rotate.mapRect(bounds);
+			m.postTranslate(-bounds.left, -bounds.top);
+		}
+		return m;
+	}
+
+	// Returns the preview rectangle in the coordinates of the original image, as displayed.
+	Rect mapToFullSize(Rect r)
+	{
+		if (mSourceWidth <= 0 || mSourceHeight <= 0)
+		{
+			return new Rect(r);
+		}
+		RectF rect = new RectF(r);
+		mapFromPreview(false).mapRect(rect);
+		Rect out = new Rect();
+		rect.round(out);
+		return out;
+	}
+
+	// Returns the preview rectangle in the coordinates of the original file, clipped to the image.
+	Rect mapToSource(Rect r)
+	{
+		RectF rect = new RectF(r);
+		mapFromPreview(true).mapRect(rect);
+		Rect out = new Rect();
+		rect.round(out);
+		if (!out.intersect(0, 0, mSourceWidth, mSourceHeight))
+		{
+			out.setEmpty();
+		}
+		return out;
+	}
+
 	@Override
 	public void onCreate(Bundle icicle)
 	{
@@ -219,9 +459,7 @@ public class CropImage extends MonitoredActivity
 			if (mImage != null)
 			{
 				// Don't read in really large bitmaps. Use the (big) thumbnail
-				// instead.
-				// TODO when saving the resulting bitmap use the
-				// decode/crop/encode api so we don't lose any resolution.
+				// until the preview is decoded.
 				mBitmap = mImage.getThumbBitmap(IImage.ROTATE_AS_NEEDED);
 
 				if (mBitmap == null)
@@ -306,9 +544,6 @@ public class CropImage extends MonitoredActivity
 
 	void onSaveClicked(final boolean add_another)
 	{
-		// TODO this code needs to change to use the decode/crop/encode single
-		// step api so that we don't require that the whole (possibly large)
-		// bitmap doesn't have to be read into memory
 		if (mCrop == null)
 		{
 			return;
@@ -318,61 +553,51 @@ public class CropImage extends MonitoredActivity
 			return;
 		mSaving = true;
 
-		Bitmap croppedImage;
+		final Rect cropRect = mCrop.getCropRect();
+		mSavedCropRect = mapToFullSize(cropRect);
 
-		// If the output is required to a specific size, create an new image
-		// with the cropped image in the center and the extra space filled.
-		if (mOutputX != 0 && mOutputY != 0 && !mScale)
-		{
-			// Don't scale the image but instead fill it so it's the
-			// required dimension
-			croppedImage = Bitmap.createBitmap(mOutputX, mOutputY, Bitmap.Config.RGB_565);
-			Canvas canvas = new Canvas(croppedImage);
-
-			Rect srcRect = mCrop.getCropRect();
-			Rect dstRect = new Rect(0, 0, mOutputX, mOutputY);
-
-			int dx = (srcRect.width() - dstRect.width()) / 2;
-			int dy = (srcRect.height() - dstRect.height()) / 2;
-
-			// If the srcRect is too big, use the center part of it.
-			srcRect.inset(Math.max(0, dx), Math.max(0, dy));
-
-			// If the dstRect is too big, use the center part of it.
-			dstRect.inset(Math.max(0, -dx), Math.max(0, -dy));
-
-			// Draw the cropped bitmap in the center
-			canvas.drawBitmap(mBitmap, srcRect, dstRect, null);
+		// Bitmaps returned inline go through a Binder transaction, so they stay at preview
+		// resolution. Saved crops are decoded from the original.
+		Bundle myExtras = getIntent().getExtras();
+		final boolean returnData = myExtras != null
+				&& (myExtras.getParcelable("data") != null || myExtras.getBoolean("return-data"));
 
-			// Release bitmap memory as soon as possible
-			mImageView.clear();
-			mBitmap.recycle();
-		}
-		else
+		final int msdId = R.string.savingImage;
+		Util.startBackgroundJob(this, null, getResources().getString(msdId), new Runnable()
 		{
-			Rect r = mCrop.getCropRect();
-
-			int width = r.width();
-			int height = r.height();
-
-			// If we are circle cropping, we want alpha channel, which is the
-			// third param here.
-			croppedImage = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+			public void run()
+			{
+				long start = GalleryMetrics.start();
+				final Bitmap croppedImage = cropImage(cropRect, !returnData);
 
-			Canvas canvas = new Canvas(croppedImage);
-			Rect dstRect = new Rect(0, 0, width, height);
-			canvas.drawBitmap(mBitmap, r, dstRect, null);
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						onCropped(croppedImage, returnData, add_another);
+					}
+				});
+				if (croppedImage != null && !returnData)
+				{
+					saveOutput(croppedImage, add_another);
+				}
+				GalleryMetrics.end(GalleryMetrics.CROP_SAVE, start);
+			}
+		}, mHandler);
+	}
 
-			// Release bitmap memory as soon as possible
-			mImageView.clear();
-			mBitmap.recycle();
+	void onCropped(Bitmap croppedImage, boolean returnData, boolean add_another)
+	{
+		// Release bitmap memory as soon as possible
+		mImageView.clear();
+		mBitmap.recycle();
 
-			// If the required dimension is specified, scale the image.
-			if (mOutputX != 0 && mOutputY != 0 && mScale)
-			{
-				croppedImage = Util.transform(new Matrix(), croppedImage, mOutputX, mOutputY, mScaleUp,
-						Util.RECYCLE_INPUT);
-			}
+		if (croppedImage == null)
+		{
+			Log.e(TAG, "Cannot crop " + mImage);
+			setResult(RESULT_CANCELED);
+			finish();
+			return;
 		}
 		mImageView.setImageBitmapResetBase(croppedImage, true);
 		mImageView.center(true, true);
@@ -382,9 +607,8 @@ public class CropImage extends MonitoredActivity
 		{
 			mApp.getGalleryFlurry().onAddPicture(this, croppedImage.getWidth(), croppedImage.getHeight());
 		}
-		// Return the cropped image directly or save it to the specified URI.
-		Bundle myExtras = getIntent().getExtras();
-		if (myExtras != null && (myExtras.getParcelable("data") != null || myExtras.getBoolean("return-data")))
+		// Return the cropped image directly; otherwise saveOutput() is already writing it.
+		if (returnData)
 		{
 			Bundle extras = new Bundle();
 			extras.putParcelable("data", croppedImage);
@@ -392,18 +616,6 @@ public class CropImage extends MonitoredActivity
 			setResult(RESULT_OK, (new Intent()).setAction("inline-data").putExtras(extras));
 			finish();
 		}
-		else
-		{
-			final Bitmap b = croppedImage;
-			final int msdId = R.string.savingImage;
-			Util.startBackgroundJob(this, null, getResources().getString(msdId), new Runnable()
-			{
-				public void run()
-				{
-					saveOutput(b, add_another);
-				}
-			}, mHandler);
-		}
 	}
 
 	void saveOutput(Bitmap croppedImage, boolean add_another)
@@ -453,7 +665,7 @@ public class CropImage extends MonitoredActivity
 		else
 		{
 			Bundle extras = new Bundle();
-			extras.putString("rect", mCrop.getCropRect().toString());
+			extras.putString("rect", mSavedCropRect.toString());
 
 			File oldPath = new File(mImage.getDataPath());
 			File directory = new File(oldPath.getParent());
@@ -517,13 +729,24 @@ public class CropImage extends MonitoredActivity
 		}
 		mImageView.setImageBitmapResetBase(mBitmap, true);
 
+		// The preview only needs to cover the screen.
+		DisplayMetrics dm = getResources().getDisplayMetrics();
+		final int maxPixels = dm.widthPixels * dm.heightPixels;
+
 		Runnable runCropAreaDetection = new Runnable()
 		{
 			public void run()
 			{
 				final CountDownLatch latch = new CountDownLatch(1);
-				final Bitmap b = (mImage != null) ? mImage.getFullSizeBitmap(IImage.UNCONSTRAINED, 1024 * 1024)
-						: mBitmap;
+				Bitmap preview = mBitmap;
+				if (mImage != null)
+				{
+					mSourceWidth = mImage.getWidth();
+					mSourceHeight = mImage.getHeight();
+					mSourceDegrees = mImage.getDegreesRotated();
+					preview = mImage.getFullSizeBitmap(IImage.UNCONSTRAINED, maxPixels);
+				}
+				final Bitmap b = preview;
 				mHandler.post(new Runnable()
 				{
 					public void run()
@@ -18,7 +18,6 @@ package com.piczzamms.gallery.activities;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
@@ -40,7 +39,6 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Parcelable;
 import android.provider.MediaStore;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -65,11 +63,15 @@ import android.widget.Toast;
 import com.piczzamms.gallery.R;
 import com.piczzamms.gallery.data.ImageManager;
 import com.piczzamms.gallery.data.ImageManager.DataLocation;
+import com.piczzamms.gallery.data.parts.AsyncImageList;
+import com.piczzamms.gallery.data.parts.BucketIndex;
 import com.piczzamms.gallery.data.parts.IImage;
 import com.piczzamms.gallery.data.parts.IImageList;
+import com.piczzamms.gallery.data.parts.RotationQueue;
 import com.piczzamms.gallery.top.GalleryApplication;
 import com.piczzamms.gallery.ui.GridViewPictures;
 import com.piczzamms.gallery.util.MenuHelper;
+import com.piczzamms.gallery.util.ShareTask;
 import com.piczzamms.gallery.util.Util;
 import com.tipsolutions.tipsupport.common.MemoryHelper;
 import com.tipsolutions.tipsupport.common.NavigationUtil;
@@ -165,6 +167,9 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 	BroadcastReceiver			mReceiver;
 	final Handler				mHandler				= new Handler();
 	boolean						mLayoutComplete;
+	// False if the current list was built while storage was unmounted or being scanned; content
+	// notifications can't bring that one up to date, so it has to be rebuilt.
+	boolean						mListStorageAvailable;
 	boolean						mUseRemoveText;
 	boolean						mDragEnable;
 	GridViewPictures			mGvs;
@@ -191,6 +196,26 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 															}
 														};
 
+	// Updates the instructions as each sublist of the image list arrives. The grid follows the
+	// list's own change reports, which keep selections in step with the inserted positions.
+	final AsyncImageList.Listener	mListListener			= new AsyncImageList.Listener()
+																{
+																	public void onImageListChanged(AsyncImageList list,
+																			boolean complete)
+																	{
+																		if (list != mGvs.getImageList())
+																		{
+																			return;
+																		}
+																		if (complete || !list.isEmpty())
+																		{
+																			showInstructions(list.getCount());
+																		}
+																	}
+																};
+
+	ShareTask					mShareTask;
+
 	Animation					mFooterAppear;
 	Animation					mFooterDisappear;
 	int							mMovieOrientation;
@@ -277,17 +302,6 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 		}
 	}
 
-	String getShareMultipleMimeType()
-	{
-		final int FLAG_IMAGE = 1, FLAG_VIDEO = 2;
-		int flag = 0;
-		for (IImage image : mGvs.getMultiselect().getList())
-		{
-			flag |= ImageManager.isImage(image) ? FLAG_IMAGE : FLAG_VIDEO;
-		}
-		return flag == FLAG_IMAGE ? "image/*" : flag == FLAG_VIDEO ? "video/*" : "*/*";
-	}
-
 	String getTmpFile()
 	{
 		File dir = getApplicationContext().getCacheDir();
@@ -574,6 +588,7 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 		super.onCreate(icicle);
 
 		mApp = (GalleryApplication) getApplicationContext();
+		BucketIndex.instance().load(this);
 
 		mApp.log("Image-Gallery CREATE: " + MemoryHelper.availableMB() + " MB");
 
@@ -740,6 +755,8 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 	protected void onDestroy()
 	{
 		super.onDestroy();
+		mGvs.setImageList(null);
+		BucketIndex.instance().release();
 		mApp.log("Image-Gallery DESTROY: " + MemoryHelper.availableMB() + " MB");
 	}
 
@@ -763,7 +780,7 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 		if (!fromKeypad && isInMultiSelectMode())
 		{
 			mGvs.setSelectedIndex(GridViewPictures.INDEX_NONE);
-			toggleMultiSelected(mGvs.getImageList().getImageAt(index));
+			toggleMultiSelected(index);
 		}
 		else if (index >= 0 && index < mGvs.getImageList().getCount())
 		{
@@ -774,7 +791,7 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 
 			if (isInMultiSelectMode())
 			{
-				toggleMultiSelected(image);
+				toggleMultiSelected(index);
 			}
 			else
 			{
@@ -826,6 +843,17 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 
 	void onImageDelete()
 	{
+		int index = mGvs.getCurrentSelection();
+		if (index == GridViewPictures.INDEX_NONE)
+		{
+			return;
+		}
+		// Removing through the grid keeps the selections after it in step.
+		if (mGvs.removeImageAt(index))
+		{
+			mGvs.setSelectedIndex(GridViewPictures.INDEX_NONE);
+			return;
+		}
 		IImage image = mGvs.getCurrentImage();
 		if (image != null && Util.deleteImage(this, image.getImageUri()))
 		{
@@ -856,6 +884,13 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 	{
 		mLayoutComplete = true;
 
+		// The count may have changed with a content update.
+		IImageList list = mGvs.getImageList();
+		if (list != null && !(list instanceof AsyncImageList && ((AsyncImageList) list).isLoading()))
+		{
+			showInstructions(list.getCount());
+		}
+
 		mGvs.setSelectedIndex(mSelectedIndex);
 		if (mScrollPosition == INVALID_POSITION)
 		{
@@ -907,13 +942,22 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 		}
 		mApp.log("Image-Gallery PAUSE1: " + MemoryHelper.availableMB() + " MB");
 
-		mGvs.setImageList(null);
+		if (mShareTask != null)
+		{
+			mShareTask.cancel(false);
+			mShareTask = null;
+		}
+		RotationQueue.instance().flush();
 
 		if (mApp != null && mApp.getGalleryFlurry() != null)
 		{
 			mApp.log("Image-Gallery PAUSE2: " + MemoryHelper.availableMB() + " MB");
 			mApp.getGalleryFlurry().onGalleryExit(this);
 		}
+		if (mApp != null)
+		{
+			mApp.reportMetrics(this);
+		}
 		mApp.log("Image-Gallery PAUSE: " + MemoryHelper.availableMB() + " MB");
 	}
 
@@ -992,7 +1036,13 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 				}
 				else if (action.equals(Intent.ACTION_MEDIA_SCANNER_FINISHED))
 				{
-					rebake(false, false);
+					// A list built during the scan missed it; otherwise the scan's inserts have
+					// already come through as content notifications.
+					cancelWaitDialog();
+					if (!mListStorageAvailable)
+					{
+						rebake(false, false);
+					}
 				}
 				else if (action.equals(Intent.ACTION_MEDIA_EJECT))
 				{
@@ -1001,7 +1051,12 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 			}
 		};
 		registerReceiver(mReceiver, intentFilter);
-		rebake();
+
+		// Lists over plain files get no content notifications, so those are always rebuilt.
+		if (!mListStorageAvailable || mParam.mLocation == ImageManager.DataLocation.INTERNAL_DATA)
+		{
+			rebake();
+		}
 		setTitle();
 
 		if (mApp != null && mApp.getGalleryFlurry() != null)
@@ -1025,52 +1080,54 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 
 	private void onShareMultipleClicked()
 	{
-		if (isInMultiSelectMode())
+		if (isInMultiSelectMode() && mShareTask == null)
 		{
-			HashSet<IImage> multiList = mGvs.getMultiselect().getList();
-
-			if (multiList.size() > 1)
+			final int selected = mGvs.getMultiselect().size();
+			ShareTask.Callback cb = new ShareTask.Callback()
 			{
-				Intent intent = new Intent();
-				intent.setAction(Intent.ACTION_SEND_MULTIPLE);
-
-				String mimeType = getShareMultipleMimeType();
-				intent.setType(mimeType);
-				ArrayList<Parcelable> list = new ArrayList<Parcelable>();
-				for (IImage image : multiList)
+				public void onComplete(Intent intent, int count)
 				{
-					list.add(image.getImageUri());
+					mShareTask = null;
+					onShareReady(intent, count, selected);
 				}
-				intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, list);
-				try
-				{
-					startActivity(Intent.createChooser(intent, getText(R.string.send_media_files)));
-				}
-				catch (android.content.ActivityNotFoundException ex)
-				{
-					Toast.makeText(this, R.string.no_way_to_share, Toast.LENGTH_SHORT).show();
-				}
-			}
-			else if (multiList.size() == 1)
-			{
-				IImage image = multiList.iterator().next();
-				Intent intent = new Intent();
-				intent.setAction(Intent.ACTION_SEND);
-				String mimeType = image.getMimeType();
-				intent.setType(mimeType);
-				intent.putExtra(Intent.EXTRA_STREAM, image.getImageUri());
-				boolean isImage = ImageManager.isImage(image);
-				try
-				{
-					startActivity(Intent.createChooser(intent, getText(isImage ? R.string.sendImage
-							: R.string.sendVideo)));
-				}
-				catch (android.content.ActivityNotFoundException ex)
-				{
-					Toast.makeText(this, isImage ? R.string.no_way_to_share_image : R.string.no_way_to_share_video,
-							Toast.LENGTH_SHORT).show();
-				}
-			}
+			};
+			mShareTask = new ShareTask(getContentResolver(), mGvs.getMultiselect().getList(
+					ShareTask.MAX_SHARE_ITEMS), cb);
+			mShareTask.execute();
+		}
+	}
+
+	void onShareReady(Intent intent, int count, int selected)
+	{
+		if (intent == null)
+		{
+			return;
+		}
+		if (count < selected)
+		{
+			Toast.makeText(this, getString(R.string.share_truncated, count, selected), Toast.LENGTH_LONG).show();
+		}
+		boolean isImage = ImageManager.isImageMimeType(intent.getType());
+		CharSequence title;
+		int noWayToShare;
+
+		if (count > 1)
+		{
+			title = getText(R.string.send_media_files);
+			noWayToShare = R.string.no_way_to_share;
+		}
+		else
+		{
+			title = getText(isImage ? R.string.sendImage : R.string.sendVideo);
+			noWayToShare = isImage ? R.string.no_way_to_share_image : R.string.no_way_to_share_video;
+		}
+		try
+		{
+			startActivity(Intent.createChooser(intent, title));
+		}
+		catch (android.content.ActivityNotFoundException ex)
+		{
+			Toast.makeText(this, noWayToShare, Toast.LENGTH_SHORT).show();
 		}
 	}
 
@@ -1088,8 +1145,9 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 			mMediaScanningDialog = ProgressDialog.show(this, null, getResources().getString(R.string.wait), true, true);
 		}
 
-		mParam = allImages(!unmounted && !scanning);
-		IImageList allImages = ImageManager.makeImageList(this, mParam);
+		mListStorageAvailable = !unmounted && !scanning;
+		mParam = allImages(mListStorageAvailable);
+		IImageList allImages = ImageManager.makeImageListAsync(this, mParam, mListListener);
 
 		if (mHorizontal)
 		{
@@ -1104,7 +1162,11 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 		mGvs.setImageList(allImages);
 		mGvs.setDragEnabled(mDragEnable);
 
-		showInstructions(allImages.getCount());
+		// A list still loading reports its count through mListListener instead.
+		if (!(allImages instanceof AsyncImageList) || !((AsyncImageList) allImages).isLoading())
+		{
+			showInstructions(allImages.getCount());
+		}
 	}
 
 	void refresh()
@@ -1306,14 +1368,14 @@ public class ImageGalleryVoice extends NoSearchActivity implements GridViewPictu
 		}
 	}
 
-	void toggleMultiSelected(IImage image)
+	void toggleMultiSelected(int index)
 	{
-		int original = mGvs.getMultiselect().toggle(image);
+		int original = mGvs.getMultiselect().toggle(index);
 		if (original == 0)
 		{
 			showFooter();
 		}
-		if (mGvs.getMultiselect().getList().size() == 0)
+		if (mGvs.getMultiselect().size() == 0)
 		{
 			hideFooter();
 		}
@@ -42,9 +42,12 @@ import android.view.animation.ScaleAnimation;
 import android.widget.Toast;
 
 import com.piczzamms.gallery.R;
+import com.piczzamms.gallery.core.PositionCache;
+import com.piczzamms.gallery.core.ShuffleOrder;
 import com.piczzamms.gallery.data.ImageManager;
 import com.piczzamms.gallery.data.parts.IImage;
 import com.piczzamms.gallery.data.parts.IImageList;
+import com.piczzamms.gallery.data.parts.RotationQueue;
 import com.piczzamms.gallery.top.GalleryApplication;
 import com.piczzamms.gallery.ui.ActionMenuButton;
 import com.piczzamms.gallery.ui.ImageViewTouch;
@@ -67,141 +70,44 @@ import com.piczzamms.gallery.util.Util;
 public class ViewImage extends NoSearchActivity implements View.OnClickListener
 {
 	// This is a cache for Bitmap displayed in ViewImage (normal mode, thumb only).
-	class BitmapCache implements ImageViewTouchBase.Recycler
+	static class BitmapCache extends PositionCache<Bitmap> implements ImageViewTouchBase.Recycler
 	{
-		final Entry[]	mCache;
-
 		public BitmapCache(int size)
 		{
-			mCache = new Entry[size];
-			for (int i = 0; i < mCache.length; i++)
-			{
-				mCache[i] = new Entry();
-			}
-		}
-
-		// Recycle all bitmaps in the cache and clear the cache.
-		public synchronized void clear()
-		{
-			for (Entry e : mCache)
-			{
-				if (e.mBitmap != null)
-				{
-					e.mBitmap.recycle();
-				}
-				e.clear();
-			}
-		}
-
-		// Given the position, find the associated entry. Returns null if there is
-		// no such entry.
-		Entry findEntry(int pos)
-		{
-			for (Entry e : mCache)
-			{
-				if (pos == e.mPos)
-				{
-					return e;
-				}
-			}
-			return null;
+			super(size);
 		}
 
 		// Returns the thumb bitmap if we have it, otherwise return null.
-		public synchronized Bitmap getBitmap(int pos)
+		public Bitmap getBitmap(int pos)
 		{
-			Entry e = findEntry(pos);
-			if (e != null)
-			{
-				return e.mBitmap;
-			}
-			return null;
+			return get(pos);
 		}
 
 		// Returns whether the bitmap is in the cache.
-		public synchronized boolean hasBitmap(int pos)
+		public boolean hasBitmap(int pos)
 		{
-			Entry e = findEntry(pos);
-			return (e != null);
+			return contains(pos);
 		}
 
-		public synchronized void put(int pos, Bitmap bitmap)
+		// This only works because our current usage is sequential, so we
+		// do not happen to recycle the image being displayed.
+		@Override
+		protected void onEvict(Bitmap bitmap)
 		{
-			// First see if we already have this entry.
-			if (findEntry(pos) != null)
+			if (bitmap != null)
 			{
-				return;
-			}
-
-			// Find the best entry we should replace.
-			// See if there is any empty entry.
-			// Otherwise assuming sequential access, kick out the entry with the
-			// greatest distance.
-			Entry best = null;
-			int maxDist = -1;
-			for (Entry e : mCache)
-			{
-				if (e.mPos == -1)
-				{
-					best = e;
-					break;
-				}
-				else
-				{
-					int dist = Math.abs(pos - e.mPos);
-					if (dist > maxDist)
-					{
-						maxDist = dist;
-						best = e;
-					}
-				}
+				bitmap.recycle();
 			}
-
-			// Recycle the image being kicked out.
-			// This only works because our current usage is sequential, so we
-			// do not happen to recycle the image being displayed.
-			if (best.mBitmap != null)
-			{
-				best.mBitmap.recycle();
-			}
-
-			best.mPos = pos;
-			best.mBitmap = bitmap;
 		}
 
 		// Recycle the bitmap if it's not in the cache.
 		// The input must be non-null.
 		public synchronized void recycle(Bitmap b)
 		{
-			for (Entry e : mCache)
+			if (!holds(b))
 			{
-				if (e.mPos != -1)
-				{
-					if (e.mBitmap == b)
-					{
-						return;
-					}
-				}
+				b.recycle();
 			}
-			b.recycle();
-		}
-
-	}
-
-	static class Entry
-	{
-		int		mPos;
-		Bitmap	mBitmap;
-
-		public Entry()
-		{
-			clear();
-		}
-
-		public void clear()
-		{
-			mPos = -1;
-			mBitmap = null;
 		}
 	}
 
@@ -238,6 +144,8 @@ public class ViewImage extends NoSearchActivity implements View.OnClickListener
 		@Override
 		public boolean onDown(MotionEvent e)
 		{
+			// A touch catches a running fling.
+			mImageView.stopAnimation();
 			return false;
 		}
 
@@ -248,7 +156,11 @@ public class ViewImage extends NoSearchActivity implements View.OnClickListener
 			{
 				return false;
 			}
-			if (velocityX > 0)
+			if (mImageView.getScale() > 1F && mImageView.isFlingEnabled())
+			{
+				mImageView.fling(velocityX, velocityY);
+			}
+			else if (velocityX > 0)
 			{
 				moveNextOrPrevious(-1);
 			}
@@ -449,25 +361,7 @@ public class ViewImage extends NoSearchActivity implements View.OnClickListener
 
 	void generateShuffleOrder()
 	{
-		if (mShuffleOrder == null || mShuffleOrder.length != mAllImages.getCount())
-		{
-			mShuffleOrder = new int[mAllImages.getCount()];
-			for (int i = 0, n = mShuffleOrder.length; i < n; i++)
-			{
-				mShuffleOrder[i] = i;
-			}
-		}
-
-		for (int i = mShuffleOrder.length - 1; i >= 0; i--)
-		{
-			int r = mRandom.nextInt(i + 1);
-			if (r != i)
-			{
-				int tmp = mShuffleOrder[r];
-				mShuffleOrder[r] = mShuffleOrder[i];
-				mShuffleOrder[i] = tmp;
-			}
-		}
+		mShuffleOrder = ShuffleOrder.shuffle(mShuffleOrder, mAllImages.getCount(), mRandom);
 	}
 
 	public int getCount()
@@ -665,6 +559,7 @@ public class ViewImage extends NoSearchActivity implements View.OnClickListener
 
 		mImageView = (ImageViewTouch) findViewById(R.id.image);
 		mImageView.setEnableTrackballScroll(true);
+		mImageView.setEnableFling(true);
 		mCache = new BitmapCache(3);
 		mImageView.setRecycler(mCache);
 
@@ -776,6 +671,7 @@ public class ViewImage extends NoSearchActivity implements View.OnClickListener
 	{
 		super.onStop();
 		mPaused = true;
+		RotationQueue.instance().flush();
 
 		// mGetter could be null if we call finish() and leave early in
 		// onStart().
@@ -0,0 +1,175 @@
+package com.piczzamms.gallery.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Reverse geocoding results by geohash cell, kept in memory. Entries expire after a TTL, and once
+ * there are more than the maximum the least recently used ones are evicted. Persisting them is
+ * left to a subclass, through onRemove(). Not thread safe.
+ */
+public class GeoCellCache
+{
+	static class Entry
+	{
+		final String	mLocation;
+		final long		mTime;
+
+		Entry(String location, long time)
+		{
+			mLocation = location;
+			mTime = time;
+		}
+	}
+
+	static final String	BASE32	= "0123456789bcdefghjkmnpqrstuvwxyz";
+
+	/**
+	 * Encode a coordinate as a geohash string of the given length.
+	 */
+	public static String geohash(double lat, double lng, int precision)
+	{
+		double minLat = -90, maxLat = 90;
+		double minLng = -180, maxLng = 180;
+		StringBuilder sb = new StringBuilder(precision);
+		boolean even = true;
+		int bit = 0;
+		int ch = 0;
+
+		while (sb.length() < precision)
+		{
+			if (even)
+			{
+				double mid = (minLng + maxLng) / 2;
+				if (lng >= mid)
+				{
+					ch = (ch << 1) | 1;
+					minLng = mid;
+				}
+				else
+				{
+					ch <<= 1;
+					maxLng = mid;
+				}
+			}
+			else
+			{
+				double mid = (minLat + maxLat) / 2;
+				if (lat >= mid)
+				{
+					ch = (ch << 1) | 1;
+					minLat = mid;
+				}
+				else
+				{
+					ch <<= 1;
+					maxLat = mid;
+				}
+			}
+			even = !even;
+
+			if (++bit == 5)
+			{
+				sb.append(BASE32.charAt(ch));
+				bit = 0;
+				ch = 0;
+			}
+		}
+		return sb.toString();
+	}
+
+	// Least recently used first.
+	final LinkedHashMap<String, Entry>	mEntries	= new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	int									mMaxEntries;
+	long								mTtl;
+
+	public GeoCellCache(int maxEntries, long ttl)
+	{
+		mMaxEntries = maxEntries;
+		mTtl = ttl;
+	}
+
+	/**
+	 * Drop every entry, without calling onRemove().
+	 */
+	public void clear()
+	{
+		mEntries.clear();
+	}
+
+	/**
+	 * @return the location cached for the cell, or null if there is none or it expired by now.
+	 */
+	public String get(String cell, long now)
+	{
+		Entry entry = mEntries.get(cell);
+		if (entry == null)
+		{
+			return null;
+		}
+		if (isExpired(entry.mTime, now))
+		{
+			mEntries.remove(cell);
+			onRemove(cell);
+			return null;
+		}
+		return entry.mLocation;
+	}
+
+	public long getTtl()
+	{
+		return mTtl;
+	}
+
+	/**
+	 * @return true if an entry stored at time has expired by now.
+	 */
+	public boolean isExpired(long time, long now)
+	{
+		return now - time > mTtl;
+	}
+
+	/**
+	 * Called for each entry that expires or is evicted.
+	 */
+	protected void onRemove(String cell)
+	{
+	}
+
+	/**
+	 * Cache a location, stored at the given time, evicting the least recently used entries if
+	 * that makes too many.
+	 */
+	public void put(String cell, String location, long time)
+	{
+		mEntries.put(cell, new Entry(location, time));
+		trim();
+	}
+
+	public void setMaxEntries(int maxEntries)
+	{
+		mMaxEntries = maxEntries;
+		trim();
+	}
+
+	public void setTtl(long ttl)
+	{
+		mTtl = ttl;
+	}
+
+	public int size()
+	{
+		return mEntries.size();
+	}
+
+	void trim()
+	{
+		Iterator<String> iter = mEntries.keySet().iterator();
+		while (mEntries.size() > mMaxEntries && iter.hasNext())
+		{
+			String cell = iter.next();
+			iter.remove();
+			onRemove(cell);
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A least recently used cache keyed by int, so lookups neither box the key nor allocate.
+ *
+ * Entries live in parallel arrays sized to the capacity: a chained hash table finds an entry by
+ * key, and a doubly linked list through the same arrays keeps them in order of use. Adding past
+ * the capacity evicts the least recently used entry through onEvict(). Not thread safe.
+ */
+public class IntLruCache<V>
+{
+	static final int	NONE	= -1;
+
+	// First entry of each hash bucket.
+	int[]				mBuckets;
+	// Next entry in the same bucket, or in the free list for unused entries.
+	int[]				mChain;
+	// Least recently used entry, the next to be evicted.
+	int					mEldest;
+	int					mFree;
+	int[]				mKeys;
+	// Most recently used entry.
+	int					mNewest;
+	int[]				mNewer;
+	int[]				mOlder;
+	int					mSize;
+	Object[]			mValues;
+
+	public IntLruCache(int capacity)
+	{
+		allocate(Math.max(1, capacity));
+	}
+
+	void allocate(int capacity)
+	{
+		int buckets = 1;
+		while (buckets < capacity)
+		{
+			buckets <<= 1;
+		}
+		mBuckets = new int[buckets];
+		mChain = new int[capacity];
+		mKeys = new int[capacity];
+		mNewer = new int[capacity];
+		mOlder = new int[capacity];
+		mValues = new Object[capacity];
+		clear();
+	}
+
+	int bucket(int key)
+	{
+		return (key ^ (key >>> 16)) & (mBuckets.length - 1);
+	}
+
+	/**
+	 * Drop every entry, without calling onEvict().
+	 */
+	public void clear()
+	{
+		Arrays.fill(mBuckets, NONE);
+		Arrays.fill(mValues, null);
+		for (int i = 0; i < mChain.length; i++)
+		{
+			mChain[i] = i + 1 < mChain.length ? i + 1 : NONE;
+		}
+		mFree = 0;
+		mEldest = NONE;
+		mNewest = NONE;
+		mSize = 0;
+	}
+
+	int find(int key)
+	{
+		for (int e = mBuckets[bucket(key)]; e != NONE; e = mChain[e])
+		{
+			if (mKeys[e] == key)
+			{
+				return e;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the value for key, now the most recently used, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key)
+	{
+		int e = find(key);
+		if (e == NONE)
+		{
+			return null;
+		}
+		touch(e);
+		return (V) mValues[e];
+	}
+
+	public int getCapacity()
+	{
+		return mKeys.length;
+	}
+
+	/**
+	 * @return the keys, least recently used first.
+	 */
+	public int[] keys()
+	{
+		int[] keys = new int[mSize];
+		int i = 0;
+		for (int e = mEldest; e != NONE; e = mNewer[e])
+		{
+			keys[i++] = mKeys[e];
+		}
+		return keys;
+	}
+
+	void linkNewest(int e)
+	{
+		mOlder[e] = mNewest;
+		mNewer[e] = NONE;
+		if (mNewest != NONE)
+		{
+			mNewer[mNewest] = e;
+		}
+		else
+		{
+			mEldest = e;
+		}
+		mNewest = e;
+	}
+
+	/**
+	 * Called with each entry evicted to make room.
+	 */
+	protected void onEvict(int key, V value)
+	{
+	}
+
+	/**
+	 * Add or replace the value for key, evicting the least recently used entry if the cache is
+	 * full.
+	 *
+	 * @return the value key had before, which is not passed to onEvict(), or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value)
+	{
+		int e = find(key);
+		if (e != NONE)
+		{
+			V old = (V) mValues[e];
+			mValues[e] = value;
+			touch(e);
+			return old;
+		}
+		if (mSize == mKeys.length)
+		{
+			int eldest = mKeys[mEldest];
+			onEvict(eldest, removeEntry(mEldest));
+		}
+		e = mFree;
+		mFree = mChain[e];
+		mKeys[e] = key;
+		mValues[e] = value;
+		int b = bucket(key);
+		mChain[e] = mBuckets[b];
+		mBuckets[b] = e;
+		linkNewest(e);
+		mSize++;
+		return null;
+	}
+
+	/**
+	 * Remove key without calling onEvict().
+	 *
+	 * @return the value it had, or null.
+	 */
+	public V remove(int key)
+	{
+		int e = find(key);
+		return e == NONE ? null : removeEntry(e);
+	}
+
+	@SuppressWarnings("unchecked")
+	V removeEntry(int e)
+	{
+		int b = bucket(mKeys[e]);
+		if (mBuckets[b] == e)
+		{
+			mBuckets[b] = mChain[e];
+		}
+		else
+		{
+			int prev = mBuckets[b];
+			while (mChain[prev] != e)
+			{
+				prev = mChain[prev];
+			}
+			mChain[prev] = mChain[e];
+		}
+		unlink(e);
+		V value = (V) mValues[e];
+		mValues[e] = null;
+		mChain[e] = mFree;
+		mFree = e;
+		mSize--;
+		return value;
+	}
+
+	/**
+	 * Change the capacity, evicting the least recently used entries if there are now too many.
+	 * Resizing allocates, so this belongs with layout rather than drawing.
+	 */
+	public void setCapacity(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		if (capacity == mKeys.length)
+		{
+			return;
+		}
+		while (mSize > capacity)
+		{
+			int eldest = mKeys[mEldest];
+			onEvict(eldest, removeEntry(mEldest));
+		}
+		int[] keys = keys();
+		ArrayList<V> values = values();
+		allocate(capacity);
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			put(keys[i], values.get(i));
+		}
+	}
+
+	public int size()
+	{
+		return mSize;
+	}
+
+	void touch(int e)
+	{
+		if (e != mNewest)
+		{
+			unlink(e);
+			linkNewest(e);
+		}
+	}
+
+	void unlink(int e)
+	{
+		int older = mOlder[e];
+		int newer = mNewer[e];
+		if (older != NONE)
+		{
+			mNewer[older] = newer;
+		}
+		else
+		{
+			mEldest = newer;
+		}
+		if (newer != NONE)
+		{
+			mOlder[newer] = older;
+		}
+		else
+		{
+			mNewest = older;
+		}
+	}
+
+	/**
+	 * @return the values, least recently used first, in the same order as keys().
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<V> values()
+	{
+		ArrayList<V> values = new ArrayList<V>(mSize);
+		for (int e = mEldest; e != NONE; e = mNewer[e])
+		{
+			values.add((V) mValues[e]);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2009 The Android Open Source Project
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.piczzamms.gallery.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * An int-keyed least recently used cache that also hands back evicted values while something else
+ * still holds them. A hit in the strong part neither boxes the key nor allocates.
+ */
+public class LruCache<V>
+{
+
+	private final IntLruCache<V>				mLruMap;
+	private final HashMap<Integer, Entry<V>>	mWeakMap	= new HashMap<Integer, Entry<V>>();
+	private ReferenceQueue<V>					mQueue		= new ReferenceQueue<V>();
+
+	public LruCache(final int capacity)
+	{
+		mLruMap = new IntLruCache<V>(capacity);
+	}
+
+	private static class Entry<V> extends WeakReference<V>
+	{
+		int	mKey;
+
+		public Entry(int key, V value, ReferenceQueue<V> queue)
+		{
+			super(value, queue);
+			mKey = key;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void cleanUpWeakMap()
+	{
+		Entry<V> entry = (Entry<V>) mQueue.poll();
+		while (entry != null)
+		{
+			mWeakMap.remove(entry.mKey);
+			entry = (Entry<V>) mQueue.poll();
+		}
+	}
+
+	public synchronized V put(int key, V value)
+	{
+		cleanUpWeakMap();
+		mLruMap.put(key, value);
+		Entry<V> entry = mWeakMap.put(key, new Entry<V>(key, value, mQueue));
+		return entry == null ? null : entry.get();
+	}
+
+	public synchronized V get(int key)
+	{
+		cleanUpWeakMap();
+		V value = mLruMap.get(key);
+		if (value != null)
+			return value;
+		Entry<V> entry = mWeakMap.get(key);
+		return entry == null ? null : entry.get();
+	}
+
+	public synchronized void clear()
+	{
+		mLruMap.clear();
+		mWeakMap.clear();
+		mQueue = new ReferenceQueue<V>();
+	}
+
+	/**
+	 * @return every value still reachable through the cache, including ones only weakly held.
+	 */
+	public synchronized ArrayList<V> values()
+	{
+		cleanUpWeakMap();
+		ArrayList<V> values = new ArrayList<V>(mWeakMap.size());
+		for (Entry<V> entry : mWeakMap.values())
+		{
+			V value = entry.get();
+			if (value != null)
+			{
+				values.add(value);
+			}
+		}
+		return values;
+	}
+}
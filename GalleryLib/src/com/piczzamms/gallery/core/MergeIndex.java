@@ -0,0 +1,460 @@
+package com.piczzamms.gallery.core;
+
+import java.util.Arrays;
+
+/**
+ * The merged order of several sorted sources, built lazily as far as positions are asked for.
+ *
+ * The merge is kept as runs: consecutive merged positions that come from the same source. Once a
+ * source's head sorts first twice running, the merge gallops through it, by exponential then
+ * binary search on its keys, up to the head of the next source, so a source that dominates a
+ * stretch of the merge costs a logarithmic number of key reads rather than one per item. Runs
+ * record where they start in both the merge and their source, so positions are found by binary
+ * search and cold access deep into a list of long runs is far below linear. The runs of each
+ * source are indexed separately, for indexOf(), only when it is called.
+ *
+ * Items with equal keys are taken from the lower source index first. Not thread safe; snapshot()
+ * gives an immutable copy of the merge so far that any thread can read.
+ */
+public class MergeIndex
+{
+	public interface Source
+	{
+		public int getCount();
+
+		/**
+		 * @return the key the source is sorted by. Every source must be sorted the same way.
+		 */
+		public long getKey(int position);
+	}
+
+	/**
+	 * The merge as it stood when snapshot() was called. A snapshot never changes, so any thread
+	 * can read it without a lock while the index moves on.
+	 */
+	public static final class Snapshot
+	{
+		final int[]		mHeads;
+		final int		mMerged;
+		final long[]	mRuns;
+		final int[]		mRunStart;
+		final int[][]	mSourceRuns;
+
+		Snapshot(MergeIndex index)
+		{
+			index.indexRuns();
+			mHeads = copy(index.mHeads, index.mHeads.length);
+			mMerged = index.mMerged;
+			mRuns = copy(index.mRuns, index.mRunCount);
+			mRunStart = copy(index.mRunStart, index.mRunCount);
+			mSourceRuns = new int[index.mSources.length][];
+
+			for (int i = 0; i < mSourceRuns.length; i++)
+			{
+				mSourceRuns[i] = copy(index.mSourceRuns[i], index.mSourceRunCount[i]);
+			}
+		}
+
+		public int getMergedCount()
+		{
+			return mMerged;
+		}
+
+		/**
+		 * @return the merged position of the item at offset in the given source, or -1 if it
+		 *         wasn't merged yet.
+		 */
+		public int indexOf(int listIndex, int offset)
+		{
+			if (offset < 0 || offset >= mHeads[listIndex])
+			{
+				return -1;
+			}
+			int[] runs = mSourceRuns[listIndex];
+			return findOffset(mRuns, mRunStart, runs, runs.length, offset);
+		}
+
+		/**
+		 * @return the location of a merged position, as MergeIndex.locate() gives it, or -1 if
+		 *         it wasn't merged yet.
+		 */
+		public long locate(int position)
+		{
+			if (position < 0 || position >= mMerged)
+			{
+				return -1;
+			}
+			int run = findRun(mRunStart, mRuns.length, position);
+			return mRuns[run] + position - mRunStart[run];
+		}
+	}
+
+	static int[] copy(int[] values, int length)
+	{
+		int[] result = new int[length];
+		System.arraycopy(values, 0, result, 0, Math.min(length, values.length));
+		return result;
+	}
+
+	static long[] copy(long[] values, int length)
+	{
+		long[] result = new long[length];
+		System.arraycopy(values, 0, result, 0, Math.min(length, values.length));
+		return result;
+	}
+
+	// The merged position of offset, found among the runs of its source.
+	static int findOffset(long[] runs, int[] runStart, int[] sourceRuns, int sourceRunCount, int offset)
+	{
+		// The last run of the source starting at or before offset.
+		int low = 0;
+		int high = sourceRunCount - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (offsetOf(runs[sourceRuns[mid]]) <= offset)
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+		int run = sourceRuns[low];
+		return runStart[run] + offset - offsetOf(runs[run]);
+	}
+
+	// The last run starting at or before position.
+	static int findRun(int[] runStart, int runCount, int position)
+	{
+		int low = 0;
+		int high = runCount - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (runStart[mid] <= position)
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	public static int listOf(long location)
+	{
+		return (int) (location >>> 32);
+	}
+
+	public static int offsetOf(long location)
+	{
+		return (int) location;
+	}
+
+	final boolean		mAscending;
+	// Offset of the next unmerged item of each source, and its key once read.
+	final int[]			mHeads;
+	final long[]		mHeadKeys;
+	final boolean[]		mHeadRead;
+	int					mMerged;
+	// Runs in merged order: the location of the first item, and its merged position. A run ends
+	// where the next one starts.
+	int					mRunCount;
+	long[]				mRuns		= new long[16];
+	int[]				mRunStart	= new int[16];
+	// The runs of each source, in order, as far as run mIndexedRuns.
+	int					mIndexedRuns;
+	final int[][]		mSourceRuns;
+	final int[]			mSourceRunCount;
+	final Source[]		mSources;
+	// Key of the item gallop() stopped at, which becomes the source's next head.
+	long				mStopKey;
+
+	public MergeIndex(Source[] sources, boolean ascending)
+	{
+		mSources = sources.clone();
+		mAscending = ascending;
+		mHeads = new int[sources.length];
+		mHeadKeys = new long[sources.length];
+		mHeadRead = new boolean[sources.length];
+		mSourceRuns = new int[sources.length][];
+		mSourceRunCount = new int[sources.length];
+
+		for (int i = 0; i < sources.length; i++)
+		{
+			mSourceRuns[i] = new int[8];
+		}
+		reset();
+	}
+
+	// Add count positions from the given source to the end of the merge.
+	void append(int listIndex, int count)
+	{
+		if (mRunCount == 0 || listOf(mRuns[mRunCount - 1]) != listIndex)
+		{
+			if (mRunCount == mRuns.length)
+			{
+				mRuns = copy(mRuns, mRunCount * 2);
+				mRunStart = copy(mRunStart, mRunCount * 2);
+			}
+			mRuns[mRunCount] = (((long) listIndex) << 32) | mHeads[listIndex];
+			mRunStart[mRunCount] = mMerged;
+			mRunCount++;
+		}
+		mMerged += count;
+		mHeads[listIndex] += count;
+		mHeadRead[listIndex] = false;
+	}
+
+	// True if key sorts before limit; equal keys go to the source that wins ties.
+	boolean before(long key, long limit, boolean winsTies)
+	{
+		return key == limit ? winsTies : (mAscending ? key < limit : key > limit);
+	}
+
+	/**
+	 * @return the number of items from the head of the source, whose first item is known to
+	 *         qualify, that sort before limit. If that leaves items, the first one's key is in
+	 *         mStopKey.
+	 */
+	int gallop(int listIndex, long limit, boolean winsTies)
+	{
+		Source source = mSources[listIndex];
+		int head = mHeads[listIndex];
+		int available = source.getCount() - head;
+		int known = 1;
+		int bound = 1;
+
+		while (bound < available)
+		{
+			long key = source.getKey(head + bound);
+			if (!before(key, limit, winsTies))
+			{
+				mStopKey = key;
+				break;
+			}
+			known = bound + 1;
+			bound <<= 1;
+		}
+		// The first item not to qualify is in [known, high].
+		int high = Math.min(bound, available);
+		while (known < high)
+		{
+			int mid = (known + high) >>> 1;
+			long key = source.getKey(head + mid);
+			if (before(key, limit, winsTies))
+			{
+				known = mid + 1;
+			}
+			else
+			{
+				mStopKey = key;
+				high = mid;
+			}
+		}
+		return known;
+	}
+
+	/**
+	 * @return the number of positions merged so far.
+	 */
+	public int getMergedCount()
+	{
+		return mMerged;
+	}
+
+	/**
+	 * @return the number of runs merged so far.
+	 */
+	public int getRunCount()
+	{
+		return mRunCount;
+	}
+
+	/**
+	 * @return the merged position of the item at offset in the given source, or -1 if it isn't
+	 *         there. If extend is false, positions not merged yet are reported as -1 too.
+	 */
+	public int indexOf(int listIndex, int offset, boolean extend)
+	{
+		if (offset < 0)
+		{
+			return -1;
+		}
+		if (offset >= mHeads[listIndex])
+		{
+			if (!extend)
+			{
+				return -1;
+			}
+			while (mHeads[listIndex] <= offset)
+			{
+				if (!step())
+				{
+					return -1;
+				}
+			}
+		}
+		indexRuns();
+		return findOffset(mRuns, mRunStart, mSourceRuns[listIndex], mSourceRunCount[listIndex], offset);
+	}
+
+	// Bring the runs of each source up to date with the merge.
+	void indexRuns()
+	{
+		for (; mIndexedRuns < mRunCount; mIndexedRuns++)
+		{
+			int list = listOf(mRuns[mIndexedRuns]);
+			if (mSourceRunCount[list] == mSourceRuns[list].length)
+			{
+				mSourceRuns[list] = copy(mSourceRuns[list], mSourceRunCount[list] * 2);
+			}
+			mSourceRuns[list][mSourceRunCount[list]++] = mIndexedRuns;
+		}
+	}
+
+	/**
+	 * Find the source and offset of a merged position, merging as far as needed.
+	 *
+	 * @return the location, to be taken apart with listOf() and offsetOf(), or -1 if the sources
+	 *         end before position.
+	 */
+	public long locate(int position)
+	{
+		if (position < 0 || !mergeTo(position + 1))
+		{
+			return -1;
+		}
+		int run = findRun(mRunStart, mRunCount, position);
+		return mRuns[run] + position - mRunStart[run];
+	}
+
+	/**
+	 * Extend the merge until it covers at least count positions. It may go further, to the end of
+	 * a run.
+	 *
+	 * @return false if the sources ran out first.
+	 */
+	public boolean mergeTo(int count)
+	{
+		while (mMerged < count)
+		{
+			if (!step())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The item at the given merged position was removed from its source. Removal never changes
+	 * the order of the rest, so the run holding it just gets shorter and the runs after it move
+	 * down by one.
+	 */
+	public void removeAt(int position)
+	{
+		if (position < 0 || position >= mMerged)
+		{
+			return;
+		}
+		int run = findRun(mRunStart, mRunCount, position);
+		int listIndex = listOf(mRuns[run]);
+
+		for (int i = run + 1; i < mRunCount; i++)
+		{
+			mRunStart[i]--;
+			if (listOf(mRuns[i]) == listIndex)
+			{
+				mRuns[i]--;
+			}
+		}
+		mMerged--;
+		// The source's unmerged items moved down by one.
+		mHeads[listIndex]--;
+	}
+
+	/**
+	 * Restart the merge from the head of every source.
+	 */
+	public void reset()
+	{
+		Arrays.fill(mHeads, 0);
+		Arrays.fill(mHeadRead, false);
+		Arrays.fill(mSourceRunCount, 0);
+		mIndexedRuns = 0;
+		mRunCount = 0;
+		mMerged = 0;
+	}
+
+	/**
+	 * @return an immutable copy of the merge so far.
+	 */
+	public Snapshot snapshot()
+	{
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Merge the next item, or if the leading source also supplied the last one, everything from it
+	 * that sorts before the head of the runner-up.
+	 *
+	 * @return false if every source is exhausted.
+	 */
+	boolean step()
+	{
+		int best = -1;
+		int second = -1;
+
+		for (int i = 0; i < mSources.length; i++)
+		{
+			if (mHeads[i] >= mSources[i].getCount())
+			{
+				continue;
+			}
+			if (!mHeadRead[i])
+			{
+				mHeadKeys[i] = mSources[i].getKey(mHeads[i]);
+				mHeadRead[i] = true;
+			}
+			// Sources are visited in index order, so only a strictly earlier key displaces.
+			if (best < 0 || before(mHeadKeys[i], mHeadKeys[best], false))
+			{
+				second = best;
+				best = i;
+			}
+			else if (second < 0 || before(mHeadKeys[i], mHeadKeys[second], false))
+			{
+				second = i;
+			}
+		}
+		if (best < 0)
+		{
+			return false;
+		}
+		if (second < 0)
+		{
+			append(best, mSources[best].getCount() - mHeads[best]);
+		}
+		else if (mRunCount == 0 || listOf(mRuns[mRunCount - 1]) != best)
+		{
+			// Only gallop once a source wins twice running, so sources that take turns item by
+			// item don't pay for a probe each time.
+			append(best, 1);
+		}
+		else
+		{
+			append(best, gallop(best, mHeadKeys[second], best < second));
+			if (mHeads[best] < mSources[best].getCount())
+			{
+				mHeadKeys[best] = mStopKey;
+				mHeadRead[best] = true;
+			}
+		}
+		return true;
+	}
+}
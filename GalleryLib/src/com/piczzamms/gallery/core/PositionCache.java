@@ -0,0 +1,126 @@
+package com.piczzamms.gallery.core;
+
+/**
+ * A few values kept by list position. When full, the value furthest from the one being added is
+ * evicted, which suits stepping back and forth through a list.
+ */
+public class PositionCache<V>
+{
+	final int[]		mPositions;
+	final Object[]	mValues;
+
+	public PositionCache(int size)
+	{
+		mPositions = new int[size];
+		mValues = new Object[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			mPositions[i] = -1;
+		}
+	}
+
+	// Evict every value and clear the cache.
+	public synchronized void clear()
+	{
+		for (int i = 0; i < mPositions.length; i++)
+		{
+			if (mPositions[i] != -1)
+			{
+				onEvict(value(i));
+			}
+			mPositions[i] = -1;
+			mValues[i] = null;
+		}
+	}
+
+	public synchronized boolean contains(int pos)
+	{
+		return find(pos) >= 0;
+	}
+
+	// Given the position, find the associated slot. Returns -1 if there is no such slot.
+	int find(int pos)
+	{
+		for (int i = 0; i < mPositions.length; i++)
+		{
+			if (mPositions[i] == pos)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public synchronized V get(int pos)
+	{
+		int i = find(pos);
+		return i >= 0 ? value(i) : null;
+	}
+
+	/**
+	 * @return true if the value is held for some position.
+	 */
+	public synchronized boolean holds(V value)
+	{
+		for (int i = 0; i < mPositions.length; i++)
+		{
+			if (mPositions[i] != -1 && mValues[i] == value)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called with the lock held for each value that leaves the cache.
+	 */
+	protected void onEvict(V value)
+	{
+	}
+
+	/**
+	 * Add a value unless the position already has one.
+	 */
+	public synchronized void put(int pos, V value)
+	{
+		if (find(pos) >= 0)
+		{
+			return;
+		}
+
+		// Find the best slot we should replace.
+		// See if there is any empty slot.
+		// Otherwise assuming sequential access, kick out the slot with the
+		// greatest distance.
+		int best = -1;
+		int maxDist = -1;
+		for (int i = 0; i < mPositions.length; i++)
+		{
+			if (mPositions[i] == -1)
+			{
+				best = i;
+				break;
+			}
+			int dist = Math.abs(pos - mPositions[i]);
+			if (dist > maxDist)
+			{
+				maxDist = dist;
+				best = i;
+			}
+		}
+		if (mPositions[best] != -1)
+		{
+			onEvict(value(best));
+		}
+		mPositions[best] = pos;
+		mValues[best] = value;
+	}
+
+	@SuppressWarnings("unchecked")
+	V value(int i)
+	{
+		return (V) mValues[i];
+	}
+}
@@ -0,0 +1,78 @@
+package com.piczzamms.gallery.core;
+
+/**
+ * Decode sample size arithmetic, on plain dimensions.
+ */
+public class SampleSize
+{
+	public static final int	UNCONSTRAINED	= -1;
+
+	/*
+	 * Compute the sample size as a function of minSideLength
+	 * and maxNumOfPixels.
+	 * minSideLength is used to specify that minimal width or height of a
+	 * bitmap.
+	 * maxNumOfPixels is used to specify the maximal size in pixels that is
+	 * tolerable in terms of memory usage.
+	 *
+	 * The function returns a sample size based on the constraints.
+	 * Both size and minSideLength can be passed in as UNCONSTRAINED,
+	 * which indicates no care of the corresponding constraint.
+	 * The functions prefers returning a sample size that
+	 * generates a smaller bitmap, unless minSideLength = UNCONSTRAINED.
+	 *
+	 * Also, the function rounds up the sample size to a power of 2 or multiple
+	 * of 8 because BitmapFactory only honors sample size this way.
+	 * For example, BitmapFactory downsamples an image by 2 even though the
+	 * request is 3. So we round up the sample size to avoid OOM.
+	 */
+	public static int compute(int width, int height, int minSideLength, int maxNumOfPixels)
+	{
+		int initialSize = computeInitial(width, height, minSideLength, maxNumOfPixels);
+
+		int roundedSize;
+		if (initialSize <= 8)
+		{
+			roundedSize = 1;
+			while (roundedSize < initialSize)
+			{
+				roundedSize <<= 1;
+			}
+		}
+		else
+		{
+			roundedSize = (initialSize + 7) / 8 * 8;
+		}
+
+		return roundedSize;
+	}
+
+	static int computeInitial(int width, int height, int minSideLength, int maxNumOfPixels)
+	{
+		double w = width;
+		double h = height;
+
+		int lowerBound = (maxNumOfPixels == UNCONSTRAINED) ? 1 : (int) Math.ceil(Math.sqrt(w * h / maxNumOfPixels));
+		int upperBound = (minSideLength == UNCONSTRAINED) ? 128 : (int) Math.min(Math.floor(w / minSideLength),
+				Math.floor(h / minSideLength));
+
+		if (upperBound < lowerBound)
+		{
+			// return the larger one when there is no overlapping zone.
+			return lowerBound;
+		}
+
+		if ((maxNumOfPixels == UNCONSTRAINED) && (minSideLength == UNCONSTRAINED))
+		{
+			return 1;
+		}
+		else if (minSideLength == UNCONSTRAINED)
+		{
+			return lowerBound;
+		}
+		else
+		{
+			return upperBound;
+		}
+	}
+}
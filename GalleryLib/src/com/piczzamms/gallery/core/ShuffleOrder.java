@@ -0,0 +1,40 @@
+package com.piczzamms.gallery.core;
+
+import java.util.Random;
+
+/**
+ * Random play order for a slideshow.
+ */
+public class ShuffleOrder
+{
+	/**
+	 * Shuffle the positions 0 to count - 1 with Fisher-Yates.
+	 *
+	 * @param order
+	 *        the previous order, reused if it has the right length; may be null.
+	 * @return the shuffled order.
+	 */
+	public static int[] shuffle(int[] order, int count, Random random)
+	{
+		if (order == null || order.length != count)
+		{
+			order = new int[count];
+			for (int i = 0; i < count; i++)
+			{
+				order[i] = i;
+			}
+		}
+
+		for (int i = order.length - 1; i >= 0; i--)
+		{
+			int r = random.nextInt(i + 1);
+			if (r != i)
+			{
+				int tmp = order[r];
+				order[r] = order[i];
+				order[i] = tmp;
+			}
+		}
+		return order;
+	}
+}
@@ -0,0 +1,100 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+
+/**
+ * A first in, first out queue of work items for worker threads. Each item is queued with a key
+ * it can be cancelled by while it is still waiting.
+ */
+public class WorkQueue<K, T>
+{
+	boolean					mClosed;
+	final ArrayList<T>		mItems	= new ArrayList<T>();
+	final ArrayList<K>		mKeys	= new ArrayList<K>();
+
+	public synchronized void add(K key, T item)
+	{
+		mKeys.add(key);
+		mItems.add(item);
+		notifyAll();
+	}
+
+	/**
+	 * Remove the first waiting item queued with the key, compared by identity.
+	 *
+	 * @return the item, or null if none was waiting.
+	 */
+	public synchronized T cancel(K key)
+	{
+		for (int i = 0, n = mKeys.size(); i < n; i++)
+		{
+			if (mKeys.get(i) == key)
+			{
+				mKeys.remove(i);
+				return mItems.remove(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the items that were waiting, in queue order.
+	 */
+	public synchronized ArrayList<T> clear()
+	{
+		ArrayList<T> items = new ArrayList<T>(mItems);
+		mKeys.clear();
+		mItems.clear();
+		return items;
+	}
+
+	/**
+	 * Wake the workers and make take() return null from now on.
+	 */
+	public synchronized void close()
+	{
+		mClosed = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isClosed()
+	{
+		return mClosed;
+	}
+
+	public synchronized void open()
+	{
+		mClosed = false;
+	}
+
+	public synchronized int size()
+	{
+		return mItems.size();
+	}
+
+	/**
+	 * Wait for the next item.
+	 *
+	 * @return the item, or null once the queue is closed.
+	 */
+	public synchronized T take()
+	{
+		while (!mClosed && mItems.isEmpty())
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException ex)
+			{
+				// ignore the exception
+			}
+		}
+		if (mClosed)
+		{
+			return null;
+		}
+		mKeys.remove(0);
+		return mItems.remove(0);
+	}
+}
@@ -26,6 +26,8 @@ import android.provider.MediaStore.Images;
 import android.provider.MediaStore.Video;
 import android.util.Log;
 
+import com.piczzamms.gallery.top.GalleryMetrics;
+
 /**
  * This class provides several utilities to cancel bitmap decoding.
  * 
@@ -173,6 +175,7 @@ public class BitmapManager
 			return null;
 		}
 
+		long start = GalleryMetrics.start();
 		try
 		{
 			synchronized (status)
@@ -195,6 +198,7 @@ public class BitmapManager
 				status.mThumbRequesting = false;
 				status.notifyAll();
 			}
+			GalleryMetrics.end(GalleryMetrics.DECODE_THUMB, start);
 		}
 	}
 
@@ -223,7 +227,9 @@ public class BitmapManager
 			return null;
 		}
 		setDecodingOptions(thread, options);
+		long start = options.inJustDecodeBounds ? 0 : GalleryMetrics.start();
 		Bitmap b = BitmapFactory.decodeFileDescriptor(fd, null, options);
+		GalleryMetrics.end(GalleryMetrics.DECODE_FULL, start);
 		removeDecodingOptions(thread);
 		if (!options.inJustDecodeBounds && b == null)
 		{
@@ -22,6 +22,7 @@ import android.content.ContentResolver;
 import android.graphics.Bitmap;
 import android.os.Handler;
 
+import com.piczzamms.gallery.core.WorkQueue;
 import com.piczzamms.gallery.data.parts.IImage;
 
 /**
@@ -31,7 +32,13 @@ public class ImageLoader
 {
 	public interface LoadedCallback
 	{
-		public void run(Bitmap result);
+		/**
+		 * @param result
+		 *        the thumbnail as stored, not rotated.
+		 * @param degrees
+		 *        the rotation to apply when drawing it.
+		 */
+		public void run(Bitmap result, int degrees);
 	}
 
 	class WorkerThread implements Runnable
@@ -41,37 +48,16 @@ public class ImageLoader
 		// the given runnable so things can get updated appropriately.
 		public void run()
 		{
-			while (true)
+			WorkItem workItem;
+
+			while ((workItem = mQueue.take()) != null)
 			{
-				WorkItem workItem = null;
-				synchronized (mQueue)
-				{
-					if (mDone)
-					{
-						break;
-					}
-					if (!mQueue.isEmpty())
-					{
-						workItem = mQueue.remove(0);
-					}
-					else
-					{
-						try
-						{
-							mQueue.wait();
-						}
-						catch (InterruptedException ex)
-						{
-							// ignore the exception
-						}
-						continue;
-					}
-				}
-				final Bitmap b = workItem.mImage.getMiniThumbBitmap();
+				// Rotation is left to whoever draws the bitmap, which saves a rotated copy.
+				final Bitmap b = workItem.mImage.getMiniThumbBitmap(IImage.NO_ROTATE);
 
 				if (workItem.mOnLoadedRunnable != null)
 				{
-					workItem.mOnLoadedRunnable.run(b);
+					workItem.mOnLoadedRunnable.run(b, workItem.mImage.getDegreesRotated());
 				}
 			}
 		}
@@ -92,16 +78,14 @@ public class ImageLoader
 	}
 
 	@SuppressWarnings("unused")
-	static final String			TAG		= "ImageLoader";
-	// Queue of work to do in the worker thread. The work is done in order.
-	final ArrayList<WorkItem>	mQueue	= new ArrayList<WorkItem>();
+	static final String					TAG		= "ImageLoader";
+	// Queue of work to do in the worker thread, keyed by image. The work is done in order. Closing
+	// it tells the worker thread to exit.
+	final WorkQueue<IImage, WorkItem>	mQueue	= new WorkQueue<IImage, WorkItem>();
 
-	// the worker thread and a done flag so we know when to exit
-	boolean						mDone;
+	Thread								mDecodeThread;
 
-	Thread						mDecodeThread;
-
-	ContentResolver				mCr;
+	ContentResolver						mCr;
 
 	public ImageLoader(ContentResolver cr, Handler handler)
 	{
@@ -111,48 +95,20 @@ public class ImageLoader
 
 	public boolean cancel(final IImage image)
 	{
-		synchronized (mQueue)
-		{
-			int index = findItem(image);
-			if (index >= 0)
-			{
-				mQueue.remove(index);
-				return true;
-			}
-			else
-			{
-				return false;
-			}
-		}
+		return mQueue.cancel(image) != null;
 	}
 
 	// Clear the queue. Returns an array of tags that were in the queue.
 	public int[] clearQueue()
 	{
-		synchronized (mQueue)
-		{
-			int n = mQueue.size();
-			int[] tags = new int[n];
-			for (int i = 0; i < n; i++)
-			{
-				tags[i] = mQueue.get(i).mTag;
-			}
-			mQueue.clear();
-			return tags;
-		}
-	}
-
-	// The caller should hold mQueue lock.
-	int findItem(IImage image)
-	{
-		for (int i = 0; i < mQueue.size(); i++)
+		ArrayList<WorkItem> items = mQueue.clear();
+		int n = items.size();
+		int[] tags = new int[n];
+		for (int i = 0; i < n; i++)
 		{
-			if (mQueue.get(i).mImage == image)
-			{
-				return i;
-			}
+			tags[i] = items.get(i).mTag;
 		}
-		return -1;
+		return tags;
 	}
 
 	public void getBitmap(IImage image, LoadedCallback imageLoadedRunnable, int tag)
@@ -161,12 +117,7 @@ public class ImageLoader
 		{
 			start();
 		}
-		synchronized (mQueue)
-		{
-			WorkItem w = new WorkItem(image, imageLoadedRunnable, tag);
-			mQueue.add(w);
-			mQueue.notifyAll();
-		}
+		mQueue.add(image, new WorkItem(image, imageLoadedRunnable, tag));
 	}
 
 	void start()
@@ -175,7 +126,7 @@ public class ImageLoader
 		{
 			return;
 		}
-		mDone = false;
+		mQueue.open();
 		Thread t = new Thread(new WorkerThread());
 		t.setName("image-loader");
 		mDecodeThread = t;
@@ -184,11 +135,8 @@ public class ImageLoader
 
 	public void stop()
 	{
-		synchronized (mQueue)
-		{
-			mDone = true;
-			mQueue.notifyAll();
-		}
+		mQueue.close();
+
 		if (mDecodeThread != null)
 		{
 			try
@@ -24,6 +24,12 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -41,13 +47,16 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Images;
 import android.util.Log;
 
+import com.piczzamms.gallery.data.parts.AsyncImageList;
 import com.piczzamms.gallery.data.parts.IImage;
 import com.piczzamms.gallery.data.parts.IImageList;
 import com.piczzamms.gallery.data.parts.ImageList;
 import com.piczzamms.gallery.data.parts.ImageListUber;
 import com.piczzamms.gallery.data.parts.SingleImageList;
+import com.piczzamms.gallery.data.parts.SyntheticImageList;
 import com.piczzamms.gallery.data.parts.UriImageList;
 import com.piczzamms.gallery.data.parts.VideoList;
+import com.piczzamms.gallery.top.GalleryMetrics;
 import com.piczzamms.gallery.util.Util;
 
 /**
@@ -99,6 +108,11 @@ public class ImageManager
 			throw new UnsupportedOperationException();
 		}
 
+		public long[] getSortKeys()
+		{
+			return new long[0];
+		}
+
 		public boolean isEmpty()
 		{
 			return true;
@@ -118,6 +132,10 @@ public class ImageManager
 		{
 			return false;
 		}
+
+		public void setOnChangeListener(OnChangeListener listener)
+		{
+		}
 	}
 
 	// ImageListParam specifies all the parameters we need to create an image
@@ -208,11 +226,24 @@ public class ImageManager
 	public static final int		SORT_ASCENDING				= 1;
 
 	public static final int		SORT_DESCENDING				= 2;
+	// Short side of a MediaStore MINI_KIND thumbnail (512x384).
+	static final int			MINI_KIND_MIN_SIDE			= 384;
 	public static final String	CAMERA_IMAGE_BUCKET_NAME	= Environment.getExternalStorageDirectory().toString()
 																	+ "/DCIM/Camera";
 
 	public static final String	CAMERA_IMAGE_BUCKET_ID		= getBucketId(CAMERA_IMAGE_BUCKET_NAME);
 
+	// Runs sublist queries concurrently.
+	static ExecutorService		sListExecutor;
+
+	// Keyset paging is off by default. The slim columns already keep a whole list in ~17 bytes a
+	// row, while a keyset list has no columns: section labels would make an image per row, and a
+	// refresh would page through the whole library to diff ids.
+	public static final int		KEYSET_PAGING_THRESHOLD		= Integer.MAX_VALUE;
+	static volatile int			sKeysetPagingThreshold		= KEYSET_PAGING_THRESHOLD;
+
+	static volatile SyntheticImageList.Spec	sSyntheticSpec;
+
 	//
 	// Stores a bitmap or a jpeg byte array to a file (using the specified
 	// directory and filename). Also add an entry to the media store for
@@ -327,6 +358,22 @@ public class ImageManager
 	 * }
 	 */
 
+	/**
+	 * @return the list the query builds, or null if it failed.
+	 */
+	static IImageList callQuietly(Callable<IImageList> query)
+	{
+		try
+		{
+			return query.call();
+		}
+		catch (Exception ex)
+		{
+			Log.e(TAG, "sublist query failed", ex);
+			return null;
+		}
+	}
+
 	/**
 	 * OSX requires plugged-in USB storage to have path /DCIM/NNNAAAAA to be
 	 * imported. This is a temporary fix for bug#1655552.
@@ -411,6 +458,41 @@ public class ImageManager
 		return param;
 	}
 
+	/**
+	 * @return the row count from which new image and video lists query MediaStore a page at a
+	 *         time.
+	 */
+	public static int getKeysetPagingThreshold()
+	{
+		return sKeysetPagingThreshold;
+	}
+
+	public static synchronized ExecutorService getListExecutor()
+	{
+		if (sListExecutor == null)
+		{
+			sListExecutor = Executors.newCachedThreadPool();
+		}
+		return sListExecutor;
+	}
+
+	static IImageList getQuietly(Future<IImageList> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException ex)
+		{
+			Log.e(TAG, "sublist query failed", ex.getCause());
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
 	public static ImageListParam getSingleImageListParam(Uri uri)
 	{
 		ImageListParam param = new ImageListParam();
@@ -418,6 +500,91 @@ public class ImageManager
 		return param;
 	}
 
+	/**
+	 * @return one query per sublist the param asks for, in merge order. Each builds its list,
+	 *         which runs the cursor query.
+	 */
+	static List<Callable<IImageList>> getSublistQueries(final ContentResolver cr, ImageListParam param)
+	{
+		final DataLocation location = param.mLocation;
+		final int inclusion = param.mInclusion;
+		final int sort = param.mSort;
+		final String bucketId = param.mBucketId;
+		ArrayList<Callable<IImageList>> queries = new ArrayList<Callable<IImageList>>();
+
+		// false ==> don't require write access
+		boolean haveSdCard = hasStorage(false);
+
+		if (haveSdCard && location != DataLocation.INTERNAL)
+		{
+			if ((inclusion & INCLUDE_IMAGES) != 0)
+			{
+				queries.add(new Callable<IImageList>()
+				{
+					public IImageList call()
+					{
+						return new ImageList(cr, STORAGE_URI, sort, bucketId);
+					}
+				});
+			}
+			if ((inclusion & INCLUDE_VIDEOS) != 0)
+			{
+				queries.add(new Callable<IImageList>()
+				{
+					public IImageList call()
+					{
+						return new VideoList(cr, VIDEO_STORAGE_URI, sort, bucketId);
+					}
+				});
+			}
+		}
+		if (location == DataLocation.INTERNAL || location == DataLocation.ALL)
+		{
+			if ((inclusion & INCLUDE_IMAGES) != 0)
+			{
+				queries.add(new Callable<IImageList>()
+				{
+					public IImageList call()
+					{
+						return new ImageList(cr, Images.Media.INTERNAL_CONTENT_URI, sort, bucketId);
+					}
+				});
+			}
+			if ((inclusion & INCLUDE_DRM_IMAGES) != 0)
+			{
+				// Not implemented yet
+				// l.add(new DrmImageList(cr, DrmStore.Images.CONTENT_URI, sort, bucketId));
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * @return the spec every list is generated from, or null if lists come from MediaStore.
+	 */
+	public static SyntheticImageList.Spec getSyntheticSpec()
+	{
+		return sSyntheticSpec;
+	}
+
+	/**
+	 * Pick the cheapest thumbnail source whose short side covers a cell of the given size.
+	 * 
+	 * @return one of the IImage.THUMB_TIER_* values.
+	 */
+	public static int getThumbTier(int targetSize)
+	{
+		if (targetSize <= IImage.MINI_THUMB_TARGET_SIZE)
+		{
+			return IImage.THUMB_TIER_MICRO;
+		}
+		if (targetSize <= MINI_KIND_MIN_SIDE)
+		{
+			return IImage.THUMB_TIER_MINI;
+		}
+		return IImage.THUMB_TIER_SAMPLED;
+	}
+
 	public static boolean hasStorage()
 	{
 		return hasStorage(true);
@@ -447,19 +614,20 @@ public class ImageManager
 	}
 
 	/**
-	 * @return true if the image is an image.
+	 * @return true if the image is an image. If its mime type couldn't be loaded, its class decides.
 	 */
 	public static boolean isImage(IImage image)
 	{
-		return isImageMimeType(image.getMimeType());
+		String mimeType = image.getMimeType();
+		return mimeType != null ? isImageMimeType(mimeType) : !image.isVideo();
 	}
 
 	/**
-	 * @return true if the mimetype is an image mimetype.
+	 * @return true if the mimetype is an image mimetype; false if it is null.
 	 */
 	public static boolean isImageMimeType(String mimeType)
 	{
-		return mimeType.startsWith("image/");
+		return mimeType != null && mimeType.startsWith("image/");
 	}
 
 	public static boolean isMediaScannerScanning(ContentResolver cr)
@@ -486,11 +654,11 @@ public class ImageManager
 	}
 
 	/**
-	 * @return true if the image is a video.
+	 * @return true if the image is a video; false for null.
 	 */
 	public static boolean isVideo(IImage image)
 	{
-		return (image.isVideo());
+		return image != null && image.isVideo();
 	}
 
 	public static IImageList makeEmptyImageList()
@@ -508,65 +676,32 @@ public class ImageManager
 	// This is the factory function to create an image list.
 	public static IImageList makeImageList(Context context, ImageListParam param)
 	{
-		DataLocation location = param.mLocation;
-		boolean isEmptyImageList = param.mIsEmptyImageList;
-
-		if (isEmptyImageList || context == null)
-		{
-			return new EmptyImageList();
-		}
-		int inclusion = param.mInclusion;
-		int sort = param.mSort;
-		String bucketId = param.mBucketId;
-		Uri uri = param.mUri;
-		ContentResolver cr = context.getContentResolver();
-
-		if (uri != null)
+		IImageList simple = makeSimpleImageList(context, param);
+		if (simple != null)
 		{
-			if (location != DataLocation.INTERNAL_DATA)
-			{
-				return new SingleImageList(context, uri);
-			}
-			else
-			{
-				return new UriImageList(context, uri);
-			}
+			return simple;
 		}
-
-		// false ==> don't require write access
-		boolean haveSdCard = hasStorage(false);
+		long start = GalleryMetrics.start();
+		List<Callable<IImageList>> queries = getSublistQueries(context.getContentResolver(), param);
 
 		// use this code to merge videos and stills into the same list
 		ArrayList<IImageList> l = new ArrayList<IImageList>();
 
-		if (haveSdCard && location != DataLocation.INTERNAL)
+		if (queries.size() == 1)
 		{
-			if ((inclusion & INCLUDE_IMAGES) != 0)
-			{
-				// if (location == DataLocation.INTERNAL_DATA && uri != null)
-				// {
-				// l.add(new UriImageList(cr, uri));
-				// }
-				// else
-				{
-					l.add(new ImageList(cr, STORAGE_URI, sort, bucketId));
-				}
-			}
-			if ((inclusion & INCLUDE_VIDEOS) != 0)
-			{
-				l.add(new VideoList(cr, VIDEO_STORAGE_URI, sort, bucketId));
-			}
+			l.add(callQuietly(queries.get(0)));
 		}
-		if (location == DataLocation.INTERNAL || location == DataLocation.ALL)
+		else
 		{
-			if ((inclusion & INCLUDE_IMAGES) != 0)
+			// Run the queries concurrently so the wait is the slowest provider, not the sum.
+			ArrayList<Future<IImageList>> futures = new ArrayList<Future<IImageList>>(queries.size());
+			for (Callable<IImageList> query : queries)
 			{
-				l.add(new ImageList(cr, Images.Media.INTERNAL_CONTENT_URI, sort, bucketId));
+				futures.add(getListExecutor().submit(query));
 			}
-			if ((inclusion & INCLUDE_DRM_IMAGES) != 0)
+			for (Future<IImageList> future : futures)
 			{
-				// Not implemented yet
-				// l.add(new DrmImageList(cr, DrmStore.Images.CONTENT_URI, sort, bucketId));
+				l.add(getQuietly(future));
 			}
 		}
 
@@ -576,7 +711,11 @@ public class ImageManager
 		while (iter.hasNext())
 		{
 			IImageList sublist = iter.next();
-			if (sublist.isEmpty())
+			if (sublist == null)
+			{
+				iter.remove();
+			}
+			else if (sublist.isEmpty())
 			{
 				sublist.close();
 				iter.remove();
@@ -586,13 +725,64 @@ public class ImageManager
 		if (l.size() == 1)
 		{
 			IImageList list = l.get(0);
+			GalleryMetrics.end(GalleryMetrics.LIST_BUILD, start);
 			return list;
 		}
 
-		ImageListUber uber = new ImageListUber(l.toArray(new IImageList[l.size()]), sort);
+		ImageListUber uber = new ImageListUber(l.toArray(new IImageList[l.size()]), param.mSort);
+		GalleryMetrics.end(GalleryMetrics.LIST_BUILD, start);
 		return uber;
 	}
 
+	/**
+	 * Like makeImageList, but returns at once. The sublist queries run in the background and are
+	 * merged into the returned list as they complete; the listener is told each time. Lists that
+	 * need no query are returned fully built.
+	 */
+	public static IImageList makeImageListAsync(Context context, ImageListParam param, AsyncImageList.Listener listener)
+	{
+		IImageList simple = makeSimpleImageList(context, param);
+		if (simple != null)
+		{
+			return simple;
+		}
+		return new AsyncImageList(getSublistQueries(context.getContentResolver(), param), param.mSort,
+				getListExecutor(), listener);
+	}
+
+	// Returns the lists that are cheap to build directly, or null if the param needs sublist queries.
+	static IImageList makeSimpleImageList(Context context, ImageListParam param)
+	{
+		if (param.mIsEmptyImageList)
+		{
+			return new EmptyImageList();
+		}
+		Uri uri = param.mUri;
+
+		// A list for one uri shows that uri even while synthetic lists stand in for MediaStore.
+		if (uri != null && context != null)
+		{
+			if (param.mLocation != DataLocation.INTERNAL_DATA)
+			{
+				return new SingleImageList(context, uri);
+			}
+			else
+			{
+				return new UriImageList(context, uri);
+			}
+		}
+		SyntheticImageList.Spec spec = sSyntheticSpec;
+		if (spec != null)
+		{
+			return new SyntheticImageList(spec, param.mSort);
+		}
+		if (context == null)
+		{
+			return new EmptyImageList();
+		}
+		return null;
+	}
+
 	// This is a convenience function to create an image list from a Uri.
 	public static IImageList makeImageList(Context context, Uri uri, int sort)
 	{
@@ -643,4 +833,25 @@ public class ImageManager
 			return null;
 		}
 	}
+
+	/**
+	 * Query new image and video lists of at least minRows rows by keyset: each page is the next
+	 * few hundred rows after the last sort key seen, so the first page doesn't wait for the whole
+	 * library to be sorted. Pass 0 to page every list, or Integer.MAX_VALUE, the default, to never
+	 * page. Paged lists have no ListColumns, so getSortKeys() is null and a refresh reads every
+	 * page; only worth it where the first screen matters more than section labels.
+	 */
+	public static void setKeysetPagingThreshold(int minRows)
+	{
+		sKeysetPagingThreshold = minRows;
+	}
+
+	/**
+	 * Generate every new list from the spec instead of querying MediaStore, so performance runs
+	 * see the same data on any device. Pass null to go back to MediaStore.
+	 */
+	public static void setSyntheticSpec(SyntheticImageList.Spec spec)
+	{
+		sSyntheticSpec = spec;
+	}
 }
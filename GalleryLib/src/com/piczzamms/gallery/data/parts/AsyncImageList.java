@@ -0,0 +1,292 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.piczzamms.gallery.top.GalleryMetrics;
+
+/**
+ * An image list whose sublists are queried concurrently in the background.
+ *
+ * The list is returned straight away and starts out empty. As each sublist query completes it is
+ * merged in on the UI thread, empty sublists are dropped, and the listener is told so the grid can
+ * show what has arrived without waiting for the slowest provider.
+ *
+ * Built and changed on the UI thread. Each merge replaces the current union rather than changing
+ * it, so reads from other threads take the current one once and see a consistent list.
+ */
+public class AsyncImageList implements IImageList
+{
+	public interface Listener
+	{
+		/**
+		 * Called on the UI thread each time a sublist has been merged in. Positions may have
+		 * changed. complete is true once every sublist has answered.
+		 */
+		public void onImageListChanged(AsyncImageList list, boolean complete);
+	}
+
+	static final String				TAG	= "AsyncImageList";
+
+	final Handler					mHandler;
+	final ArrayList<Future<?>>		mFutures;
+	final IImageList[]				mResults;
+	final int						mSort;
+	final long						mStart;
+	boolean							mClosed;
+	volatile IImageList				mCurrent;
+	Listener						mListener;
+	OnChangeListener				mOnChangeListener;
+	int								mPending;
+
+	// Content changes in the current union are reported as changes to this list.
+	final OnChangeListener			mCurrentListener	= new OnChangeListener()
+															{
+																public void onImageListChanged(IImageList list,
+																		ListDelta delta)
+																{
+																	if (list == mCurrent && mOnChangeListener != null)
+																	{
+																		mOnChangeListener.onImageListChanged(
+																				AsyncImageList.this, delta);
+																	}
+																}
+															};
+
+	public AsyncImageList(List<Callable<IImageList>> sublists, int sort, ExecutorService executor, Listener listener)
+	{
+		mHandler = new Handler(Looper.getMainLooper());
+		mStart = GalleryMetrics.start();
+		mSort = sort;
+		mListener = listener;
+		mResults = new IImageList[sublists.size()];
+		mFutures = new ArrayList<Future<?>>(sublists.size());
+		mPending = sublists.size();
+
+		for (int i = 0; i < mResults.length; i++)
+		{
+			mFutures.add(executor.submit(query(i, sublists.get(i))));
+		}
+	}
+
+	public boolean canDrag()
+	{
+		IImageList current = mCurrent;
+		return current != null && current.canDrag();
+	}
+
+	public void close()
+	{
+		mClosed = true;
+		mCurrent = null;
+
+		for (Future<?> future : mFutures)
+		{
+			future.cancel(false);
+		}
+		for (int i = 0; i < mResults.length; i++)
+		{
+			if (mResults[i] != null)
+			{
+				mResults[i].close();
+				mResults[i] = null;
+			}
+		}
+	}
+
+	void deliver(int index, IImageList sublist)
+	{
+		if (--mPending == 0)
+		{
+			GalleryMetrics.end(GalleryMetrics.LIST_BUILD, mStart);
+		}
+
+		if (sublist != null)
+		{
+			if (mClosed || sublist.isEmpty())
+			{
+				sublist.close();
+			}
+			else
+			{
+				mResults[index] = sublist;
+				merge(index);
+			}
+		}
+		if (!mClosed && mListener != null)
+		{
+			mListener.onImageListChanged(this, mPending == 0);
+		}
+	}
+
+	public HashMap<String, String> getBucketIds()
+	{
+		IImageList current = mCurrent;
+		return current != null ? current.getBucketIds() : new HashMap<String, String>();
+	}
+
+	public int getCount()
+	{
+		IImageList current = mCurrent;
+		return current != null ? current.getCount() : 0;
+	}
+
+	public IImage getImageAt(int i)
+	{
+		IImageList current = mCurrent;
+		return current != null ? current.getImageAt(i) : null;
+	}
+
+	public IImage getImageForUri(Uri uri)
+	{
+		IImageList current = mCurrent;
+		return current != null ? current.getImageForUri(uri) : null;
+	}
+
+	public int getImageIndex(IImage image)
+	{
+		IImageList current = mCurrent;
+		return current != null ? current.getImageIndex(image) : -1;
+	}
+
+	public long[] getSortKeys()
+	{
+		IImageList current = mCurrent;
+		return current != null ? current.getSortKeys() : new long[0];
+	}
+
+	public boolean isEmpty()
+	{
+		IImageList current = mCurrent;
+		return current == null || current.isEmpty();
+	}
+
+	/**
+	 * @return true until every sublist query has completed.
+	 */
+	public boolean isLoading()
+	{
+		return mPending > 0;
+	}
+
+	// Rebuild the merged view over the sublists that have arrived, in their original order so ties
+	// sort the same way as a synchronously built list. The new sublist's items are reported to the
+	// change listener as inserted, so positional state such as selections follows the rest.
+	void merge(int index)
+	{
+		IImageList previous = mCurrent;
+		ArrayList<IImageList> ready = new ArrayList<IImageList>(mResults.length);
+		int listIndex = -1;
+		for (int i = 0; i < mResults.length; i++)
+		{
+			if (i == index)
+			{
+				listIndex = ready.size();
+			}
+			if (mResults[i] != null)
+			{
+				ready.add(mResults[i]);
+			}
+		}
+		IImageList current;
+		if (ready.size() == 1)
+		{
+			current = ready.get(0);
+		}
+		else
+		{
+			// The previous union is simply dropped; closing it would close the shared sublists.
+			current = new ImageListUber(ready.toArray(new IImageList[ready.size()]), mSort);
+		}
+		if (mOnChangeListener != null)
+		{
+			current.setOnChangeListener(mCurrentListener);
+		}
+		mCurrent = current;
+
+		if (mOnChangeListener != null)
+		{
+			ListDelta delta = null;
+			if (previous != null && current instanceof ImageListUber)
+			{
+				delta = new ListDelta(ListDelta.EMPTY, ((ImageListUber) current).getPositions(listIndex));
+			}
+			mOnChangeListener.onImageListChanged(this, delta);
+		}
+	}
+
+	public void onDrag(int from_index, int to_index)
+	{
+		IImageList current = mCurrent;
+		if (current != null)
+		{
+			current.onDrag(from_index, to_index);
+		}
+	}
+
+	Runnable query(final int index, final Callable<IImageList> factory)
+	{
+		return new Runnable()
+		{
+			public void run()
+			{
+				IImageList sublist = null;
+				try
+				{
+					sublist = factory.call();
+					// Force the query's count now rather than on the UI thread.
+					sublist.getCount();
+				}
+				catch (Exception ex)
+				{
+					Log.e(TAG, "sublist query failed", ex);
+				}
+				final IImageList result = sublist;
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						deliver(index, result);
+					}
+				});
+			}
+		};
+	}
+
+	public boolean removeImage(IImage image)
+	{
+		IImageList current = mCurrent;
+		return current != null && current.removeImage(image);
+	}
+
+	public boolean removeImageAt(int i)
+	{
+		IImageList current = mCurrent;
+		return current != null && current.removeImageAt(i);
+	}
+
+	public void setListener(Listener listener)
+	{
+		mListener = listener;
+	}
+
+	public void setOnChangeListener(OnChangeListener listener)
+	{
+		mOnChangeListener = listener;
+
+		if (mCurrent != null)
+		{
+			mCurrent.setOnChangeListener(listener == null ? null : mCurrentListener);
+		}
+	}
+}
@@ -46,11 +46,13 @@ public abstract class BaseImage implements IImage
 	protected Uri				mUri;
 	protected long				mId;
 	protected String			mDataPath;
-	protected final int			mIndex;
+	protected int				mIndex;
 	protected String			mMimeType;
 	private final long			mDateTaken;
-	private final long			mLastModified;
+	private long				mLastModified;
 	private String				mTitle;
+	// False for images made from ListColumns until the strings have been read from a row.
+	private volatile boolean	mDetailsLoaded;
 
 	protected BaseImageList		mContainer;
 
@@ -70,10 +72,12 @@ public abstract class BaseImage implements IImage
 		mDateTaken = dateTaken;
 		mLastModified = lastModified;
 		mTitle = title;
+		mDetailsLoaded = dataPath != null;
 	}
 
 	public String getDataPath()
 	{
+		loadDetails();
 		return mDataPath;
 	}
 
@@ -144,6 +148,7 @@ public abstract class BaseImage implements IImage
 
 	public long getLastModified()
 	{
+		loadDetails();
 		return mLastModified;
 	}
 
@@ -154,11 +159,13 @@ public abstract class BaseImage implements IImage
 
 	public String getMimeType()
 	{
+		loadDetails();
 		return mMimeType;
 	}
 
 	public String getTitle()
 	{
+		loadDetails();
 		return mTitle;
 	}
 
@@ -204,6 +211,11 @@ public abstract class BaseImage implements IImage
 	}
 
 	public Bitmap getMiniThumbBitmap()
+	{
+		return getMiniThumbBitmap(IImage.ROTATE_AS_NEEDED);
+	}
+
+	public Bitmap getMiniThumbBitmap(boolean rotateAsNeeded)
 	{
 		Bitmap b = null;
 		try
@@ -216,17 +228,62 @@ public abstract class BaseImage implements IImage
 			Log.e(TAG, "miniThumbBitmap got exception", ex);
 			return null;
 		}
-		if (b != null)
+		if (b != null && rotateAsNeeded)
 		{
 			b = Util.rotate(b, getDegreesRotated());
 		}
 		return b;
 	}
 
+	public Bitmap getThumbBitmap(int tier, int targetSize, boolean rotateAsNeeded)
+	{
+		switch (tier)
+		{
+			case IImage.THUMB_TIER_MICRO:
+				return getMiniThumbBitmap(rotateAsNeeded);
+			case IImage.THUMB_TIER_MINI:
+				return getThumbBitmap(rotateAsNeeded);
+			default:
+				// Bound the pixel count so a panorama doesn't decode huge.
+				return getFullSizeBitmap(targetSize, 4 * targetSize * targetSize, rotateAsNeeded, IImage.NO_NATIVE);
+		}
+	}
+
+	boolean isDetailsLoaded()
+	{
+		return mDetailsLoaded;
+	}
+
+	// If the query fails or the row is gone the details stay unloaded, and the next call tries again.
+	void loadDetails()
+	{
+		if (mDetailsLoaded)
+		{
+			return;
+		}
+		synchronized (this)
+		{
+			if (!mDetailsLoaded)
+			{
+				mContainer.loadDetails(this);
+			}
+		}
+	}
+
 	protected void onRemove()
 	{
 	}
 
+	// Called from BaseImageList.loadDetails with the image's lock held.
+	void setDetails(String dataPath, String mimeType, String title, long lastModified)
+	{
+		mDataPath = dataPath;
+		mMimeType = mimeType;
+		mTitle = title == null || title.length() == 0 ? dataPath : title;
+		mLastModified = lastModified;
+		mDetailsLoaded = true;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -16,15 +16,27 @@
 
 package com.piczzamms.gallery.data.parts;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import android.content.ContentResolver;
 import android.content.ContentUris;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.provider.MediaStore.MediaColumns;
 import android.util.Log;
 
+import com.piczzamms.gallery.core.LruCache;
 import com.piczzamms.gallery.data.ImageManager;
 import com.piczzamms.gallery.util.Util;
 
@@ -35,17 +47,43 @@ public abstract class BaseImageList implements IImageList
 {
 	private static final String					TAG					= "BaseImageList";
 	private static final int					CACHE_CAPACITY		= 512;
-	private final LruCache<Integer, BaseImage>	mCache				= new LruCache<Integer, BaseImage>(CACHE_CAPACITY);
+	// Ids per query when loading details in bulk; SQLite's statements have a length limit.
+	private static final int					DETAILS_BATCH		= 500;
+	// Coalesces the burst of notifications a scan or a multi-delete produces.
+	private static final int					REFRESH_DELAY		= 300;
+	// By position; int keyed, so the hit on every getImageAt() from the grid doesn't allocate.
+	private final LruCache<BaseImage>			mCache				= new LruCache<BaseImage>(CACHE_CAPACITY);
+	private final Handler						mHandler			= new Handler(Looper.getMainLooper());
+	private final Runnable						mRefresh			= new Runnable()
+																	{
+																		public void run()
+																		{
+																			refresh();
+																		}
+																	};
 
 	protected ContentResolver					mContentResolver;
 	protected int								mSort;
 
 	protected Uri								mBaseUri;
 	protected Cursor							mCursor;
+	// The rows of mCursor as primitive arrays, read on first use; null in keyset mode.
+	protected ListColumns						mColumns;
 	protected String							mBucketId;
 	protected boolean							mCursorDeactivated	= false;
+	// Bumped whenever mCursor changes under a refresh, so a stale result is thrown away.
+	protected int								mCursorVersion;
+	protected OnChangeListener					mOnChangeListener;
+	protected ContentObserver					mObserver;
+	protected boolean							mRefreshing;
+	protected boolean							mRefreshAgain;
 
-	static final Pattern	sPathWithId	= Pattern.compile("(.*)/\\d+");
+	static final Pattern	sPathWithId		= Pattern.compile("(.*)/\\d+");
+
+	// Use DATE_TAKEN if it's non-null, otherwise use DATE_MODIFIED.
+	// DATE_TAKEN is in milliseconds, but DATE_MODIFIED is in seconds.
+	static final String		SORT_KEY_EXPR	= "case ifnull(datetaken,0)" + " when 0 then date_modified*1000"
+													+ " else datetaken" + " end";
 
 	static String getPathWithoutId(Uri uri)
 	{
@@ -81,6 +119,9 @@ public abstract class BaseImageList implements IImageList
 
 	public void close()
 	{
+		unregisterObserver();
+		mHandler.removeCallbacks(mRefresh);
+		mOnChangeListener = null;
 		try
 		{
 			invalidateCursor();
@@ -95,6 +136,7 @@ public abstract class BaseImageList implements IImageList
 		{
 			mCursor.close();
 			mCursor = null;
+			mColumns = null;
 		}
 	}
 
@@ -121,15 +163,39 @@ public abstract class BaseImageList implements IImageList
 
 	protected abstract Cursor createCursor();
 
+	/**
+	 * For subclasses' createCursor() when useKeysetPaging() says so. The projection must include
+	 * _id, datetaken and date_modified.
+	 */
+	protected Cursor createKeysetCursor(String[] projection)
+	{
+		return new KeysetCursor(this, projection, mSort == ImageManager.SORT_ASCENDING);
+	}
+
 	public int getCount()
 	{
-		Cursor cursor = getCursor();
-		if (cursor == null)
-			return 0;
+		// The cursor is fetched under the lock since a refresh may swap and close it.
 		synchronized (this)
 		{
-			return cursor.getCount();
+			ListColumns columns = getColumns();
+			if (columns != null)
+			{
+				return columns.mCount;
+			}
+			Cursor cursor = getCursor();
+			return cursor == null ? 0 : cursor.getCount();
+		}
+	}
+
+	// Called with the lock held.
+	ListColumns getColumns()
+	{
+		Cursor cursor = getCursor();
+		if (mColumns == null && cursor != null && !(cursor instanceof KeysetCursor))
+		{
+			mColumns = ListColumns.read(cursor);
 		}
+		return mColumns;
 	}
 
 	private Cursor getCursor()
@@ -142,23 +208,40 @@ public abstract class BaseImageList implements IImageList
 			{
 				mCursor.requery();
 				mCursorDeactivated = false;
+				mColumns = null;
 			}
 			return mCursor;
 		}
 	}
 
+	/**
+	 * For subclasses' getBucketIds(): the buckets from BucketIndex, or null if it doesn't cover this
+	 * list or hasn't loaded yet and the list has to query them itself.
+	 */
+	protected HashMap<String, String> getIndexedBucketIds()
+	{
+		return BucketIndex.instance().getBucketIds(mBaseUri, mBucketId);
+	}
+
 	public IImage getImageAt(int i)
 	{
 		BaseImage result = mCache.get(i);
 		if (result == null)
 		{
-			Cursor cursor = getCursor();
-			if (cursor == null)
-			{
-				return null;
-			}
 			synchronized (this)
 			{
+				ListColumns columns = getColumns();
+				if (columns != null)
+				{
+					result = i >= 0 && i < columns.mCount ? loadImageFromColumns(columns, i) : null;
+					mCache.put(i, result);
+					return result;
+				}
+				Cursor cursor = getCursor();
+				if (cursor == null)
+				{
+					return null;
+				}
 				result = cursor.moveToPosition(i) ? loadImageFromCursor(cursor) : null;
 				mCache.put(i, result);
 			}
@@ -182,13 +265,23 @@ public abstract class BaseImageList implements IImageList
 			return null;
 		}
 		// TODO: design a better method to get URI of specified ID
-		Cursor cursor = getCursor();
-		if (cursor == null)
-		{
-			return null;
-		}
 		synchronized (this)
 		{
+			Cursor cursor = getCursor();
+			if (cursor == null)
+			{
+				return null;
+			}
+			if (cursor instanceof KeysetCursor)
+			{
+				return getImageForId((KeysetCursor) cursor, matchId);
+			}
+			ListColumns columns = getColumns();
+			if (columns != null)
+			{
+				int i = columns.indexOf(matchId);
+				return i < 0 ? null : (BaseImage) getImageAt(i);
+			}
 			cursor.moveToPosition(-1); // before first
 			for (int i = 0; cursor.moveToNext(); ++i)
 			{
@@ -207,6 +300,44 @@ public abstract class BaseImageList implements IImageList
 		}
 	}
 
+	// Look up the row's sort key, then binary search the keys read so far.
+	BaseImage getImageForId(KeysetCursor cursor, long id)
+	{
+		Cursor row = query(new String[] {
+				BaseColumns._ID, ImageColumns.DATE_TAKEN, MediaColumns.DATE_MODIFIED }, BaseColumns._ID + " = ?",
+				new String[] {
+					Long.toString(id) }, null);
+		if (row == null)
+		{
+			return null;
+		}
+		long key;
+		try
+		{
+			if (!row.moveToFirst())
+			{
+				return null;
+			}
+			key = row.getLong(1) == 0 ? row.getLong(2) * 1000 : row.getLong(1);
+		}
+		finally
+		{
+			row.close();
+		}
+		int i = cursor.findPosition(key, id);
+		if (i < 0)
+		{
+			return null;
+		}
+		BaseImage image = mCache.get(i);
+		if (image == null && cursor.moveToPosition(i))
+		{
+			image = loadImageFromCursor(cursor);
+			mCache.put(i, image);
+		}
+		return image;
+	}
+
 	protected abstract long getImageId(Cursor cursor);
 
 	public int getImageIndex(IImage image)
@@ -214,6 +345,41 @@ public abstract class BaseImageList implements IImageList
 		return ((BaseImage) image).mIndex;
 	}
 
+	/**
+	 * @return the date position i is sorted by, read from the columns or the keyset cursor
+	 *         rather than by making an image.
+	 */
+	public long getSortKey(int i)
+	{
+		synchronized (this)
+		{
+			ListColumns columns = getColumns();
+			if (columns != null)
+			{
+				return columns.mKeys[i];
+			}
+			Cursor cursor = getCursor();
+			if (cursor instanceof KeysetCursor)
+			{
+				return ((KeysetCursor) cursor).getSortKey(i);
+			}
+		}
+		IImage image = getImageAt(i);
+		return image != null ? image.getDateTaken() : 0;
+	}
+
+	/**
+	 * @return the shared sort keys from ListColumns, or null in keyset mode.
+	 */
+	public long[] getSortKeys()
+	{
+		synchronized (this)
+		{
+			ListColumns columns = getColumns();
+			return columns != null ? columns.mKeys : null;
+		}
+	}
+
 	protected void invalidateCache()
 	{
 		mCache.clear();
@@ -225,6 +391,7 @@ public abstract class BaseImageList implements IImageList
 			return;
 		mCursor.deactivate();
 		mCursorDeactivated = true;
+		mCursorVersion++;
 	}
 
 	boolean isChildImageUri(Uri uri)
@@ -244,6 +411,112 @@ public abstract class BaseImageList implements IImageList
 		return getCount() == 0;
 	}
 
+	/**
+	 * Query the strings left out of images made from ListColumns, for every image that hasn't
+	 * loaded them yet: one query per list for each DETAILS_BATCH images, instead of one per image
+	 * as getMimeType() and the like would make. Images from other kinds of list are skipped.
+	 */
+	public static void loadDetails(List<? extends IImage> images)
+	{
+		HashMap<BaseImageList, ArrayList<BaseImage>> byList = new HashMap<BaseImageList, ArrayList<BaseImage>>();
+
+		for (IImage image : images)
+		{
+			if (!(image instanceof BaseImage))
+			{
+				continue;
+			}
+			BaseImage base = (BaseImage) image;
+			if (base.isDetailsLoaded() || base.mContainer == null)
+			{
+				continue;
+			}
+			ArrayList<BaseImage> pending = byList.get(base.mContainer);
+			if (pending == null)
+			{
+				pending = new ArrayList<BaseImage>();
+				byList.put(base.mContainer, pending);
+			}
+			pending.add(base);
+		}
+		for (Map.Entry<BaseImageList, ArrayList<BaseImage>> entry : byList.entrySet())
+		{
+			ArrayList<BaseImage> pending = entry.getValue();
+			for (int start = 0; start < pending.size(); start += DETAILS_BATCH)
+			{
+				entry.getKey().loadDetails(pending.subList(start, Math.min(pending.size(), start + DETAILS_BATCH)));
+			}
+		}
+	}
+
+	/**
+	 * Query the strings left out of an image made from ListColumns.
+	 */
+	void loadDetails(BaseImage image)
+	{
+		loadDetails(Collections.singletonList(image));
+	}
+
+	// Images whose row is missing, or all of them if the query fails, are left unloaded.
+	void loadDetails(List<BaseImage> images)
+	{
+		if (mContentResolver == null || images.isEmpty())
+		{
+			return;
+		}
+		HashMap<Long, BaseImage> byId = new HashMap<Long, BaseImage>();
+		// The ids are inlined, as in queryPage().
+		StringBuilder where = new StringBuilder(BaseColumns._ID).append(" IN (");
+		for (int i = 0, n = images.size(); i < n; i++)
+		{
+			BaseImage image = images.get(i);
+			byId.put(image.mId, image);
+			where.append(i == 0 ? "" : ",").append(image.mId);
+		}
+		where.append(')');
+
+		Cursor cursor = null;
+		try
+		{
+			cursor = query(new String[] {
+					BaseColumns._ID, MediaColumns.DATA, MediaColumns.MIME_TYPE, MediaColumns.TITLE,
+					MediaColumns.DATE_MODIFIED }, where.toString(), null, null);
+			while (cursor != null && cursor.moveToNext())
+			{
+				BaseImage image = byId.get(cursor.getLong(0));
+				if (image == null)
+				{
+					continue;
+				}
+				synchronized (image)
+				{
+					if (!image.isDetailsLoaded())
+					{
+						image.setDetails(cursor.getString(1), cursor.getString(2), cursor.getString(3),
+								cursor.getLong(4) * 1000);
+					}
+				}
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			Log.e(TAG, "cannot load details of " + images.size() + " images", ex);
+		}
+		finally
+		{
+			if (cursor != null)
+			{
+				cursor.close();
+			}
+		}
+	}
+
+	/**
+	 * Make the image at position i from the slim columns. Its date taken is the sort key; the
+	 * strings and last modified date are loaded on first use.
+	 */
+	protected abstract BaseImage loadImageFromColumns(ListColumns columns, int i);
+
 	protected abstract BaseImage loadImageFromCursor(Cursor cursor);
 
 	@Override
@@ -251,6 +524,187 @@ public abstract class BaseImageList implements IImageList
 	{
 	}
 
+	/**
+	 * Query the list's rows with an extra condition ANDed to its own selection.
+	 */
+	Cursor query(String[] projection, String where, String[] whereArgs, String sortOrder)
+	{
+		String selection = whereClause();
+		String[] args = whereClauseArgs();
+
+		if (where != null)
+		{
+			selection = selection == null ? where : "(" + selection + ") AND (" + where + ")";
+
+			if (whereArgs != null)
+			{
+				int count = args == null ? 0 : args.length;
+				String[] all = new String[count + whereArgs.length];
+				if (args != null)
+				{
+					System.arraycopy(args, 0, all, 0, count);
+				}
+				System.arraycopy(whereArgs, 0, all, count, whereArgs.length);
+				args = all;
+			}
+		}
+		return mContentResolver.query(mBaseUri, projection, selection, args, sortOrder);
+	}
+
+	int queryCount()
+	{
+		Cursor cursor = query(new String[] {
+			"count(*)" }, null, null, null);
+		if (cursor == null)
+		{
+			return 0;
+		}
+		try
+		{
+			return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		}
+		finally
+		{
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Query at most limit rows in list order, starting after the row with the given sort key and
+	 * id when after is set.
+	 */
+	Cursor queryPage(String[] projection, boolean after, long key, long id, int limit)
+	{
+		String where = null;
+
+		if (after)
+		{
+			// The values are inlined: bound arguments are strings, and SQLite never considers an
+			// integer equal to a string.
+			String op = mSort == ImageManager.SORT_ASCENDING ? " > " : " < ";
+			where = SORT_KEY_EXPR + op + key + " OR (" + SORT_KEY_EXPR + " = " + key + " AND " + BaseColumns._ID + op
+					+ id + ")";
+		}
+		// MediaStore passes the sort order straight to SQLite, which is the only way to limit a query.
+		return query(projection, where, null, sortOrder() + " LIMIT " + limit);
+	}
+
+	long[] readIds(Cursor cursor)
+	{
+		if (cursor == null)
+		{
+			return new long[0];
+		}
+		synchronized (this)
+		{
+			long[] ids = new long[cursor.getCount()];
+			if (cursor instanceof KeysetCursor)
+			{
+				// The ids are kept as pages are read, so no row needs to be moved to.
+				KeysetCursor keyset = (KeysetCursor) cursor;
+				for (int i = 0; i < ids.length; i++)
+				{
+					ids[i] = keyset.getId(i);
+				}
+				return ids;
+			}
+			cursor.moveToPosition(-1);
+			for (int i = 0; cursor.moveToNext(); i++)
+			{
+				ids[i] = getImageId(cursor);
+			}
+			return ids;
+		}
+	}
+
+	/**
+	 * Requery in the background and diff the ids against the current cursor. Only one refresh
+	 * runs at a time; a change arriving meanwhile queues another.
+	 */
+	void refresh()
+	{
+		if (mContentResolver == null || mOnChangeListener == null)
+		{
+			return;
+		}
+		if (mRefreshing)
+		{
+			mRefreshAgain = true;
+			return;
+		}
+		mRefreshing = true;
+		final int version = mCursorVersion;
+
+		ImageManager.getListExecutor().execute(new Runnable()
+		{
+			public void run()
+			{
+				Cursor cursor = null;
+				ListColumns columns = null;
+				ListDelta delta = null;
+				try
+				{
+					long[] oldIds;
+					synchronized (BaseImageList.this)
+					{
+						ListColumns oldColumns = getColumns();
+						oldIds = oldColumns != null ? oldColumns.mIds : readIds(getCursor());
+					}
+					cursor = createCursor();
+
+					if (cursor instanceof KeysetCursor)
+					{
+						delta = ListDelta.diff(oldIds, readIds(cursor));
+					}
+					else if (cursor != null)
+					{
+						columns = ListColumns.read(cursor);
+						delta = ListDelta.diff(oldIds, columns.mIds);
+					}
+				}
+				catch (Exception ex)
+				{
+					Log.e(TAG, "refresh failed", ex);
+				}
+				final Cursor result = cursor;
+				final ListColumns resultColumns = columns;
+				final ListDelta resultDelta = delta;
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						swapCursor(version, result, resultColumns, resultDelta);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Move the cached images to their new positions, dropping the removed ones. A null delta
+	 * drops everything.
+	 */
+	void remapCache(ListDelta delta)
+	{
+		ArrayList<BaseImage> images = mCache.values();
+		mCache.clear();
+
+		if (delta == null)
+		{
+			return;
+		}
+		for (BaseImage image : images)
+		{
+			int index = delta.map(image.mIndex);
+			if (index >= 0)
+			{
+				image.mIndex = index;
+				mCache.put(index, image);
+			}
+		}
+	}
+
 	public boolean removeImage(IImage image)
 	{
 		// TODO: need to delete the thumbnails as well
@@ -273,6 +727,38 @@ public abstract class BaseImageList implements IImageList
 		return removeImage(getImageAt(i));
 	}
 
+	void scheduleRefresh()
+	{
+		mHandler.removeCallbacks(mRefresh);
+		mHandler.postDelayed(mRefresh, REFRESH_DELAY);
+	}
+
+	/**
+	 * Watch mBaseUri while a listener is set. Changes are diffed against the current cursor and
+	 * reported as a ListDelta, so callers can patch their caches instead of rebuilding the list.
+	 */
+	public void setOnChangeListener(OnChangeListener listener)
+	{
+		mOnChangeListener = listener;
+
+		if (listener == null)
+		{
+			unregisterObserver();
+		}
+		else if (mObserver == null && mContentResolver != null)
+		{
+			mObserver = new ContentObserver(mHandler)
+			{
+				@Override
+				public void onChange(boolean selfChange)
+				{
+					scheduleRefresh();
+				}
+			};
+			mContentResolver.registerContentObserver(mBaseUri, true, mObserver);
+		}
+	}
+
 	// This provides a default sorting order string for subclasses.
 	// The list is first sorted by date, then by id. The order can be ascending
 	// or descending, depending on the mSort variable.
@@ -282,12 +768,82 @@ public abstract class BaseImageList implements IImageList
 	{
 		String ascending = (mSort == ImageManager.SORT_ASCENDING) ? " ASC" : " DESC";
 
-		// Use DATE_TAKEN if it's non-null, otherwise use DATE_MODIFIED.
-		// DATE_TAKEN is in milliseconds, but DATE_MODIFIED is in seconds.
-		String dateExpr = "case ifnull(datetaken,0)" + " when 0 then date_modified*1000" + " else datetaken" + " end";
-
 		// Add id to the end so that we don't ever get random sorting
 		// which could happen, I suppose, if the date values are the same.
-		return dateExpr + ascending + ", _id" + ascending;
+		return SORT_KEY_EXPR + ascending + ", _id" + ascending;
+	}
+
+	void swapCursor(int version, Cursor cursor, ListColumns columns, ListDelta delta)
+	{
+		mRefreshing = false;
+
+		if (mContentResolver == null || version != mCursorVersion)
+		{
+			// Closed, or the cursor was requeried underneath us; the ids no longer match.
+			if (cursor != null)
+			{
+				cursor.close();
+			}
+			if (mContentResolver != null)
+			{
+				scheduleRefresh();
+			}
+			return;
+		}
+		if (mRefreshAgain)
+		{
+			mRefreshAgain = false;
+			scheduleRefresh();
+		}
+		if (cursor == null)
+		{
+			return;
+		}
+		Cursor old;
+		synchronized (this)
+		{
+			old = mCursor;
+			mCursor = cursor;
+			mColumns = columns;
+			mCursorDeactivated = false;
+			mCursorVersion++;
+			remapCache(delta);
+		}
+		if (old != null)
+		{
+			old.close();
+		}
+		if ((delta == null || !delta.isEmpty()) && mOnChangeListener != null)
+		{
+			mOnChangeListener.onImageListChanged(this, delta);
+		}
+	}
+
+	protected abstract String whereClause();
+
+	protected abstract String[] whereClauseArgs();
+
+	/**
+	 * For subclasses' createCursor(): true if the list has at least
+	 * ImageManager.getKeysetPagingThreshold() rows, by an unsorted count, and so should be
+	 * queried a page at a time.
+	 */
+	protected boolean useKeysetPaging()
+	{
+		int threshold = ImageManager.getKeysetPagingThreshold();
+		if (threshold == Integer.MAX_VALUE)
+		{
+			return false;
+		}
+		return threshold <= 0 || queryCount() >= threshold;
+	}
+
+	void unregisterObserver()
+	{
+		if (mObserver != null && mContentResolver != null)
+		{
+			mContentResolver.unregisterContentObserver(mObserver);
+		}
+		mObserver = null;
 	}
 }
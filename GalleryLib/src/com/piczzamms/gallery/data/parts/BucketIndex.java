@@ -0,0 +1,453 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
+import android.provider.MediaStore.Images;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.provider.MediaStore.MediaColumns;
+import android.provider.MediaStore.Video;
+import android.util.Log;
+
+import com.piczzamms.gallery.data.ImageManager;
+import com.piczzamms.gallery.util.Util;
+
+/**
+ * A summary of every bucket (album) on external storage: name, number of images and videos, and
+ * the newest item to use as a cover.
+ *
+ * Each provider is summarized by one unsorted scan of its bucket and date columns, so an album
+ * picker never has to open a list per bucket. The summary is kept in memory and each provider is
+ * scanned again, in the background, once MediaStore has stopped reporting changes to it for
+ * REFRESH_DELAY. The galleries load() it when created and release() it when destroyed; it holds
+ * the application's ContentResolver, so no activity is kept alive. Must be used from the UI
+ * thread, apart from getBucketIds(Uri, String), which image lists call.
+ */
+public class BucketIndex
+{
+	public static class Bucket
+	{
+		public final String	mId;
+		public final String	mName;
+		public int			mImageCount;
+		public int			mVideoCount;
+		/** Sort key (see BaseImageList.sortOrder()) of the newest item. */
+		public long			mNewestDate;
+		public long			mNewestId;
+		public boolean		mNewestIsVideo;
+
+		Bucket(String id, String name)
+		{
+			mId = id;
+			mName = name;
+		}
+
+		public int getCount()
+		{
+			return mImageCount + mVideoCount;
+		}
+
+		/**
+		 * @return the uri of the newest item, for the album's cover.
+		 */
+		public Uri getNewestUri()
+		{
+			return Uri.withAppendedPath(mNewestIsVideo ? Video.Media.EXTERNAL_CONTENT_URI
+					: Images.Media.EXTERNAL_CONTENT_URI, Long.toString(mNewestId));
+		}
+	}
+
+	public interface Listener
+	{
+		/**
+		 * Called on the UI thread when the summary has been loaded or has changed.
+		 */
+		public void onBucketsChanged(BucketIndex index);
+	}
+
+	/**
+	 * One summary row per bucket and provider.
+	 */
+	static class Row
+	{
+		String	mId;
+		String	mName;
+		int		mCount;
+		long	mNewestDate;
+		long	mNewestId;
+	}
+
+	static final String			TAG				= "BucketIndex";
+
+	static final int			PROVIDER_IMAGES	= 0;
+	static final int			PROVIDER_VIDEOS	= 1;
+	static final int			PROVIDER_COUNT	= 2;
+
+	// Coalesces the burst of notifications a scan or a multi-delete produces, as BaseImageList
+	// does; every refresh reads every row of the provider.
+	static final int			REFRESH_DELAY	= 300;
+
+	// Counts and the newest item are worked out while scanning, so the query is a plain one that
+	// any provider can serve.
+	static final String[]		PROJECTION		= new String[] {
+			ImageColumns.BUCKET_ID, ImageColumns.BUCKET_DISPLAY_NAME, BaseColumns._ID, ImageColumns.DATE_TAKEN,
+			MediaColumns.DATE_MODIFIED			};
+
+	static final Uri[]			URIS			= new Uri[] {
+			Images.Media.EXTERNAL_CONTENT_URI, Video.Media.EXTERNAL_CONTENT_URI };
+
+	static BucketIndex			sInstance;
+
+	public static synchronized BucketIndex instance()
+	{
+		if (sInstance == null)
+		{
+			sInstance = new BucketIndex();
+		}
+		return sInstance;
+	}
+
+	static Row[] query(ContentResolver cr, int provider)
+	{
+		Cursor cursor;
+		if (provider == PROVIDER_IMAGES)
+		{
+			cursor = cr.query(URIS[provider], PROJECTION, ImageList.WHERE_CLAUSE, ImageList.ACCEPTABLE_IMAGE_TYPES,
+					null);
+		}
+		else
+		{
+			cursor = cr.query(URIS[provider], PROJECTION, null, null, null);
+		}
+		if (cursor == null)
+		{
+			return new Row[0];
+		}
+		try
+		{
+			HashMap<String, Row> rows = new HashMap<String, Row>();
+			while (cursor.moveToNext())
+			{
+				String id = cursor.getString(0);
+				Row row = rows.get(id);
+				if (row == null)
+				{
+					row = new Row();
+					row.mId = id;
+					row.mName = cursor.getString(1);
+					row.mNewestDate = Long.MIN_VALUE;
+					rows.put(id, row);
+				}
+				row.mCount++;
+				// Same as BaseImageList.SORT_KEY_EXPR.
+				long dateTaken = cursor.getLong(3);
+				long date = dateTaken == 0 ? cursor.getLong(4) * 1000 : dateTaken;
+				if (date > row.mNewestDate)
+				{
+					row.mNewestDate = date;
+					row.mNewestId = cursor.getLong(2);
+				}
+			}
+			return rows.values().toArray(new Row[rows.size()]);
+		}
+		finally
+		{
+			cursor.close();
+		}
+	}
+
+	List<Bucket>					mBuckets;
+	volatile ContentResolver		mContentResolver;
+	final Handler					mHandler		= new Handler(Looper.getMainLooper());
+	final ArrayList<Listener>		mListeners		= new ArrayList<Listener>();
+	final ContentObserver[]			mObservers		= new ContentObserver[PROVIDER_COUNT];
+	final boolean[]					mQuerying		= new boolean[PROVIDER_COUNT];
+	final boolean[]					mQueryAgain		= new boolean[PROVIDER_COUNT];
+	final Runnable[]				mRefreshes		= new Runnable[PROVIDER_COUNT];
+	final Row[][]					mRows			= new Row[PROVIDER_COUNT][];
+	// Number of load() calls not yet matched by release().
+	int								mUsers;
+
+	BucketIndex()
+	{
+	}
+
+	public void addListener(Listener listener)
+	{
+		if (!mListeners.contains(listener))
+		{
+			mListeners.add(listener);
+		}
+	}
+
+	/**
+	 * @return the bucket with the given id, or null.
+	 */
+	public Bucket getBucket(String bucketId)
+	{
+		if (mBuckets != null)
+		{
+			for (Bucket bucket : mBuckets)
+			{
+				if (bucket.mId.equals(bucketId))
+				{
+					return bucket;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return bucket ids to names, as IImageList.getBucketIds() returns them, or null until the
+	 *         first summary has loaded.
+	 */
+	public HashMap<String, String> getBucketIds()
+	{
+		if (mBuckets == null)
+		{
+			return null;
+		}
+		HashMap<String, String> ids = new HashMap<String, String>();
+		for (Bucket bucket : mBuckets)
+		{
+			ids.put(bucket.mId, bucket.mName);
+		}
+		return ids;
+	}
+
+	/**
+	 * @return bucket ids to names in the list of the given provider uri, only bucketId's if it
+	 *         isn't null. Null if uri isn't summarized here or its summary isn't loaded. May be
+	 *         called from any thread.
+	 */
+	public HashMap<String, String> getBucketIds(Uri uri, String bucketId)
+	{
+		int provider = Util.indexOf(URIS, uri);
+		if (provider < 0 || mContentResolver == null)
+		{
+			return null;
+		}
+		Row[] rows;
+		synchronized (this)
+		{
+			rows = mRows[provider];
+		}
+		if (rows == null)
+		{
+			return null;
+		}
+		HashMap<String, String> ids = new HashMap<String, String>();
+		for (Row row : rows)
+		{
+			if (row.mId != null && (bucketId == null || bucketId.equals(row.mId)))
+			{
+				ids.put(row.mId, row.mName);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the buckets, newest first, or null until the first summary has loaded. The list is
+	 *         replaced, never modified, when the summary changes.
+	 */
+	public List<Bucket> getBuckets()
+	{
+		return mBuckets;
+	}
+
+	/**
+	 * Start watching MediaStore and load the summary if it hasn't been. Listeners are told when it
+	 * arrives. Each call must be matched by a release().
+	 */
+	public void load(Context context)
+	{
+		if (mUsers++ > 0)
+		{
+			return;
+		}
+		ContentResolver cr = context.getApplicationContext().getContentResolver();
+		mContentResolver = cr;
+
+		for (int i = 0; i < PROVIDER_COUNT; i++)
+		{
+			final int provider = i;
+			mRefreshes[i] = new Runnable()
+			{
+				public void run()
+				{
+					refresh(provider);
+				}
+			};
+			mObservers[i] = new ContentObserver(mHandler)
+			{
+				@Override
+				public void onChange(boolean selfChange)
+				{
+					mHandler.removeCallbacks(mRefreshes[provider]);
+					mHandler.postDelayed(mRefreshes[provider], REFRESH_DELAY);
+				}
+			};
+			cr.registerContentObserver(URIS[i], true, mObservers[i]);
+			refresh(i);
+		}
+	}
+
+	// Rebuild the bucket list from the latest rows of each provider.
+	void merge()
+	{
+		HashMap<String, Bucket> buckets = new HashMap<String, Bucket>();
+
+		for (int provider = 0; provider < PROVIDER_COUNT; provider++)
+		{
+			if (mRows[provider] == null)
+			{
+				continue;
+			}
+			for (Row row : mRows[provider])
+			{
+				if (row.mId == null)
+				{
+					continue;
+				}
+				Bucket bucket = buckets.get(row.mId);
+				boolean first = bucket == null;
+				if (first)
+				{
+					bucket = new Bucket(row.mId, row.mName);
+					buckets.put(row.mId, bucket);
+				}
+				if (provider == PROVIDER_VIDEOS)
+				{
+					bucket.mVideoCount = row.mCount;
+				}
+				else
+				{
+					bucket.mImageCount = row.mCount;
+				}
+				if (first || row.mNewestDate > bucket.mNewestDate)
+				{
+					bucket.mNewestDate = row.mNewestDate;
+					bucket.mNewestId = row.mNewestId;
+					bucket.mNewestIsVideo = provider == PROVIDER_VIDEOS;
+				}
+			}
+		}
+		ArrayList<Bucket> list = new ArrayList<Bucket>(buckets.values());
+		Collections.sort(list, new Comparator<Bucket>()
+		{
+			public int compare(Bucket b1, Bucket b2)
+			{
+				return b1.mNewestDate == b2.mNewestDate ? 0 : (b1.mNewestDate < b2.mNewestDate ? 1 : -1);
+			}
+		});
+		mBuckets = Collections.unmodifiableList(list);
+
+		for (int i = mListeners.size() - 1; i >= 0; i--)
+		{
+			mListeners.get(i).onBucketsChanged(this);
+		}
+	}
+
+	// Query one provider in the background; a change arriving meanwhile queues another query.
+	void refresh(final int provider)
+	{
+		if (mContentResolver == null)
+		{
+			return;
+		}
+		if (mQuerying[provider])
+		{
+			mQueryAgain[provider] = true;
+			return;
+		}
+		mQuerying[provider] = true;
+		final ContentResolver cr = mContentResolver;
+
+		ImageManager.getListExecutor().execute(new Runnable()
+		{
+			public void run()
+			{
+				Row[] rows = null;
+				try
+				{
+					rows = query(cr, provider);
+				}
+				catch (RuntimeException ex)
+				{
+					Log.e(TAG, "bucket query failed", ex);
+				}
+				final Row[] result = rows;
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						mQuerying[provider] = false;
+
+						if (mContentResolver == null)
+						{
+							return;
+						}
+						if (result != null)
+						{
+							synchronized (BucketIndex.this)
+							{
+								mRows[provider] = result;
+							}
+							merge();
+						}
+						if (mQueryAgain[provider])
+						{
+							mQueryAgain[provider] = false;
+							refresh(provider);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	public void removeListener(Listener listener)
+	{
+		mListeners.remove(listener);
+	}
+
+	/**
+	 * Match a load(). Once every load() has been released, stop watching MediaStore and drop the
+	 * summary.
+	 */
+	public void release()
+	{
+		if (mUsers == 0 || --mUsers > 0)
+		{
+			return;
+		}
+		for (int i = 0; i < PROVIDER_COUNT; i++)
+		{
+			mContentResolver.unregisterContentObserver(mObservers[i]);
+			mObservers[i] = null;
+			mHandler.removeCallbacks(mRefreshes[i]);
+			mRefreshes[i] = null;
+
+			synchronized (this)
+			{
+				mRows[i] = null;
+			}
+		}
+		mContentResolver = null;
+		mBuckets = null;
+	}
+}
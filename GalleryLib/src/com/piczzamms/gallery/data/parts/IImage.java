@@ -21,6 +21,8 @@ import java.io.InputStream;
 import android.graphics.Bitmap;
 import android.net.Uri;
 
+import com.piczzamms.gallery.core.SampleSize;
+
 /**
  * The interface of all images used in gallery.
  */
@@ -30,7 +32,13 @@ public interface IImage
 	static final int			MINI_THUMB_TARGET_SIZE		= 96;
 	static final int			THUMBNAIL_MAX_NUM_PIXELS	= 512 * 384;
 	static final int			MINI_THUMB_MAX_NUM_PIXELS	= 128 * 128;
-	static final int			UNCONSTRAINED				= -1;
+	static final int			UNCONSTRAINED				= SampleSize.UNCONSTRAINED;
+
+	/** Thumbnail sources, cheapest first. */
+	public static final int		THUMB_TIER_MICRO			= 0;
+	public static final int		THUMB_TIER_MINI				= 1;
+	public static final int		THUMB_TIER_SAMPLED			= 2;
+	public static final int		THUMB_TIER_COUNT			= 3;
 
 	public static final boolean	ROTATE_AS_NEEDED			= true;
 	public static final boolean	NO_ROTATE					= false;
@@ -68,9 +76,16 @@ public interface IImage
 	// Get the bitmap of the mini thumbnail.
 	public abstract Bitmap getMiniThumbBitmap();
 
+	// Get the bitmap of the mini thumbnail, leaving rotation to the caller if asked.
+	public abstract Bitmap getMiniThumbBitmap(boolean rotateAsNeeded);
+
 	// Get the bitmap of the medium thumbnail
 	public abstract Bitmap getThumbBitmap(boolean rotateAsNeeded);
 
+	// Get a thumbnail from the given THUMB_TIER_* source, at least targetSize on its short side when
+	// the tier allows.
+	public abstract Bitmap getThumbBitmap(int tier, int targetSize, boolean rotateAsNeeded);
+
 	// Get the title of the image
 	public abstract String getTitle();
 
@@ -31,6 +31,7 @@ import android.net.Uri;
 // - DrmImageList
 // - SingleImageList (contains UriImage)
 // - ImageListUber
+// - SyntheticImageList (contains SyntheticImage)
 //
 // IImage
 // - BaseImage (*)
@@ -38,13 +39,31 @@ import android.net.Uri;
 // - Image
 // - DrmImage
 // - UriImage
+// - SyntheticImage
 //
 
 /**
  * The interface of all image collections used in gallery.
+ *
+ * Lists are read from the UI thread and from the image getter and decode threads at the same
+ * time, so reads must be safe from any thread. Changes publish new immutable state, such as
+ * BaseImageList's ListColumns or ImageListUber's merge snapshot, rather than changing what a
+ * reader may be looking at.
  */
 public interface IImageList
 {
+	public interface OnChangeListener
+	{
+		/**
+		 * Called on the UI thread after the underlying content has changed.
+		 * 
+		 * @param delta
+		 *        the removed and inserted positions, or null if positions can't be carried over
+		 *        and everything should be reloaded.
+		 */
+		public void onImageListChanged(IImageList list, ListDelta delta);
+	}
+
 	public boolean canDrag();
 
 	/**
@@ -80,6 +99,12 @@ public interface IImageList
 
 	public int getImageIndex(IImage image);
 
+	/**
+	 * @return the date each position is sorted by, in list order, or null if the list can't
+	 *         provide them without loading every image. The array must not be modified.
+	 */
+	public long[] getSortKeys();
+
 	/**
 	 * @return true if the count of image objects is zero.
 	 */
@@ -104,4 +129,12 @@ public interface IImageList
 	 *        the position
 	 */
 	public boolean removeImageAt(int i);
+
+	/**
+	 * Watch the underlying content for changes. Lists that can't change ignore this.
+	 * 
+	 * @param listener
+	 *        the listener, or null to stop watching.
+	 */
+	public void setOnChangeListener(OnChangeListener listener);
 }
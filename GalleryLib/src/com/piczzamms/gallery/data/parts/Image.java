@@ -47,7 +47,9 @@ public class Image extends BaseImage implements IImage
 			String mimeType, long dateTaken, long lastModified, String title, int rotation)
 	{
 		super(container, cr, id, index, uri, dataPath, mimeType, dateTaken, lastModified, title);
-		mRotation = rotation;
+		// The cursor may predate a rotation that is still being written, or was written after it was
+		// queried.
+		mRotation = RotationQueue.instance().getRotation(uri, rotation);
 	}
 
 	@Override
@@ -56,17 +58,23 @@ public class Image extends BaseImage implements IImage
 		return mRotation;
 	}
 
+	/**
+	 * Set the rotation in memory and queue it to be written to MediaStore and EXIF.
+	 */
 	protected void setDegreesRotated(int degrees)
 	{
 		if (mRotation == degrees)
 			return;
 		mRotation = degrees;
+		RotationQueue.instance().post(this, degrees);
+	}
+
+	// Called from the RotationQueue worker.
+	void saveOrientation(int degrees)
+	{
 		ContentValues values = new ContentValues();
-		values.put(ImageColumns.ORIENTATION, mRotation);
+		values.put(ImageColumns.ORIENTATION, degrees);
 		mContentResolver.update(mUri, values, null, null);
-
-		// TODO: Consider invalidate the cursor in container
-		// ((BaseImageList) getContainer()).invalidateCursor();
 	}
 
 	public boolean isReadonly()
@@ -92,7 +100,7 @@ public class Image extends BaseImage implements IImage
 	 * @param tag
 	 * @param value
 	 */
-	public void replaceExifTag(String tag, String value)
+	public synchronized void replaceExifTag(String tag, String value)
 	{
 		if (mExif == null)
 		{
@@ -105,7 +113,7 @@ public class Image extends BaseImage implements IImage
 	{
 		try
 		{
-			mExif = new ExifInterface(mDataPath);
+			mExif = new ExifInterface(getDataPath());
 		}
 		catch (IOException ex)
 		{
@@ -121,7 +129,8 @@ public class Image extends BaseImage implements IImage
 		}
 	}
 
-	private void setExifRotation(int degrees)
+	// Called from the RotationQueue worker.
+	synchronized void saveExifRotation(int degrees)
 	{
 		try
 		{
@@ -156,14 +165,16 @@ public class Image extends BaseImage implements IImage
 	}
 
 	/**
-	 * Save the rotated image by updating the Exif "Orientation" tag.
+	 * Rotate the image. The new angle takes effect immediately; the Exif "Orientation" tag and
+	 * MediaStore are updated later by the RotationQueue, which coalesces repeated rotations.
 	 * 
 	 * @param degrees
 	 */
 	public boolean rotateImageBy(int degrees)
 	{
 		int newDegrees = (getDegreesRotated() + degrees) % 360;
-		setExifRotation(newDegrees);
+		if (newDegrees < 0)
+			newDegrees += 360;
 		setDegreesRotated(newDegrees);
 
 		return true;
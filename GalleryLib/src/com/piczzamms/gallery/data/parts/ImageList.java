@@ -37,6 +37,11 @@ public class ImageList extends BaseImageList implements IImageList
 
 	public HashMap<String, String> getBucketIds()
 	{
+		HashMap<String, String> indexed = getIndexedBucketIds();
+		if (indexed != null)
+		{
+			return indexed;
+		}
 		Uri uri = mBaseUri.buildUpon().appendQueryParameter("distinct", "true").build();
 		Cursor cursor = Media.query(mContentResolver, uri, new String[] {
 				Media.BUCKET_DISPLAY_NAME, Media.BUCKET_ID }, whereClause(), whereClauseArgs(), null);
@@ -63,7 +68,7 @@ public class ImageList extends BaseImageList implements IImageList
 		super(resolver, imageUri, sort, bucketId);
 	}
 
-	private static final String	WHERE_CLAUSE				= "(" + Media.MIME_TYPE + " in (?, ?, ?))";
+	static final String			WHERE_CLAUSE				= "(" + Media.MIME_TYPE + " in (?, ?, ?))";
 	private static final String	WHERE_CLAUSE_WITH_BUCKET_ID	= WHERE_CLAUSE + " AND " + Media.BUCKET_ID + " = ?";
 
 	protected String whereClause()
@@ -88,7 +93,11 @@ public class ImageList extends BaseImageList implements IImageList
 	@Override
 	protected Cursor createCursor()
 	{
-		Cursor c = Media.query(mContentResolver, mBaseUri, IMAGE_PROJECTION, whereClause(), whereClauseArgs(),
+		if (useKeysetPaging())
+		{
+			return createKeysetCursor(IMAGE_PROJECTION);
+		}
+		Cursor c = Media.query(mContentResolver, mBaseUri, SLIM_PROJECTION, whereClause(), whereClauseArgs(),
 				sortOrder());
 		return c;
 	}
@@ -97,6 +106,10 @@ public class ImageList extends BaseImageList implements IImageList
 			Media._ID, Media.DATA, Media.DATE_TAKEN, Media.MINI_THUMB_MAGIC, Media.ORIENTATION, Media.TITLE,
 			Media.MIME_TYPE, Media.DATE_MODIFIED	};
 
+	// All that ListColumns needs; the rest is loaded per image on first use.
+	static final String[]	SLIM_PROJECTION			= new String[] {
+			Media._ID, Media.DATE_TAKEN, Media.DATE_MODIFIED, Media.ORIENTATION };
+
 	static final int		INDEX_ID				= 0;
 	static final int		INDEX_DATA_PATH			= 1;
 	static final int		INDEX_DATE_TAKEN		= 2;
@@ -112,6 +125,14 @@ public class ImageList extends BaseImageList implements IImageList
 		return cursor.getLong(INDEX_ID);
 	}
 
+	@Override
+	protected BaseImage loadImageFromColumns(ListColumns columns, int i)
+	{
+		long id = columns.mIds[i];
+		return new Image(this, mContentResolver, id, i, contentUri(id), null, null, columns.mKeys[i], 0, null,
+				columns.getDegrees(i));
+	}
+
 	@Override
 	protected BaseImage loadImageFromCursor(Cursor cursor)
 	{
@@ -16,13 +16,11 @@
 
 package com.piczzamms.gallery.data.parts;
 
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.PriorityQueue;
 
 import android.net.Uri;
 
+import com.piczzamms.gallery.core.MergeIndex;
 import com.piczzamms.gallery.data.ImageManager;
 import com.piczzamms.gallery.util.Util;
 
@@ -31,110 +29,107 @@ import com.piczzamms.gallery.util.Util;
  * This class can merge several <code>IImageList</code> into one list and
  * sort them according to the
  * timestamp (The sorting must be same as all the given lists).
+ *
+ * The grid, the viewer and the image getter read the list from different threads. Readers look
+ * positions up in an immutable snapshot of the merge without locking. Extending the merge,
+ * removing an image and sublist changes work on the merge under its lock and then publish a new
+ * snapshot.
  */
 public class ImageListUber implements IImageList
 {
-	static class AscendingComparator implements Comparator<MergeSlot>
+	/**
+	 * Presents a sublist to the merge by the date it is sorted by. The sublist's sort keys are
+	 * used when it has them, or read one at a time from a keyset-paged BaseImageList, so galloping
+	 * through a long run reads an array rather than making an image for every probe.
+	 */
+	static class SublistSource implements MergeIndex.Source
 	{
+		// Sort keys of the sublist, fetched once per version of it. Null to read them one by one.
+		long[]				mKeys;
+		boolean				mKeysRead;
+		final IImageList	mList;
 
-		public int compare(MergeSlot m1, MergeSlot m2)
+		SublistSource(IImageList list)
 		{
-			if (m1.mDateTaken != m2.mDateTaken)
-			{
-				return m1.mDateTaken < m2.mDateTaken ? -1 : 1;
-			}
-			return m1.mListIndex - m2.mListIndex;
+			mList = list;
 		}
-	}
 
-	static class DescendingComparator implements Comparator<MergeSlot>
-	{
+		public int getCount()
+		{
+			return mList.getCount();
+		}
 
-		public int compare(MergeSlot m1, MergeSlot m2)
+		public long getKey(int position)
 		{
-			if (m1.mDateTaken != m2.mDateTaken)
+			long[] keys = getKeys();
+			if (keys != null && position < keys.length)
 			{
-				return m1.mDateTaken < m2.mDateTaken ? 1 : -1;
+				return keys[position];
 			}
-			return m1.mListIndex - m2.mListIndex;
+			if (mList instanceof BaseImageList)
+			{
+				return ((BaseImageList) mList).getSortKey(position);
+			}
+			return mList.getImageAt(position).getDateTaken();
 		}
-	}
-	/**
-	 * A merging slot is used to trace the current position of a sublist. For
-	 * each given sub list, there will be one corresponding merge slot. We
-	 * use merge-sort-like algorithm to build the merged list. At begining,
-	 * we put all the slots in a sorted heap (by timestamp). Each time, we
-	 * pop the slot with earliest timestamp out, get the image, and then move
-	 * the index forward, and put it back to the heap.
-	 */
-	static class MergeSlot
-	{
-		private int					mOffset	= -1;
-		private final IImageList	mList;
 
-		int							mListIndex;
-		long						mDateTaken;
-		IImage						mImage;
-
-		public MergeSlot(IImageList list, int index)
+		long[] getKeys()
 		{
-			mList = list;
-			mListIndex = index;
+			// A sublist that changed without telling us shows up as a new count.
+			if (!mKeysRead || (mKeys != null && mKeys.length != mList.getCount()))
+			{
+				mKeys = mList.getSortKeys();
+				mKeysRead = true;
+			}
+			return mKeys;
 		}
 
-		public boolean next()
+		void invalidate()
 		{
-			if (mOffset >= mList.getCount() - 1)
-				return false;
-			mImage = mList.getImageAt(++mOffset);
-			mDateTaken = mImage.getDateTaken();
-			return true;
+			mKeys = null;
+			mKeysRead = false;
 		}
 	}
 
 	@SuppressWarnings("unused")
 	static final String				TAG	= "ImageListUber";
+	final boolean					mAscending;
+	final SublistSource[]			mSources;
 	final IImageList[]				mSubList;
-	final PriorityQueue<MergeSlot>	mQueue;
-	// This is an array of Longs wherein each Long consists of two components:
-	// "a number" and "an index of sublist".
-	// * The lower 32bit indicates the number of consecutive entries that
-	// belong to a given sublist.
-	//
-	// * The higher 32bit component indicates which sublist we're referring
-	// to.
-	long[]							mSkipList;
-
-	int								mSkipListSize;
-
-	int[]							mSkipCounts;
-
-	int								mLastListIndex;
+	// The merged order, as runs of consecutive positions from one sublist. Also the lock for
+	// changing it and mSources.
+	final MergeIndex				mMerge;
+	// The merge as last published, read without the lock.
+	volatile MergeIndex.Snapshot	mSnapshot;
+
+	OnChangeListener				mOnChangeListener;
+
+	final OnChangeListener			mSublistListener	= new OnChangeListener()
+														{
+															public void onImageListChanged(IImageList list,
+																	ListDelta delta)
+															{
+																int listIndex = Util.indexOf(mSubList, list);
+																if (listIndex >= 0)
+																{
+																	onSublistChanged(listIndex, delta);
+																}
+															}
+														};
 
 	public ImageListUber(IImageList[] sublist, int sort)
 	{
 		mSubList = sublist.clone();
-		mQueue = new PriorityQueue<MergeSlot>(4, sort == ImageManager.SORT_ASCENDING ? new AscendingComparator()
-				: new DescendingComparator());
-		mSkipList = new long[16];
-		mSkipListSize = 0;
-		mSkipCounts = new int[mSubList.length];
-		mLastListIndex = -1;
-		mQueue.clear();
-		for (int i = 0, n = mSubList.length; i < n; ++i)
+		mAscending = sort == ImageManager.SORT_ASCENDING;
+		mSources = new SublistSource[mSubList.length];
+		for (int i = 0; i < mSources.length; i++)
 		{
-			IImageList list = mSubList[i];
-			MergeSlot slot = new MergeSlot(list, i);
-			if (slot.next())
-				mQueue.add(slot);
+			mSources[i] = new SublistSource(mSubList[i]);
 		}
+		mMerge = new MergeIndex(mSources, mAscending);
+		mSnapshot = mMerge.snapshot();
 	}
 
-	// mSkipCounts is used to tally the counts as we traverse
-	// the mSkipList. It's a member variable only so that
-	// we don't have to allocate each time through. Otherwise
-	// it could just as easily be a local.
-
 	@Override
 	public boolean canDrag()
 	{
@@ -176,49 +171,16 @@ public class ImageListUber implements IImageList
 			throw new IndexOutOfBoundsException("index " + index + " out of range max is " + getCount());
 		}
 
-		int skipCounts[] = mSkipCounts;
-		// zero out the mSkipCounts since that's only used for the
-		// duration of the function call.
-		Arrays.fill(skipCounts, 0);
-
-		// a counter of how many images we've skipped in
-		// trying to get to index. alternatively we could
-		// have decremented index but, alas, I liked this
-		// way more.
-		int skipCount = 0;
-
-		// scan the existing mSkipList to see if we've computed
-		// enough to just return the answer
-		for (int i = 0, n = mSkipListSize; i < n; ++i)
+		long location = mSnapshot.locate(index);
+		if (location < 0)
 		{
-			long v = mSkipList[i];
-
-			int offset = (int) (v & 0xFFFFFFFF);
-			int which = (int) (v >> 32);
-			if (skipCount + offset > index)
+			location = mergeTo(index + 1).locate(index);
+			if (location < 0)
 			{
-				int subindex = mSkipCounts[which] + (index - skipCount);
-				return mSubList[which].getImageAt(subindex);
-			}
-			skipCount += offset;
-			mSkipCounts[which] += offset;
-		}
-
-		for (; true; ++skipCount)
-		{
-			MergeSlot slot = nextMergeSlot();
-			if (slot == null)
 				return null;
-			if (skipCount == index)
-			{
-				IImage result = slot.mImage;
-				if (slot.next())
-					mQueue.add(slot);
-				return result;
 			}
-			if (slot.next())
-				mQueue.add(slot);
 		}
+		return mSubList[MergeIndex.listOf(location)].getImageAt(MergeIndex.offsetOf(location));
 	}
 
 	public IImage getImageForUri(Uri uri)
@@ -232,7 +194,7 @@ public class ImageListUber implements IImageList
 		return null;
 	}
 
-	public synchronized int getImageIndex(IImage image)
+	public int getImageIndex(IImage image)
 	{
 		IImageList list = image.getContainer();
 		int listIndex = Util.indexOf(mSubList, list);
@@ -240,40 +202,72 @@ public class ImageListUber implements IImageList
 		{
 			throw new IllegalArgumentException();
 		}
-		int listOffset = list.getImageIndex(image);
+		int offset = list.getImageIndex(image);
+		int index = mSnapshot.indexOf(listIndex, offset);
+		if (index < 0 && offset >= 0)
+		{
+			synchronized (mMerge)
+			{
+				index = mMerge.indexOf(listIndex, offset, true);
+				mSnapshot = mMerge.snapshot();
+			}
+		}
+		return index;
+	}
 
-		// Similar algorithm as getImageAt(int index)
-		int skipCount = 0;
-		for (int i = 0, n = mSkipListSize; i < n; ++i)
+	/**
+	 * @return the merged position of every item of the given sublist, in order.
+	 */
+	int[] getPositions(int listIndex)
+	{
+		int[] positions = new int[mSubList[listIndex].getCount()];
+		synchronized (mMerge)
 		{
-			long value = mSkipList[i];
-			int offset = (int) (value & 0xFFFFFFFF);
-			int which = (int) (value >> 32);
-			if (which == listIndex)
+			for (int i = 0; i < positions.length; i++)
 			{
-				if (listOffset < offset)
-				{
-					return skipCount + listOffset;
-				}
-				listOffset -= offset;
+				positions[i] = mMerge.indexOf(listIndex, i, true);
+			}
+			mSnapshot = mMerge.snapshot();
+		}
+		return positions;
+	}
+
+	/**
+	 * Merge the sublists' keys the same way the lists themselves are merged, without touching
+	 * the merge state.
+	 */
+	public long[] getSortKeys()
+	{
+		long[][] keys = new long[mSubList.length][];
+		int total = 0;
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = mSubList[i].getSortKeys();
+			if (keys[i] == null)
+			{
+				return null;
 			}
-			skipCount += offset;
+			total += keys[i].length;
 		}
+		long[] merged = new long[total];
+		int[] next = new int[keys.length];
 
-		for (; true; ++skipCount)
+		for (int n = 0; n < total; n++)
 		{
-			MergeSlot slot = nextMergeSlot();
-			if (slot == null)
-				return -1;
-			if (slot.mImage == image)
+			// Ties go to the lower list index, as in the comparators.
+			int best = -1;
+			for (int i = 0; i < keys.length; i++)
 			{
-				if (slot.next())
-					mQueue.add(slot);
-				return skipCount;
+				if (next[i] < keys[i].length
+						&& (best < 0 || (mAscending ? keys[i][next[i]] < keys[best][next[best]]
+								: keys[i][next[i]] > keys[best][next[best]])))
+				{
+					best = i;
+				}
 			}
-			if (slot.next())
-				mQueue.add(slot);
+			merged[n] = keys[best][next[best]++];
 		}
+		return merged;
 	}
 
 	public boolean isEmpty()
@@ -287,56 +281,94 @@ public class ImageListUber implements IImageList
 	}
 
 	/**
-	 * Modify the skip list when an image is deleted by finding
-	 * the relevant entry in mSkipList and decrementing the
-	 * counter. This is simple because deletion can never
-	 * cause change the order of images.
+	 * Extend the merge to cover at least count positions and publish it. It goes to twice as far
+	 * as it had got, so reading through the list copies the merge a logarithmic number of times.
+	 *
+	 * @return the latest snapshot.
 	 */
-	void modifySkipCountForDeletedImage(int index)
+	MergeIndex.Snapshot mergeTo(int count)
 	{
-		int skipCount = 0;
-		for (int i = 0, n = mSkipListSize; i < n; i++)
+		synchronized (mMerge)
 		{
-			long v = mSkipList[i];
-			int offset = (int) (v & 0xFFFFFFFF);
-			if (skipCount + offset > index)
+			// Another reader may have got there first, or the sublists may end before count.
+			int merged = mMerge.getMergedCount();
+			if (merged < count)
 			{
-				mSkipList[i] = v - 1;
-				break;
+				mMerge.mergeTo(Math.max(count, merged * 2));
+				if (mMerge.getMergedCount() != merged)
+				{
+					mSnapshot = mMerge.snapshot();
+				}
 			}
-			skipCount += offset;
+			return mSnapshot;
 		}
 	}
 
-	private MergeSlot nextMergeSlot()
+	@Override
+	public void onDrag(int from_index, int to_index)
+	{
+	}
+
+	void onSublistChanged(int listIndex, ListDelta delta)
 	{
-		MergeSlot slot = mQueue.poll();
-		if (slot == null)
+		synchronized (mMerge)
+		{
+			delta = remapDelta(listIndex, delta);
+			mSnapshot = mMerge.snapshot();
+		}
+		if (mOnChangeListener != null)
 		{
-			return null;
+			mOnChangeListener.onImageListChanged(this, delta);
 		}
-		if (slot.mListIndex == mLastListIndex)
+	}
+
+	/**
+	 * Translate a sublist delta into merged positions. Removed positions are looked up in the old
+	 * merge; the merge is then restarted and run as far as the old one had got, plus the
+	 * inserts, so the inserted positions can be looked up in the new one. Positions the merge
+	 * hadn't reached yet can't be cached by anyone, so they are left out. Called with
+	 * the lock held.
+	 */
+	ListDelta remapDelta(int listIndex, ListDelta delta)
+	{
+		mSources[listIndex].invalidate();
+
+		if (delta == null)
 		{
-			int lastIndex = mSkipListSize - 1;
-			++mSkipList[lastIndex];
+			mMerge.reset();
 		}
 		else
 		{
-			mLastListIndex = slot.mListIndex;
-			if (mSkipList.length == mSkipListSize)
+			int merged = mMerge.getMergedCount();
+			int[] removed = new int[delta.mRemoved.length];
+			int removedCount = 0;
+
+			// Within one sublist the merge keeps order, so these stay ascending.
+			for (int offset : delta.mRemoved)
 			{
-				long[] temp = new long[mSkipListSize * 2];
-				System.arraycopy(mSkipList, 0, temp, 0, mSkipListSize);
-				mSkipList = temp;
+				int position = mMerge.indexOf(listIndex, offset, false);
+				if (position >= 0)
+				{
+					removed[removedCount++] = position;
+				}
 			}
-			mSkipList[mSkipListSize++] = (((long) mLastListIndex) << 32) | 1;
-		}
-		return slot;
-	}
+			mMerge.reset();
+			mMerge.mergeTo(merged - removedCount + delta.mInserted.length);
 
-	@Override
-	public void onDrag(int from_index, int to_index)
-	{
+			int[] inserted = new int[delta.mInserted.length];
+			int insertedCount = 0;
+
+			for (int offset : delta.mInserted)
+			{
+				int position = mMerge.indexOf(listIndex, offset, false);
+				if (position >= 0)
+				{
+					inserted[insertedCount++] = position;
+				}
+			}
+			delta = new ListDelta(ListDelta.trim(removed, removedCount), ListDelta.trim(inserted, insertedCount));
+		}
+		return delta;
 	}
 
 	public boolean removeImage(IImage image)
@@ -347,9 +379,16 @@ public class ImageListUber implements IImageList
 	boolean removeImage(IImage image, int index)
 	{
 		IImageList list = image.getContainer();
+		// The sublist deletes outside the lock, since that goes to the provider. Until the new
+		// snapshot is out, readers may see positions after index one place off.
 		if (list != null && list.removeImage(image))
 		{
-			modifySkipCountForDeletedImage(index);
+			synchronized (mMerge)
+			{
+				mSources[Util.indexOf(mSubList, list)].invalidate();
+				mMerge.removeAt(index);
+				mSnapshot = mMerge.snapshot();
+			}
 			return true;
 		}
 		return false;
@@ -362,4 +401,14 @@ public class ImageListUber implements IImageList
 			return false;
 		return removeImage(image, index);
 	}
+
+	public void setOnChangeListener(OnChangeListener listener)
+	{
+		mOnChangeListener = listener;
+
+		for (IImageList sublist : mSubList)
+		{
+			sublist.setOnChangeListener(listener == null ? null : mSublistListener);
+		}
+	}
 }
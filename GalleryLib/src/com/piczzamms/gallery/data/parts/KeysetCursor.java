@@ -0,0 +1,331 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.util.ArrayList;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.provider.MediaStore.MediaColumns;
+
+/**
+ * A cursor over a whole BaseImageList that queries it one page at a time.
+ *
+ * The list's sort expression can't be served by an index, so a single query sorts the whole
+ * library before the first row comes back, and then pages all of it through CursorWindows. Here
+ * each page is a small query for the rows after the last (sort key, id) seen, limited to
+ * PAGE_SIZE, so the first page costs the same however large the library is. The count comes from
+ * an unsorted count query.
+ *
+ * The (sort key, id) of every row read so far is kept in a flat long[], which lets a page be
+ * queried again after its cursor was closed, lets an id be located by binary search, and serves
+ * getSortKey() and getId() without moving to the row. Only a few page cursors are kept open.
+ */
+class KeysetCursor extends AbstractCursor
+{
+	static class Page
+	{
+		Cursor	mCursor;
+		int		mNumber;
+	}
+
+	static final int			PAGE_SIZE		= 256;
+	static final int			MAX_OPEN_PAGES	= 3;
+
+	final boolean				mAscending;
+	// Most recently used first.
+	final ArrayList<Page>		mOpen			= new ArrayList<Page>(MAX_OPEN_PAGES);
+	final String[]				mProjection;
+	final BaseImageList			mList;
+	boolean						mComplete;
+	int							mCount			= -1;
+	Cursor						mCurrent;
+	int							mDateModifiedIndex;
+	int							mDateTakenIndex;
+	int							mIdIndex;
+	// Sort key and id of each row read so far, interleaved.
+	long[]						mKeys			= new long[PAGE_SIZE * 2];
+	int							mLoaded;
+
+	KeysetCursor(BaseImageList list, String[] projection, boolean ascending)
+	{
+		mList = list;
+		mProjection = projection;
+		mAscending = ascending;
+	}
+
+	@Override
+	public void close()
+	{
+		super.close();
+		closePages();
+	}
+
+	void closePages()
+	{
+		for (Page page : mOpen)
+		{
+			page.mCursor.close();
+		}
+		mOpen.clear();
+		mCurrent = null;
+	}
+
+	// Compare two rows in list order.
+	int compare(long key1, long id1, long key2, long id2)
+	{
+		int result = key1 != key2 ? (key1 < key2 ? -1 : 1) : (id1 != id2 ? (id1 < id2 ? -1 : 1) : 0);
+		return mAscending ? result : -result;
+	}
+
+	@Override
+	public void deactivate()
+	{
+		super.deactivate();
+		closePages();
+	}
+
+	/**
+	 * @return the position of the row with the given sort key and id, or -1 if it isn't in the
+	 *         list. Pages are read forward only as far as the key requires.
+	 */
+	int findPosition(long key, long id)
+	{
+		while (!mComplete && (mLoaded == 0 || compare(key, id, mKeys[mLoaded * 2 - 2], mKeys[mLoaded * 2 - 1]) > 0))
+		{
+			if (openPage(mLoaded / PAGE_SIZE) == null)
+			{
+				break;
+			}
+		}
+		int low = 0;
+		int high = mLoaded - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int cmp = compare(mKeys[mid * 2], mKeys[mid * 2 + 1], key, id);
+			if (cmp < 0)
+			{
+				low = mid + 1;
+			}
+			else if (cmp > 0)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String[] getColumnNames()
+	{
+		return mProjection;
+	}
+
+	@Override
+	public int getCount()
+	{
+		if (mCount < 0)
+		{
+			mCount = mComplete ? mLoaded : mList.queryCount();
+		}
+		return mCount;
+	}
+
+	@Override
+	public double getDouble(int column)
+	{
+		return mCurrent.getDouble(column);
+	}
+
+	@Override
+	public float getFloat(int column)
+	{
+		return mCurrent.getFloat(column);
+	}
+
+	/**
+	 * @return the id of the row at position, or -1 if the list ends before it.
+	 */
+	long getId(int position)
+	{
+		return load(position) ? mKeys[position * 2 + 1] : -1;
+	}
+
+	@Override
+	public int getInt(int column)
+	{
+		return mCurrent.getInt(column);
+	}
+
+	@Override
+	public long getLong(int column)
+	{
+		return mCurrent.getLong(column);
+	}
+
+	@Override
+	public short getShort(int column)
+	{
+		return mCurrent.getShort(column);
+	}
+
+	/**
+	 * @return the sort key of the row at position, or 0 if the list ends before it.
+	 */
+	long getSortKey(int position)
+	{
+		return load(position) ? mKeys[position * 2] : 0;
+	}
+
+	@Override
+	public String getString(int column)
+	{
+		return mCurrent.getString(column);
+	}
+
+	@Override
+	public boolean isNull(int column)
+	{
+		return mCurrent.isNull(column);
+	}
+
+	/**
+	 * Read pages forward until the keys of position are known.
+	 *
+	 * @return false if the list ends before position.
+	 */
+	boolean load(int position)
+	{
+		while (!mComplete && mLoaded <= position)
+		{
+			if (openPage(mLoaded / PAGE_SIZE) == null)
+			{
+				break;
+			}
+		}
+		return position >= 0 && position < mLoaded;
+	}
+
+	@Override
+	public boolean onMove(int oldPosition, int newPosition)
+	{
+		Page page = openPage(newPosition / PAGE_SIZE);
+		if (page == null)
+		{
+			mCurrent = null;
+			return false;
+		}
+		mCurrent = page.mCursor;
+		return mCurrent.moveToPosition(newPosition % PAGE_SIZE);
+	}
+
+	/**
+	 * Return the given page, querying it if it isn't open. Pages must be read in order the first
+	 * time, since each one starts after the last key of the one before; any page before that
+	 * is queried again from its predecessor's last key.
+	 *
+	 * @return the page, or null if the list ends before it.
+	 */
+	Page openPage(int number)
+	{
+		for (int i = 0, n = mOpen.size(); i < n; i++)
+		{
+			Page page = mOpen.get(i);
+			if (page.mNumber == number)
+			{
+				mOpen.remove(i);
+				mOpen.add(0, page);
+				return page;
+			}
+		}
+		int loadedPages = (mLoaded + PAGE_SIZE - 1) / PAGE_SIZE;
+		while (!mComplete && loadedPages < number)
+		{
+			if (openPage(loadedPages) == null)
+			{
+				return null;
+			}
+			loadedPages = (mLoaded + PAGE_SIZE - 1) / PAGE_SIZE;
+		}
+		int start = number * PAGE_SIZE;
+		if (start > mLoaded || (start == mLoaded && mComplete))
+		{
+			return null;
+		}
+		Cursor cursor = start == 0 ? mList.queryPage(mProjection, false, 0, 0, PAGE_SIZE) : mList.queryPage(
+				mProjection, true, mKeys[start * 2 - 2], mKeys[start * 2 - 1], PAGE_SIZE);
+		if (cursor == null)
+		{
+			mComplete = true;
+			return null;
+		}
+		if (start == mLoaded)
+		{
+			readKeys(cursor);
+		}
+		if (mOpen.size() == MAX_OPEN_PAGES)
+		{
+			Page oldest = mOpen.remove(MAX_OPEN_PAGES - 1);
+			oldest.mCursor.close();
+			if (oldest.mCursor == mCurrent)
+			{
+				// Forget the position too, so moving back to it opens the page again.
+				mCurrent = null;
+				mPos = -1;
+			}
+		}
+		Page page = new Page();
+		page.mCursor = cursor;
+		page.mNumber = number;
+		mOpen.add(0, page);
+		return page;
+	}
+
+	// Append the keys of a newly read page. A short page is the last one.
+	void readKeys(Cursor cursor)
+	{
+		if (mLoaded == 0)
+		{
+			mIdIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+			mDateTakenIndex = cursor.getColumnIndexOrThrow(ImageColumns.DATE_TAKEN);
+			mDateModifiedIndex = cursor.getColumnIndexOrThrow(MediaColumns.DATE_MODIFIED);
+		}
+		int rows = cursor.getCount();
+		if (mKeys.length < (mLoaded + rows) * 2)
+		{
+			long[] keys = new long[Math.max(mKeys.length * 2, (mLoaded + rows) * 2)];
+			System.arraycopy(mKeys, 0, keys, 0, mLoaded * 2);
+			mKeys = keys;
+		}
+		cursor.moveToPosition(-1);
+		while (cursor.moveToNext())
+		{
+			// Same as BaseImageList.SORT_KEY_EXPR.
+			long dateTaken = cursor.getLong(mDateTakenIndex);
+			long key = dateTaken == 0 ? cursor.getLong(mDateModifiedIndex) * 1000 : dateTaken;
+			mKeys[mLoaded * 2] = key;
+			mKeys[mLoaded * 2 + 1] = cursor.getLong(mIdIndex);
+			mLoaded++;
+		}
+		if (rows < PAGE_SIZE)
+		{
+			mComplete = true;
+			mCount = mLoaded;
+		}
+	}
+
+	@Override
+	public boolean requery()
+	{
+		closePages();
+		mComplete = false;
+		mCount = -1;
+		mLoaded = 0;
+		return super.requery();
+	}
+}
@@ -0,0 +1,114 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.util.Arrays;
+
+/**
+ * The difference between two versions of an image list where the items that survived kept their
+ * relative order: some positions were removed from the old list and some inserted into the new one.
+ *
+ * Used to carry positional caches such as thumbnails and selections across a content change
+ * instead of dropping them.
+ */
+public class ListDelta
+{
+	static final int[]	EMPTY	= new int[0];
+
+	/**
+	 * Compare the ids of two versions of a list.
+	 *
+	 * @return the delta, or null if the surviving items changed order so positions can't simply be
+	 *         shifted.
+	 */
+	public static ListDelta diff(long[] oldIds, long[] newIds)
+	{
+		long[] oldSorted = oldIds.clone();
+		long[] newSorted = newIds.clone();
+		Arrays.sort(oldSorted);
+		Arrays.sort(newSorted);
+
+		int[] removed = new int[oldIds.length];
+		int removedCount = 0;
+		long[] kept = new long[oldIds.length];
+		int keptCount = 0;
+
+		for (int i = 0; i < oldIds.length; i++)
+		{
+			if (Arrays.binarySearch(newSorted, oldIds[i]) < 0)
+			{
+				removed[removedCount++] = i;
+			}
+			else
+			{
+				kept[keptCount++] = oldIds[i];
+			}
+		}
+		int[] inserted = new int[newIds.length];
+		int insertedCount = 0;
+		int next = 0;
+
+		for (int i = 0; i < newIds.length; i++)
+		{
+			if (Arrays.binarySearch(oldSorted, newIds[i]) < 0)
+			{
+				inserted[insertedCount++] = i;
+			}
+			else if (next >= keptCount || kept[next++] != newIds[i])
+			{
+				return null;
+			}
+		}
+		return new ListDelta(trim(removed, removedCount), trim(inserted, insertedCount));
+	}
+
+	static int[] trim(int[] positions, int count)
+	{
+		if (count == 0)
+		{
+			return EMPTY;
+		}
+		int[] result = new int[count];
+		System.arraycopy(positions, 0, result, 0, count);
+		return result;
+	}
+
+	/** Positions in the new list that were inserted, ascending. */
+	public final int[]	mInserted;
+	/** Positions in the old list that were removed, ascending. */
+	public final int[]	mRemoved;
+
+	public ListDelta(int[] removed, int[] inserted)
+	{
+		mRemoved = removed;
+		mInserted = inserted;
+	}
+
+	public boolean isEmpty()
+	{
+		return mRemoved.length == 0 && mInserted.length == 0;
+	}
+
+	public boolean isInserted(int newPos)
+	{
+		return Arrays.binarySearch(mInserted, newPos) >= 0;
+	}
+
+	/**
+	 * @return the position in the new list of the item at oldPos in the old list, or -1 if it was
+	 *         removed.
+	 */
+	public int map(int oldPos)
+	{
+		int index = Arrays.binarySearch(mRemoved, oldPos);
+		if (index >= 0)
+		{
+			return -1;
+		}
+		int pos = oldPos - (-index - 1);
+
+		for (int i = 0; i < mInserted.length && mInserted[i] <= pos; i++)
+		{
+			pos++;
+		}
+		return pos;
+	}
+}
@@ -0,0 +1,188 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.util.Log;
+
+/**
+ * Writes image rotations to disk on a background thread.
+ *
+ * A rotation is applied to the in-memory Image straight away and queued here. The worker waits a
+ * short while after the last request so repeated rotations of the same image collapse into a single
+ * write of the final angle, then updates MediaStore for the whole batch in one transaction and
+ * rewrites the EXIF orientation of each file once.
+ *
+ * The last angle set for each image is remembered until it has been written, so Image objects
+ * recreated from a cursor that predates the write still report the new rotation. Activities call
+ * flush() when they pause, so nothing waits out the delay in a process that may be killed.
+ */
+public class RotationQueue
+{
+	class WorkerThread implements Runnable
+	{
+		public void run()
+		{
+			while (true)
+			{
+				ArrayList<Image> batch;
+				synchronized (mPending)
+				{
+					if (mPending.isEmpty())
+					{
+						mThread = null;
+						return;
+					}
+					long wait = mLastRequest + BATCH_DELAY - SystemClock.uptimeMillis();
+					if (wait > 0 && !mFlush)
+					{
+						try
+						{
+							mPending.wait(wait);
+						}
+						catch (InterruptedException ex)
+						{
+							// ignore the exception
+						}
+						continue;
+					}
+					mFlush = false;
+					batch = new ArrayList<Image>(mPending.values());
+					mPending.clear();
+				}
+				write(batch);
+			}
+		}
+	}
+
+	static final String					TAG			= "RotationQueue";
+
+	/** How long to wait after the last request before writing, in milliseconds. */
+	static final long					BATCH_DELAY	= 500;
+
+	static RotationQueue				sInstance;
+
+	public static synchronized RotationQueue instance()
+	{
+		if (sInstance == null)
+		{
+			sInstance = new RotationQueue();
+		}
+		return sInstance;
+	}
+
+	final LinkedHashMap<Uri, Image>		mPending	= new LinkedHashMap<Uri, Image>();
+	final HashMap<Uri, Integer>			mRotations	= new HashMap<Uri, Integer>();
+	boolean								mFlush;
+	long								mLastRequest;
+	Thread								mThread;
+
+	RotationQueue()
+	{
+	}
+
+	/**
+	 * Write out anything pending without waiting for the batch delay.
+	 */
+	public void flush()
+	{
+		synchronized (mPending)
+		{
+			mFlush = true;
+			mPending.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the rotation last requested for this image, or the given default if it has never been
+	 *         rotated in this process.
+	 */
+	int getRotation(Uri uri, int def)
+	{
+		synchronized (mPending)
+		{
+			Integer degrees = mRotations.get(uri);
+			return degrees != null ? degrees : def;
+		}
+	}
+
+	/**
+	 * Queue the image's current rotation to be saved. A later request for the same image replaces
+	 * this one.
+	 */
+	void post(Image image, int degrees)
+	{
+		synchronized (mPending)
+		{
+			Uri uri = image.getImageUri();
+			mRotations.put(uri, degrees);
+			mPending.remove(uri);
+			mPending.put(uri, image);
+			mLastRequest = SystemClock.uptimeMillis();
+
+			if (mThread == null)
+			{
+				Thread t = new Thread(new WorkerThread());
+				t.setName("rotation-writer");
+				t.setPriority(Thread.MIN_PRIORITY);
+				mThread = t;
+				t.start();
+			}
+			else
+			{
+				mPending.notifyAll();
+			}
+		}
+	}
+
+	void write(ArrayList<Image> batch)
+	{
+		ContentResolver cr = batch.get(0).mContentResolver;
+		ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>(batch.size());
+		int[] degrees = new int[batch.size()];
+
+		for (int i = 0; i < degrees.length; i++)
+		{
+			Image image = batch.get(i);
+			degrees[i] = getRotation(image.getImageUri(), image.getDegreesRotated());
+			ops.add(ContentProviderOperation.newUpdate(image.getImageUri())
+					.withValue(ImageColumns.ORIENTATION, degrees[i]).build());
+		}
+		try
+		{
+			cr.applyBatch(MediaStore.AUTHORITY, ops);
+		}
+		catch (Exception ex)
+		{
+			Log.e(TAG, "batch orientation update failed, falling back to single updates", ex);
+
+			for (int i = 0; i < degrees.length; i++)
+			{
+				batch.get(i).saveOrientation(degrees[i]);
+			}
+		}
+		for (int i = 0; i < degrees.length; i++)
+		{
+			batch.get(i).saveExifRotation(degrees[i]);
+		}
+		synchronized (mPending)
+		{
+			for (Image image : batch)
+			{
+				// An image rotated again since keeps its angle until that write lands too.
+				Uri uri = image.getImageUri();
+				if (!mPending.containsKey(uri))
+				{
+					mRotations.remove(uri);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+/**
+ * Splits a sorted image list into runs of the same day, month or year, using the same date the
+ * list is sorted by. Both position to section and section to position are array lookups, so a
+ * scrubber can jump straight to "March 2019" without touching the images in between.
+ *
+ * An index describes the list as it was when built; rebuild it when the list changes.
+ */
+public class SectionIndex
+{
+	public static final int	DAY		= 0;
+	public static final int	MONTH	= 1;
+	public static final int	YEAR	= 2;
+
+	/**
+	 * Build the index. Reads every position's sort key, so call it off the UI thread for large
+	 * lists.
+	 */
+	public static SectionIndex build(IImageList list, int granularity)
+	{
+		long[] keys = list.getSortKeys();
+		if (keys == null)
+		{
+			keys = new long[list.getCount()];
+			for (int i = 0; i < keys.length; i++)
+			{
+				IImage image = list.getImageAt(i);
+				keys[i] = image != null ? image.getDateTaken() : 0;
+			}
+		}
+		Calendar calendar = Calendar.getInstance();
+		int[] sectionOf = new int[keys.length];
+		int[] starts = new int[16];
+		int count = 0;
+		int last = Integer.MIN_VALUE;
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			calendar.setTimeInMillis(keys[i]);
+			int year = calendar.get(Calendar.YEAR);
+			int section = granularity == YEAR ? year : granularity == MONTH ? year * 12
+					+ calendar.get(Calendar.MONTH) : year * 400 + calendar.get(Calendar.DAY_OF_YEAR);
+
+			if (section != last)
+			{
+				if (count == starts.length)
+				{
+					int[] temp = new int[count * 2];
+					System.arraycopy(starts, 0, temp, 0, count);
+					starts = temp;
+				}
+				starts[count++] = i;
+				last = section;
+			}
+			sectionOf[i] = count - 1;
+		}
+		long[] dates = new long[count];
+		for (int s = 0; s < count; s++)
+		{
+			dates[s] = keys[starts[s]];
+		}
+		return new SectionIndex(granularity, sectionOf, ListDelta.trim(starts, count), dates);
+	}
+
+	final long[]	mDates;
+	final int		mGranularity;
+	String[]		mLabels;
+	final int[]		mSectionOf;
+	final int[]		mStarts;
+
+	SectionIndex(int granularity, int[] sectionOf, int[] starts, long[] dates)
+	{
+		mGranularity = granularity;
+		mSectionOf = sectionOf;
+		mStarts = starts;
+		mDates = dates;
+	}
+
+	public int getCount()
+	{
+		return mStarts.length;
+	}
+
+	public int getGranularity()
+	{
+		return mGranularity;
+	}
+
+	/**
+	 * @return a label such as "March 2019" for the section, formatted on first use. Month labels
+	 *         come from DateUtils, which uses the locale's own pattern and stand-alone month name.
+	 */
+	public String getLabel(Context context, int section)
+	{
+		if (mLabels == null)
+		{
+			mLabels = new String[mStarts.length];
+		}
+		if (mLabels[section] == null)
+		{
+			if (mGranularity == YEAR)
+			{
+				mLabels[section] = new SimpleDateFormat("yyyy").format(new Date(mDates[section]));
+			}
+			else if (mGranularity == MONTH)
+			{
+				mLabels[section] = DateUtils.formatDateTime(context, mDates[section], DateUtils.FORMAT_SHOW_DATE
+						| DateUtils.FORMAT_SHOW_YEAR | DateUtils.FORMAT_NO_MONTH_DAY);
+			}
+			else
+			{
+				mLabels[section] = DateFormat.getDateInstance(DateFormat.MEDIUM).format(new Date(mDates[section]));
+			}
+		}
+		return mLabels[section];
+	}
+
+	/**
+	 * @return the first position of the section.
+	 */
+	public int getPositionForSection(int section)
+	{
+		return mStarts[Math.max(0, Math.min(section, mStarts.length - 1))];
+	}
+
+	/**
+	 * @return the date, in list sort key terms, of the first image of the section.
+	 */
+	public long getSectionDate(int section)
+	{
+		return mDates[section];
+	}
+
+	/**
+	 * @return the section holding position, or -1 if the position is outside the index.
+	 */
+	public int getSectionForPosition(int position)
+	{
+		return position >= 0 && position < mSectionOf.length ? mSectionOf[position] : -1;
+	}
+}
@@ -76,6 +76,11 @@ public class SingleImageList implements IImageList
 		return image == mSingleImage ? 0 : -1;
 	}
 
+	public long[] getSortKeys()
+	{
+		return null;
+	}
+
 	public boolean isEmpty()
 	{
 		return false;
@@ -95,4 +100,8 @@ public class SingleImageList implements IImageList
 	{
 		return false;
 	}
+
+	public void setOnChangeListener(OnChangeListener listener)
+	{
+	}
 }
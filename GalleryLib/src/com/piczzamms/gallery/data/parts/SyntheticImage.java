@@ -0,0 +1,229 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.io.InputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.piczzamms.gallery.core.SampleSize;
+import com.piczzamms.gallery.top.GalleryMetrics;
+import com.piczzamms.gallery.util.Util;
+
+/**
+ * An item of a SyntheticImageList. Its bitmaps are a flat colour with the id written on them and
+ * a bar along the stored top edge, so rotation mistakes show.
+ */
+class SyntheticImage implements IImage
+{
+	static final int					MICRO_SIZE	= 96;
+	static final int					MINI_SIZE	= 512;
+
+	final int							mColor;
+	final SyntheticImageList			mContainer;
+	final long							mDateTaken;
+	int									mDegrees;
+	final boolean						mFails;
+	final int							mHeight;
+	final long							mId;
+	final boolean						mIsVideo;
+	final int							mWidth;
+
+	SyntheticImage(SyntheticImageList container, long id, long dateTaken, int width, int height, int degrees,
+			boolean video, boolean fails, int color)
+	{
+		mContainer = container;
+		mId = id;
+		mDateTaken = dateTaken;
+		mWidth = width;
+		mHeight = height;
+		mDegrees = degrees;
+		mIsVideo = video;
+		mFails = fails;
+		mColor = color;
+	}
+
+	/**
+	 * Sleep for the decode latency, then draw a bitmap of the given size, or return null if this
+	 * item is set to fail.
+	 */
+	Bitmap decode(int metric, int latencyMs, int width, int height, boolean rotateAsNeeded)
+	{
+		long start = GalleryMetrics.start();
+
+		if (latencyMs > 0)
+		{
+			SystemClock.sleep(latencyMs);
+		}
+		if (mFails)
+		{
+			GalleryMetrics.end(metric, start);
+			return null;
+		}
+		width = Math.max(1, width);
+		height = Math.max(1, height);
+		Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+		Canvas canvas = new Canvas(bitmap);
+		canvas.drawColor(mColor);
+
+		Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		paint.setColor(Color.WHITE);
+		canvas.drawRect(0, 0, width, Math.max(1, height / 12), paint);
+		paint.setTextSize(Math.max(8, Math.min(width, height) / 4));
+		canvas.drawText(Long.toString(mId), width / 10f, height / 2f, paint);
+
+		GalleryMetrics.end(metric, start);
+		return rotateAsNeeded ? Util.rotate(bitmap, mDegrees) : bitmap;
+	}
+
+	public IImageList getContainer()
+	{
+		return mContainer;
+	}
+
+	public String getDataPath()
+	{
+		return "/synthetic/" + mId + (mIsVideo ? ".mp4" : ".jpg");
+	}
+
+	public long getDateTaken()
+	{
+		return mDateTaken;
+	}
+
+	public int getDegreesRotated()
+	{
+		return mDegrees;
+	}
+
+	public Bitmap getFullSizeBitmap(int minSideLength, int maxNumberOfPixels)
+	{
+		return getFullSizeBitmap(minSideLength, maxNumberOfPixels, IImage.ROTATE_AS_NEEDED, IImage.NO_NATIVE);
+	}
+
+	public Bitmap getFullSizeBitmap(int minSideLength, int maxNumberOfPixels, boolean rotateAsNeeded,
+			boolean useNative)
+	{
+		int sample = SampleSize.compute(mWidth, mHeight, minSideLength, maxNumberOfPixels);
+		return decode(GalleryMetrics.DECODE_FULL, mContainer.mSpec.mFullLatencyMs, mWidth / sample, mHeight
+				/ sample, rotateAsNeeded);
+	}
+
+	/**
+	 * A stream of zeros as long as a compressed file of this size would be, for size checks.
+	 */
+	public InputStream getFullSizeImageData()
+	{
+		final int size = mWidth * mHeight / (mIsVideo ? 1 : 8);
+
+		return new InputStream()
+		{
+			int	mRead;
+
+			@Override
+			public int available()
+			{
+				return size - mRead;
+			}
+
+			@Override
+			public int read()
+			{
+				if (mRead >= size)
+				{
+					return -1;
+				}
+				mRead++;
+				return 0;
+			}
+		};
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	public Uri getImageUri()
+	{
+		return Uri.withAppendedPath(SyntheticImageList.CONTENT_URI, Long.toString(mId));
+	}
+
+	public long getLastModified()
+	{
+		return mDateTaken;
+	}
+
+	public String getMimeType()
+	{
+		return mIsVideo ? "video/mp4" : "image/jpeg";
+	}
+
+	public Bitmap getMiniThumbBitmap()
+	{
+		return getMiniThumbBitmap(IImage.ROTATE_AS_NEEDED);
+	}
+
+	public Bitmap getMiniThumbBitmap(boolean rotateAsNeeded)
+	{
+		return getThumbBitmap(IImage.THUMB_TIER_MICRO, MICRO_SIZE, rotateAsNeeded);
+	}
+
+	public Bitmap getThumbBitmap(boolean rotateAsNeeded)
+	{
+		return getThumbBitmap(IImage.THUMB_TIER_MINI, MINI_SIZE, rotateAsNeeded);
+	}
+
+	public Bitmap getThumbBitmap(int tier, int targetSize, boolean rotateAsNeeded)
+	{
+		SyntheticImageList.Spec spec = mContainer.mSpec;
+
+		if (tier == IImage.THUMB_TIER_MICRO)
+		{
+			return decode(GalleryMetrics.DECODE_THUMB, spec.mThumbLatencyMs, MICRO_SIZE, MICRO_SIZE, rotateAsNeeded);
+		}
+		if (tier == IImage.THUMB_TIER_MINI)
+		{
+			float scale = (float) MINI_SIZE / Math.max(mWidth, mHeight);
+			return decode(GalleryMetrics.DECODE_THUMB, spec.mThumbLatencyMs, Math.round(mWidth * scale),
+					Math.round(mHeight * scale), rotateAsNeeded);
+		}
+		int sample = SampleSize.compute(mWidth, mHeight, targetSize, IImage.UNCONSTRAINED);
+		return decode(GalleryMetrics.DECODE_THUMB, spec.mFullLatencyMs, mWidth / sample, mHeight / sample,
+				rotateAsNeeded);
+	}
+
+	public String getTitle()
+	{
+		return (mIsVideo ? "VID_" : "IMG_") + mId;
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	public boolean isDrm()
+	{
+		return false;
+	}
+
+	public boolean isReadonly()
+	{
+		return false;
+	}
+
+	public boolean isVideo()
+	{
+		return mIsVideo;
+	}
+
+	public boolean rotateImageBy(int degrees)
+	{
+		mDegrees = (mDegrees + degrees + 360) % 360;
+		return true;
+	}
+}
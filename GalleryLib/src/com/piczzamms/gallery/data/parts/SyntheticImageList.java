@@ -0,0 +1,231 @@
+package com.piczzamms.gallery.data.parts;
+
+import java.util.HashMap;
+
+import android.net.Uri;
+
+import com.piczzamms.gallery.data.ImageManager;
+
+/**
+ * A generated list for performance tests, with no MediaStore or files behind it.
+ *
+ * Every property of an item comes from the spec's seed and the item's id, so the same spec always
+ * gives the same list. Bitmaps are drawn on request after sleeping for the configured latency, to
+ * stand in for decoding, and a configured share of the items fail to decode. See
+ * ImageManager.setSyntheticSpec() to have the gallery use it.
+ */
+public class SyntheticImageList implements IImageList
+{
+	public static class Spec
+	{
+		public int		mCount			= 1000;
+		/** Sleep before each micro or mini thumbnail. */
+		public int		mThumbLatencyMs	= 5;
+		/** Sleep before each sampled thumbnail or full size bitmap. */
+		public int		mFullLatencyMs	= 80;
+		/** Share of items, 0 to 1, whose bitmaps come back null. */
+		public float	mFailureRate;
+		/** Range of the long side of the full size images. */
+		public int		mMinSize		= 1024;
+		public int		mMaxSize		= 4096;
+		/** Give items a random orientation, else all are upright. */
+		public boolean	mRotated;
+		/** Share of items, 0 to 1, that are videos. */
+		public float	mVideoFraction;
+		public long		mSeed			= 1;
+	}
+
+	public static final String	AUTHORITY	= "com.piczzamms.gallery.synthetic";
+	public static final Uri		CONTENT_URI	= Uri.parse("content://" + AUTHORITY);
+	static final String			BUCKET_ID	= "synthetic";
+
+	// Newest item; older items are spaced one to six hours apart.
+	static final long			NEWEST_DATE	= 1400000000000L;
+	static final long			HOUR		= 60 * 60 * 1000L;
+
+	static final float[]		ASPECTS		= { 4f / 3, 3f / 4, 16f / 9, 1f };
+
+	// SplitMix64, so each (id, salt) gets an independent, repeatable value.
+	static long mix(long seed, long id, int salt)
+	{
+		long z = seed + id * 0x9E3779B97F4A7C15L + salt * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// Uniform in [0, 1).
+	static float unit(long seed, long id, int salt)
+	{
+		return (mix(seed, id, salt) >>> 40) / (float) (1 << 24);
+	}
+
+	final Spec					mSpec;
+	// Position to id, date and image, replaced rather than modified on removal.
+	long[]						mIds;
+	long[]						mDates;
+	SyntheticImage[]			mImages;
+
+	public SyntheticImageList(Spec spec, int sort)
+	{
+		mSpec = spec;
+		int count = Math.max(0, spec.mCount);
+		mIds = new long[count];
+		mDates = new long[count];
+		mImages = new SyntheticImage[count];
+
+		long date = NEWEST_DATE;
+		for (int id = 0; id < count; id++)
+		{
+			// Lists are sorted by date, newest first unless ascending.
+			int pos = sort == ImageManager.SORT_ASCENDING ? count - 1 - id : id;
+			mIds[pos] = id;
+			mDates[pos] = date;
+			date -= HOUR + (mix(spec.mSeed, id, 0) >>> 1) % (5 * HOUR);
+		}
+	}
+
+	public boolean canDrag()
+	{
+		return false;
+	}
+
+	public void close()
+	{
+	}
+
+	public HashMap<String, String> getBucketIds()
+	{
+		HashMap<String, String> ids = new HashMap<String, String>();
+		ids.put(BUCKET_ID, "Synthetic");
+		return ids;
+	}
+
+	public synchronized int getCount()
+	{
+		return mIds.length;
+	}
+
+	public synchronized IImage getImageAt(int i)
+	{
+		if (i < 0 || i >= mIds.length)
+		{
+			return null;
+		}
+		if (mImages[i] == null)
+		{
+			mImages[i] = makeImage(mIds[i], mDates[i]);
+		}
+		return mImages[i];
+	}
+
+	public synchronized IImage getImageForUri(Uri uri)
+	{
+		if (!AUTHORITY.equals(uri.getAuthority()))
+		{
+			return null;
+		}
+		try
+		{
+			int pos = indexOf(Long.parseLong(uri.getLastPathSegment()));
+			return pos >= 0 ? getImageAt(pos) : null;
+		}
+		catch (NumberFormatException ex)
+		{
+			return null;
+		}
+	}
+
+	public synchronized int getImageIndex(IImage image)
+	{
+		if (!(image instanceof SyntheticImage) || image.getContainer() != this)
+		{
+			return -1;
+		}
+		return indexOf(((SyntheticImage) image).mId);
+	}
+
+	public synchronized long[] getSortKeys()
+	{
+		return mDates;
+	}
+
+	public Spec getSpec()
+	{
+		return mSpec;
+	}
+
+	int indexOf(long id)
+	{
+		for (int i = 0; i < mIds.length; i++)
+		{
+			if (mIds[i] == id)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public synchronized boolean isEmpty()
+	{
+		return mIds.length == 0;
+	}
+
+	SyntheticImage makeImage(long id, long date)
+	{
+		final long seed = mSpec.mSeed;
+		int longSide = mSpec.mMinSize
+				+ (int) (unit(seed, id, 1) * Math.max(0, mSpec.mMaxSize - mSpec.mMinSize));
+		float aspect = ASPECTS[(int) (unit(seed, id, 2) * ASPECTS.length)];
+		int width = aspect >= 1 ? longSide : Math.round(longSide * aspect);
+		int height = aspect >= 1 ? Math.round(longSide / aspect) : longSide;
+		int degrees = mSpec.mRotated ? 90 * (int) (unit(seed, id, 3) * 4) : 0;
+		boolean video = unit(seed, id, 4) < mSpec.mVideoFraction;
+		boolean fails = unit(seed, id, 5) < mSpec.mFailureRate;
+		int color = 0xFF000000 | (int) (mix(seed, id, 6) & 0x7F7F7F);
+
+		return new SyntheticImage(this, id, date, width, height, degrees, video, fails, color);
+	}
+
+	@Override
+	public void onDrag(int from_index, int to_index)
+	{
+	}
+
+	public boolean removeImage(IImage image)
+	{
+		return removeImageAt(getImageIndex(image));
+	}
+
+	public synchronized boolean removeImageAt(int i)
+	{
+		if (i < 0 || i >= mIds.length)
+		{
+			return false;
+		}
+		// getSortKeys() hands out mDates, so it is copied rather than shifted in place.
+		mIds = remove(mIds, i);
+		mDates = remove(mDates, i);
+		SyntheticImage[] images = new SyntheticImage[mImages.length - 1];
+		System.arraycopy(mImages, 0, images, 0, i);
+		System.arraycopy(mImages, i + 1, images, i, images.length - i);
+		mImages = images;
+		return true;
+	}
+
+	static long[] remove(long[] values, int i)
+	{
+		long[] result = new long[values.length - 1];
+		System.arraycopy(values, 0, result, 0, i);
+		System.arraycopy(values, i + 1, result, i, result.length - i);
+		return result;
+	}
+
+	/**
+	 * The generated content never changes underneath the list.
+	 */
+	public void setOnChangeListener(OnChangeListener listener)
+	{
+	}
+}
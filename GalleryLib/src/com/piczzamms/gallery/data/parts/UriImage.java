@@ -176,6 +176,11 @@ class UriImage implements IImage
 		return getThumbBitmap(IImage.ROTATE_AS_NEEDED);
 	}
 
+	public Bitmap getMiniThumbBitmap(boolean rotateAsNeeded)
+	{
+		return getThumbBitmap(rotateAsNeeded);
+	}
+
 	ParcelFileDescriptor getPFD()
 	{
 		return Util.getPFD(mCtx, mUri);
@@ -186,6 +191,16 @@ class UriImage implements IImage
 		return getFullSizeBitmap(THUMBNAIL_TARGET_SIZE, THUMBNAIL_MAX_NUM_PIXELS, rotateAsNeeded);
 	}
 
+	public Bitmap getThumbBitmap(int tier, int targetSize, boolean rotateAsNeeded)
+	{
+		if (tier == THUMB_TIER_SAMPLED)
+		{
+			return getFullSizeBitmap(targetSize, 4 * targetSize * targetSize, rotateAsNeeded);
+		}
+		// There is no MediaStore thumbnail to pick from, so the micro and mini tiers are the same.
+		return getThumbBitmap(rotateAsNeeded);
+	}
+
 	public String getTitle()
 	{
 		return mUri.toString();
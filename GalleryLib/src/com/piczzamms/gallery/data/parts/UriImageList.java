@@ -58,6 +58,8 @@ public class UriImageList implements IImageList
 	};
 
 	FileCompare			mFileCompare	= new FileCompare();
+	// Read by image loading threads while the UI thread removes from it, so only touched with the
+	// list's lock held.
 	ArrayList<UriImage>	mImageList;
 	Uri					mInitialUri;
 
@@ -106,7 +108,7 @@ public class UriImageList implements IImageList
 		return true;
 	}
 
-	public void close()
+	public synchronized void close()
 	{
 		mImageList.clear();
 	}
@@ -116,17 +118,17 @@ public class UriImageList implements IImageList
 		throw new UnsupportedOperationException();
 	}
 
-	public int getCount()
+	public synchronized int getCount()
 	{
 		return mImageList.size();
 	}
 
-	public IImage getImageAt(int i)
+	public synchronized IImage getImageAt(int i)
 	{
-		return mImageList.get(i);
+		return i >= 0 && i < mImageList.size() ? mImageList.get(i) : null;
 	}
 
-	public IImage getImageForUri(Uri uri)
+	public synchronized IImage getImageForUri(Uri uri)
 	{
 		for (UriImage image : mImageList)
 		{
@@ -138,11 +140,16 @@ public class UriImageList implements IImageList
 		return null;
 	}
 
-	public int getImageIndex(IImage image)
+	public synchronized int getImageIndex(IImage image)
 	{
 		return mImageList.indexOf(image);
 	}
 
+	public long[] getSortKeys()
+	{
+		return null;
+	}
+
 	String getSuffix(File file)
 	{
 		String name = file.getName();
@@ -154,7 +161,7 @@ public class UriImageList implements IImageList
 		return name;
 	}
 
-	public boolean isEmpty()
+	public synchronized boolean isEmpty()
 	{
 		return mImageList.size() == 0;
 	}
@@ -197,19 +204,33 @@ public class UriImageList implements IImageList
 
 	}
 
-	public boolean removeImage(IImage image)
+	public synchronized boolean removeImage(IImage image)
 	{
 		return removeImageAt(getImageIndex(image));
 	}
 
-	public boolean removeImageAt(int index)
+	/**
+	 * Delete the image's file, then drop it from the list. Nothing is dropped if the file can't be
+	 * deleted, so it doesn't come back on the next load.
+	 */
+	public synchronized boolean removeImageAt(int index)
 	{
-		if (index >= 0 && index < mImageList.size())
+		if (index < 0 || index >= mImageList.size())
+		{
+			return false;
+		}
+		File file = mImageList.get(index).mFile;
+		if (file != null && file.exists() && !file.delete())
 		{
-			mImageList.remove(index);
-			return true;
+			Log.e(TAG, "Failed to delete " + file.getPath());
+			return false;
 		}
-		return false;
+		mImageList.remove(index);
+		return true;
+	}
+
+	public void setOnChangeListener(OnChangeListener listener)
+	{
 	}
 
 	// void renameFile(File file, int pos)
@@ -37,6 +37,10 @@ public class VideoList extends BaseImageList
 			Media._ID, Media.DATA, Media.DATE_TAKEN, Media.TITLE, Media.MINI_THUMB_MAGIC, Media.MIME_TYPE,
 			Media.DATE_MODIFIED							};
 
+	// All that ListColumns needs; the rest is loaded per video on first use.
+	private static final String[]	SLIM_PROJECTION			= new String[] {
+			Media._ID, Media.DATE_TAKEN, Media.DATE_MODIFIED	};
+
 	private static final int		INDEX_ID				= 0;
 	private static final int		INDEX_DATA_PATH			= 1;
 	private static final int		INDEX_DATE_TAKEN		= 2;
@@ -51,6 +55,13 @@ public class VideoList extends BaseImageList
 		return cursor.getLong(INDEX_ID);
 	}
 
+	@Override
+	protected BaseImage loadImageFromColumns(ListColumns columns, int i)
+	{
+		long id = columns.mIds[i];
+		return new VideoObject(this, mContentResolver, id, i, contentUri(id), null, null, columns.mKeys[i], 0, null);
+	}
+
 	@Override
 	protected BaseImage loadImageFromCursor(Cursor cursor)
 	{
@@ -76,6 +87,11 @@ public class VideoList extends BaseImageList
 
 	public HashMap<String, String> getBucketIds()
 	{
+		HashMap<String, String> indexed = getIndexedBucketIds();
+		if (indexed != null)
+		{
+			return indexed;
+		}
 		Uri uri = mBaseUri.buildUpon().appendQueryParameter("distinct", "true").build();
 		Cursor c = Images.Media.query(mContentResolver, uri, new String[] {
 				Media.BUCKET_DISPLAY_NAME, Media.BUCKET_ID }, whereClause(), whereClauseArgs(), sortOrder());
@@ -107,7 +123,11 @@ public class VideoList extends BaseImageList
 	@Override
 	protected Cursor createCursor()
 	{
-		Cursor c = Images.Media.query(mContentResolver, mBaseUri, VIDEO_PROJECTION, whereClause(), whereClauseArgs(),
+		if (useKeysetPaging())
+		{
+			return createKeysetCursor(VIDEO_PROJECTION);
+		}
+		Cursor c = Images.Media.query(mContentResolver, mBaseUri, SLIM_PROJECTION, whereClause(), whereClauseArgs(),
 				sortOrder());
 		return c;
 	}
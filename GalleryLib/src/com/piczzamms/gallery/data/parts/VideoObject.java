@@ -69,7 +69,7 @@ public class VideoObject extends BaseImage implements IImage
 	@Override
 	public Bitmap getFullSizeBitmap(int minSideLength, int maxNumberOfPixels, boolean rotateAsNeeded, boolean useNative)
 	{
-		return ThumbnailUtils.createVideoThumbnail(mDataPath, Video.Thumbnails.MINI_KIND);
+		return ThumbnailUtils.createVideoThumbnail(getDataPath(), Video.Thumbnails.MINI_KIND);
 	}
 
 	@Override
@@ -126,6 +126,12 @@ public class VideoObject extends BaseImage implements IImage
 
 	@Override
 	public Bitmap getMiniThumbBitmap()
+	{
+		return getMiniThumbBitmap(IImage.NO_ROTATE);
+	}
+
+	@Override
+	public Bitmap getMiniThumbBitmap(boolean rotateAsNeeded)
 	{
 		try
 		{
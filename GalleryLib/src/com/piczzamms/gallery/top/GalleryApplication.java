@@ -1,6 +1,7 @@
 package com.piczzamms.gallery.top;
 
 import android.app.Application;
+import android.content.Context;
 import android.util.Log;
 
 public class GalleryApplication extends Application
@@ -9,6 +10,7 @@ public class GalleryApplication extends Application
 	public static final String	TAG	= "Gallery";
 
 	protected IGalleryFlurry	mGalleryFlurry;
+	protected IGalleryMetrics	mGalleryMetrics;
 
 	@Override
 	public void onCreate()
@@ -21,10 +23,35 @@ public class GalleryApplication extends Application
 		return mGalleryFlurry;
 	}
 
+	public IGalleryMetrics getGalleryMetrics()
+	{
+		return mGalleryMetrics;
+	}
+
 	public void onEmptyImageClicked()
 	{
 	}
 
+	/**
+	 * Hand the histograms recorded since the last report to the registered IGalleryMetrics.
+	 */
+	public void reportMetrics(Context context)
+	{
+		if (mGalleryMetrics != null)
+		{
+			mGalleryMetrics.onMetrics(context, GalleryMetrics.snapshot(true));
+		}
+	}
+
+	/**
+	 * Register a listener for performance histograms. Recording is only on while one is set.
+	 */
+	public void setGalleryMetrics(IGalleryMetrics metrics)
+	{
+		mGalleryMetrics = metrics;
+		GalleryMetrics.setEnabled(metrics != null);
+	}
+
 	public void err(String msg)
 	{
 		Log.e(TAG, msg);
@@ -0,0 +1,213 @@
+package com.piczzamms.gallery.top;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide performance histograms.
+ *
+ * Every metric has a fixed set of power-of-two buckets allocated up front. Recording is a couple
+ * of atomic increments with no locks and no allocation, so it is safe from any thread and cheap
+ * enough to leave on in production. Nothing is recorded until an IGalleryMetrics is registered on
+ * GalleryApplication, which turns recording on.
+ *
+ * Times are recorded in microseconds; counters such as cache hits record a value of zero and are
+ * read back through {@link Snapshot#getCount(int)}.
+ */
+public final class GalleryMetrics
+{
+	/**
+	 * An immutable copy of the histograms, handed to IGalleryMetrics.
+	 */
+	public static final class Snapshot
+	{
+		final long[]	mBuckets	= new long[METRIC_COUNT * BUCKET_COUNT];
+		final long[]	mCounts		= new long[METRIC_COUNT];
+		final long[]	mSums		= new long[METRIC_COUNT];
+
+		Snapshot()
+		{
+		}
+
+		/**
+		 * @return the number of values in bucket i, which holds values up to
+		 *         {@link GalleryMetrics#getBucketLimit(int)}.
+		 */
+		public long getBucket(int metric, int i)
+		{
+			return mBuckets[metric * BUCKET_COUNT + i];
+		}
+
+		public long getCount(int metric)
+		{
+			return mCounts[metric];
+		}
+
+		public long getMean(int metric)
+		{
+			return mCounts[metric] == 0 ? 0 : mSums[metric] / mCounts[metric];
+		}
+
+		/**
+		 * @return an upper bound for the given percentile (0-100), at bucket resolution.
+		 */
+		public long getPercentile(int metric, int percentile)
+		{
+			long count = mCounts[metric];
+			if (count == 0)
+			{
+				return 0;
+			}
+			long target = (count * percentile + 99) / 100;
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++)
+			{
+				seen += getBucket(metric, i);
+				if (seen >= target)
+				{
+					return getBucketLimit(i);
+				}
+			}
+			return getBucketLimit(BUCKET_COUNT - 1);
+		}
+
+		public long getSum(int metric)
+		{
+			return mSums[metric];
+		}
+
+		/**
+		 * @return what was recorded between an earlier snapshot and this one, without having to
+		 *         reset the histograms. Anything cleared in between makes the difference short.
+		 */
+		public Snapshot since(Snapshot earlier)
+		{
+			Snapshot result = new Snapshot();
+			for (int i = 0; i < mBuckets.length; i++)
+			{
+				result.mBuckets[i] = Math.max(0, mBuckets[i] - earlier.mBuckets[i]);
+			}
+			for (int i = 0; i < METRIC_COUNT; i++)
+			{
+				result.mCounts[i] = Math.max(0, mCounts[i] - earlier.mCounts[i]);
+				result.mSums[i] = Math.max(0, mSums[i] - earlier.mSums[i]);
+			}
+			return result;
+		}
+	}
+
+	/** Thumbnail decode time, from MediaStore or the file. */
+	public static final int					DECODE_THUMB		= 0;
+	/** Full size (sampled) decode time. */
+	public static final int					DECODE_FULL			= 1;
+	/** Grid thumbnail cache hits. */
+	public static final int					CACHE_HIT			= 2;
+	/** Grid thumbnail cache misses. */
+	public static final int					CACHE_MISS			= 3;
+	/** Grid thumbnail cache evictions. */
+	public static final int					CACHE_EVICT			= 4;
+	/** Loaded images waiting to be delivered through GetterHandler, sampled on each post. */
+	public static final int					GETTER_QUEUE_DEPTH	= 5;
+	/** Time spent in the grid's onDraw. */
+	public static final int					GRID_FRAME			= 6;
+	/** Time to build the image list in ImageManager.makeImageList. */
+	public static final int					LIST_BUILD			= 7;
+	/** Time to crop and save in CropImage. */
+	public static final int					CROP_SAVE			= 8;
+	/** Time to load one field of the details dialog in DetailsLoader. */
+	public static final int					DETAILS_FIELD		= 9;
+	/** Cells painted by each grid frame; should stay near what fits on screen at any list size. */
+	public static final int					CELLS_DRAWN			= 10;
+	public static final int					METRIC_COUNT		= 11;
+
+	public static final String[]			METRIC_NAMES		= new String[] {
+			"decode_thumb", "decode_full", "cache_hit", "cache_miss", "cache_evict", "getter_queue_depth",
+			"grid_frame", "list_build", "crop_save", "details_field", "cells_drawn"	};
+
+	/** Bucket i holds values below 2^i; the last bucket holds everything larger. */
+	public static final int					BUCKET_COUNT		= 24;
+
+	static final AtomicLongArray			sBuckets			= new AtomicLongArray(METRIC_COUNT * BUCKET_COUNT);
+	static final AtomicLongArray			sCounts				= new AtomicLongArray(METRIC_COUNT);
+	static final AtomicLongArray			sSums				= new AtomicLongArray(METRIC_COUNT);
+	static volatile boolean					sEnabled;
+
+	/**
+	 * Record one occurrence of a counter metric.
+	 */
+	public static void count(int metric)
+	{
+		record(metric, 0);
+	}
+
+	/**
+	 * Record the time since start, which must come from {@link #start()}.
+	 */
+	public static void end(int metric, long start)
+	{
+		if (sEnabled && start != 0)
+		{
+			record(metric, (System.nanoTime() - start) / 1000);
+		}
+	}
+
+	/**
+	 * @return the largest value counted in bucket i.
+	 */
+	public static long getBucketLimit(int i)
+	{
+		return i >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+	}
+
+	public static boolean isEnabled()
+	{
+		return sEnabled;
+	}
+
+	public static void record(int metric, long value)
+	{
+		if (!sEnabled)
+		{
+			return;
+		}
+		int bucket = value <= 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+		sBuckets.incrementAndGet(metric * BUCKET_COUNT + bucket);
+		sCounts.incrementAndGet(metric);
+		sSums.addAndGet(metric, value);
+	}
+
+	public static void setEnabled(boolean enabled)
+	{
+		sEnabled = enabled;
+	}
+
+	/**
+	 * Copy the histograms, optionally clearing them. Values recorded while the copy is being taken
+	 * may land in either this snapshot or the next one.
+	 */
+	public static Snapshot snapshot(boolean reset)
+	{
+		Snapshot snapshot = new Snapshot();
+		for (int i = 0; i < snapshot.mBuckets.length; i++)
+		{
+			snapshot.mBuckets[i] = reset ? sBuckets.getAndSet(i, 0) : sBuckets.get(i);
+		}
+		for (int i = 0; i < METRIC_COUNT; i++)
+		{
+			snapshot.mCounts[i] = reset ? sCounts.getAndSet(i, 0) : sCounts.get(i);
+			snapshot.mSums[i] = reset ? sSums.getAndSet(i, 0) : sSums.get(i);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return a start time for {@link #end(int, long)}, or zero when recording is off.
+	 */
+	public static long start()
+	{
+		return sEnabled ? System.nanoTime() : 0;
+	}
+
+	GalleryMetrics()
+	{
+	}
+}
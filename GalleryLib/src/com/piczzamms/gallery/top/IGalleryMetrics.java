@@ -0,0 +1,11 @@
+package com.piczzamms.gallery.top;
+
+import android.content.Context;
+
+public interface IGalleryMetrics
+{
+	/**
+	 * Called when the gallery is left with the histograms recorded since the previous report.
+	 */
+	public void onMetrics(Context context, GalleryMetrics.Snapshot snapshot);
+}
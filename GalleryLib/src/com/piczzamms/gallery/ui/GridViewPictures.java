@@ -1,24 +1,31 @@
 package com.piczzamms.gallery.ui;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.GestureDetector;
 import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.KeyEvent;
@@ -28,9 +35,13 @@ import android.view.ViewConfiguration;
 import android.widget.Scroller;
 
 import com.piczzamms.gallery.R;
+import com.piczzamms.gallery.core.IntLruCache;
 import com.piczzamms.gallery.data.ImageManager;
 import com.piczzamms.gallery.data.parts.IImage;
 import com.piczzamms.gallery.data.parts.IImageList;
+import com.piczzamms.gallery.data.parts.ListDelta;
+import com.piczzamms.gallery.data.parts.SectionIndex;
+import com.piczzamms.gallery.top.GalleryMetrics;
 import com.piczzamms.gallery.util.MenuHelper;
 
 
@@ -38,11 +49,14 @@ public class GridViewPictures extends View
 {
 	class DragData
 	{
-		int		mDragCurX;
-		int		mDragCurY;
-		boolean	mDragEnabled;
-		int		mDragIndex	= -1;
-		Bitmap	mDragMoving;
+		int				mDragCurX;
+		int				mDragCurY;
+		int				mDragDegrees;
+		boolean			mDragEnabled;
+		int				mDragIndex	= -1;
+		final Matrix	mDragMatrix	= new Matrix();
+		Bitmap			mDragMoving;
+		Paint			mShadowPaint;
 
 		void dragDone(MotionEvent ev)
 		{
@@ -52,6 +66,9 @@ public class GridViewPictures extends View
 				{
 					mAllImages.onDrag(mCurrentSelection, mDragIndex);
 				}
+				mMultiselect.move(mCurrentSelection, mDragIndex);
+				// Cached cells are keyed by position.
+				clearCache();
 				mListener.onDrag(mCurrentSelection, mDragIndex);
 			}
 			mDragIndex = -1;
@@ -115,14 +132,34 @@ public class GridViewPictures extends View
 			/** Drag Image */
 			if (mDragMoving == null)
 			{
+				// Kept as stored; the matrix below scales and rotates it in one draw.
 				IImage image = getCurrentImage();
-				Bitmap moving = image.getThumbBitmap(false);
-				mDragMoving = Bitmap.createScaledBitmap(moving, w, h, false);
-				moving.recycle();
+				mDragMoving = image.getThumbBitmap(IImage.NO_ROTATE);
+				mDragDegrees = image.getDegreesRotated();
+				if (mDragMoving == null)
+				{
+					return;
+				}
+			}
+			if (mShadowPaint == null)
+			{
+				mShadowPaint = new Paint();
+				mShadowPaint.setShadowLayer(5.0f, 10.0f, 10.0f, Color.BLACK);
+				mShadowPaint.setFilterBitmap(true);
+			}
+			Matrix m = mDragMatrix;
+			m.setTranslate(-mDragMoving.getWidth() / 2f, -mDragMoving.getHeight() / 2f);
+			if ((mDragDegrees / 90) % 2 != 0)
+			{
+				m.postScale((float) w / mDragMoving.getHeight(), (float) h / mDragMoving.getWidth());
+			}
+			else
+			{
+				m.postScale((float) w / mDragMoving.getWidth(), (float) h / mDragMoving.getHeight());
 			}
-			Paint paint = new Paint();
-			paint.setShadowLayer(5.0f, 10.0f, 10.0f, Color.BLACK);
-			canvas.drawBitmap(mDragMoving, mDragCurX - w / 2, mDragCurY - w / 2, paint);
+			m.postRotate(mDragDegrees);
+			m.postTranslate(mDragCurX, mDragCurY);
+			canvas.drawBitmap(mDragMoving, m, mShadowPaint);
 		}
 
 		public boolean onTouchEvent(MotionEvent ev)
@@ -176,11 +213,32 @@ public class GridViewPictures extends View
 		public void onScroll(float scrollPosition);
 	}
 
+	// Recycles the larger thumbnails that fall out of mLargeCache.
+	static class LargeThumbCache extends IntLruCache<Bitmap>
+	{
+		LargeThumbCache()
+		{
+			super(1);
+		}
+
+		@Override
+		protected void onEvict(int key, Bitmap bitmap)
+		{
+			bitmap.recycle();
+			GalleryMetrics.count(GalleryMetrics.CACHE_EVICT);
+		}
+	}
+
+	/**
+	 * Selection state for multiselect mode. Selections are kept as a bitset over list positions
+	 * so that membership tests in draw() never have to materialize an IImage. The IImage
+	 * objects are only resolved when the caller actually needs them (share, delete).
+	 */
 	public class Multiselect
 	{
-		HashSet<IImage>	mMultiSelected;
-		Drawable		mMultiSelectFalse;
-		Drawable		mMultiSelectTrue;
+		BitSet		mMultiSelected;
+		Drawable	mMultiSelectFalse;
+		Drawable	mMultiSelectTrue;
 
 		Multiselect()
 		{
@@ -197,6 +255,23 @@ public class GridViewPictures extends View
 			}
 		}
 
+		/**
+		 * Drop the selected positions but stay in multiselect mode, for when the list changed in
+		 * a way positions can't be carried over.
+		 */
+		void deselectAll()
+		{
+			if (mMultiSelected != null)
+			{
+				mMultiSelected.clear();
+			}
+		}
+
+		public boolean contains(int position)
+		{
+			return mMultiSelected != null && position >= 0 && mMultiSelected.get(position);
+		}
+
 		void draw(Canvas canvas)
 		{
 			int startRow;
@@ -204,22 +279,9 @@ public class GridViewPictures extends View
 			int startIndex;
 			int endIndex;
 
-			if (mHorizontal)
-			{
-				// Calculate visible region according to scroll position.
-				startRow = (getScrollX() - mCellSpacing) / mBlockSize;
-				endRow = (getScrollX() + getWidth() - mCellSpacing - 1) / mBlockSize + 1;
-			}
-			else
-			{
-				// Calculate visible region according to scroll position.
-				startRow = (getScrollY() - mCellSpacing) / mBlockSize;
-				endRow = (getScrollY() + getHeight() - mCellSpacing - 1) / mBlockSize + 1;
-			}
-			// Limit startRow and endRow to the valid range.
-			// Make sure we handle the mRows == 0 case right.
-			startRow = Math.max(Math.min(startRow, mNumRows - 1), 0);
-			endRow = Math.max(Math.min(endRow, mNumRows), 0);
+			computeVisibleRows(mVisibleRows);
+			startRow = mVisibleRows[0];
+			endRow = mVisibleRows[1];
 
 			startIndex = startRow * mNumCols;
 			endIndex = Math.min(endRow * mNumCols, getImageCount());
@@ -233,15 +295,13 @@ public class GridViewPictures extends View
 
 			for (int i = startIndex; i < endIndex; i++)
 			{
-				IImage image = mAllImages.getImageAt(i);
-
 				if (mHorizontal)
 				{
-					draw(canvas, image, rowPos, colPos, mCellSize, mCellSize);
+					draw(canvas, i, rowPos, colPos, mCellSize, mCellSize);
 				}
 				else
 				{
-					draw(canvas, image, colPos, rowPos, mCellSize, mCellSize);
+					draw(canvas, i, colPos, rowPos, mCellSize, mCellSize);
 				}
 				// Calculate next position
 				off += 1;
@@ -258,9 +318,9 @@ public class GridViewPictures extends View
 			}
 		}
 
-		void draw(Canvas canvas, IImage image, int xPos, int yPos, int w, int h)
+		void draw(Canvas canvas, int position, int xPos, int yPos, int w, int h)
 		{
-			Drawable checkBox = mMultiSelected.contains(image) ? mMultiSelectTrue : mMultiSelectFalse;
+			Drawable checkBox = mMultiSelected.get(position) ? mMultiSelectTrue : mMultiSelectFalse;
 			int width = checkBox.getIntrinsicWidth();
 			int height = checkBox.getIntrinsicHeight();
 			int left = 5 + xPos;
@@ -270,9 +330,40 @@ public class GridViewPictures extends View
 			checkBox.draw(canvas);
 		}
 
-		public HashSet<IImage> getList()
+		/**
+		 * Resolve the selected positions into images. This walks the image list, so only call it
+		 * when the actual objects are needed.
+		 * 
+		 * @return the selected images in list order.
+		 */
+		public ArrayList<IImage> getList()
+		{
+			return getList(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Resolve at most max of the selected positions into images, from the start of the list.
+		 * Images keep their identity when positions shift, so resolve on the UI thread and hand
+		 * the result to background work rather than the positions.
+		 */
+		public ArrayList<IImage> getList(int max)
 		{
-			return mMultiSelected;
+			ArrayList<IImage> list = new ArrayList<IImage>(Math.min(size(), max));
+			if (mMultiSelected == null || mAllImages == null)
+			{
+				return list;
+			}
+			final int count = getImageCount();
+			for (int i = mMultiSelected.nextSetBit(0); i >= 0 && i < count && list.size() < max; i = mMultiSelected
+					.nextSetBit(i + 1))
+			{
+				IImage image = mAllImages.getImageAt(i);
+				if (image != null)
+				{
+					list.add(image);
+				}
+			}
+			return list;
 		}
 
 		public boolean isEnabled()
@@ -280,21 +371,123 @@ public class GridViewPictures extends View
 			return mMultiSelected != null;
 		}
 
+		/**
+		 * Keep the selection in step with a drag that moved the image at <code>from</code> to
+		 * <code>to</code>.
+		 */
+		void move(int from, int to)
+		{
+			if (mMultiSelected == null || from == to)
+			{
+				return;
+			}
+			boolean selected = mMultiSelected.get(from);
+			remove(from);
+			if (to > from)
+			{
+				to--;
+			}
+			insert(to, selected);
+		}
+
+		void insert(int position, boolean selected)
+		{
+			if (mMultiSelected == null)
+			{
+				return;
+			}
+			int last = mMultiSelected.length();
+			for (int i = last; i > position; i--)
+			{
+				mMultiSelected.set(i, mMultiSelected.get(i - 1));
+			}
+			mMultiSelected.set(position, selected);
+		}
+
+		/**
+		 * Carry the selection over a change in the list's content; removed images drop out.
+		 */
+		void remap(ListDelta delta)
+		{
+			if (mMultiSelected == null)
+			{
+				return;
+			}
+			BitSet selected = new BitSet();
+			for (int i = mMultiSelected.nextSetBit(0); i >= 0; i = mMultiSelected.nextSetBit(i + 1))
+			{
+				int position = delta.map(i);
+				if (position >= 0)
+				{
+					selected.set(position);
+				}
+			}
+			mMultiSelected = selected;
+		}
+
+		/**
+		 * Remap the selection after the image at <code>position</code> has been removed from the
+		 * list, shifting every selection after it down by one.
+		 */
+		public void remove(int position)
+		{
+			if (mMultiSelected == null)
+			{
+				return;
+			}
+			int last = mMultiSelected.length();
+			for (int i = position; i < last; i++)
+			{
+				mMultiSelected.set(i, mMultiSelected.get(i + 1));
+			}
+		}
+
+		public void selectAll()
+		{
+			setRange(0, getImageCount(), true);
+		}
+
+		/**
+		 * Select or deselect all positions in [from, to).
+		 */
+		public void setRange(int from, int to, boolean selected)
+		{
+			setEnabled();
+			from = Math.max(from, 0);
+			to = Math.min(to, getImageCount());
+			if (from >= to)
+			{
+				return;
+			}
+			mMultiSelected.set(from, to, selected);
+		}
+
 		public void setEnabled()
 		{
 			if (mMultiSelected == null)
 			{
-				mMultiSelected = new HashSet<IImage>();
+				mMultiSelected = new BitSet();
 			}
 		}
 
-		public int toggle(IImage image)
+		public int size()
+		{
+			return mMultiSelected == null ? 0 : mMultiSelected.cardinality();
+		}
+
+		/**
+		 * Toggle the selection state of the image at the given position.
+		 * 
+		 * @return the number of selected images before the toggle.
+		 */
+		public int toggle(int position)
 		{
-			int original = mMultiSelected.size();
-			if (!mMultiSelected.add(image))
+			int original = mMultiSelected.cardinality();
+			if (position < 0 || position >= getImageCount())
 			{
-				mMultiSelected.remove(image);
+				return original;
 			}
+			mMultiSelected.flip(position);
 			return original;
 		}
 	}
@@ -309,7 +502,7 @@ public class GridViewPictures extends View
 		@Override
 		public boolean onDown(MotionEvent e)
 		{
-			if (mScroller != null && !mScroller.isFinished())
+			if (!mScroller.isFinished())
 			{
 				mScroller.forceFinished(true);
 				return false;
@@ -330,7 +523,6 @@ public class GridViewPictures extends View
 		public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY)
 		{
 			setSelectedIndex(INDEX_NONE);
-			mScroller = new Scroller(getContext());
 
 			if (mHorizontal)
 			{
@@ -433,20 +625,53 @@ public class GridViewPictures extends View
 	static final int			OUTLINE_SELECTED	= 2;
 	static final int			OUTLINE_DROP_TARGET	= 3;
 
+	static final int			VIDEO_SIZE_OK		= 1;
+	static final int			VIDEO_SIZE_TOO_LARGE	= 2;
+
+	static final int			INSERT_ANIMATION_MS	= 250;
+
+	// Fast scroll sizes, in dips.
+	static final int			SCRUB_TOUCH_DIP		= 40;
+	static final int			SCRUB_THUMB_DIP		= 48;
+	static final int			SCRUB_WIDTH_DIP		= 6;
+	static final int			SCRUB_TEXT_DIP		= 18;
+
 	IImageList					mAllImages			= ImageManager.makeEmptyImageList();
+	ThumbnailAtlas				mAtlas;
+	boolean						mAtlasEnabled;
 	int							mBlockSize;
-	HashMap<Integer, Bitmap>	mCache				= new HashMap<Integer, Bitmap>();
+	// MICRO thumbnails by cacheKey(), kept for the life of the list as they are small.
+	final SparseArray<Bitmap>	mCache				= new SparseArray<Bitmap>();
 	int							mCellSize;
 	int							mCellSpacing;
 	int							mCellBorderSize;
+	int							mCellsDrawn;
 	int							mCurrentPressState	= 0;
 	int							mCurrentSelection	= INDEX_NONE;
 	DragData					mDragData			= new DragData();
 	Rect						mDstRect			= new Rect();
+	boolean						mFastScrollEnabled;
 	GestureDetector				mGestureDetector;
 	final Handler				mHandler			= new Handler();
 	boolean						mHorizontal;
+	// Positions inserted by the last content change, scaled in until the animation ends.
+	int[]						mInsertedPositions;
+	long						mInsertStart;
+	// Thumbnails of the larger tiers by cacheKey(), least recently drawn evicted first. These are
+	// sized to the cells, so a couple of screenfuls bounds their memory.
+	final LargeThumbCache		mLargeCache			= new LargeThumbCache();
 	Listener					mListener;
+	final IImageList.OnChangeListener	mListChangeListener	= new IImageList.OnChangeListener()
+																{
+																	public void onImageListChanged(IImageList list,
+																			ListDelta delta)
+																	{
+																		if (list == mAllImages)
+																		{
+																			onListChanged(delta);
+																		}
+																	}
+																};
 	Runnable					mLongPressCallback;
 	int							mMaxScrollPos;
 	Bitmap						mMissingImageThumbnailBitmap;
@@ -455,12 +680,31 @@ public class GridViewPictures extends View
 	int							mNumCols;
 	int							mNumRows;
 	Paint						mPaintBorder;
+	final Paint					mPaintScrubLabel	= new Paint(Paint.ANTI_ALIAS_FLAG);
+	final Paint					mPaintScrubThumb	= new Paint(Paint.ANTI_ALIAS_FLAG);
+	final Paint					mPaintVideoShade	= new Paint();
+	final Rect					mPositionRect		= new Rect();
 	Bitmap						mOutline[]			= new Bitmap[4];
-	Scroller					mScroller;
+	final Scroller				mScroller;
+	// While the scrubber is dragged, only thumbnails already in memory are drawn.
+	boolean						mScrubbing;
+	final RectF					mScrubRect			= new RectF();
+	int							mScrubSection		= -1;
+	int							mScrubThumbLength;
+	int							mScrubTouchSize;
+	int							mScrubWidth;
+	SectionIndex				mSections;
+	int							mSectionsVersion;
 	Rect						mSrcRect			= new Rect();
+	RowStripCache				mStrips;
+	boolean						mStripsEnabled;
 	long						mVideoSizeLimit		= Long.MAX_VALUE;
+	int							mThumbTier			= IImage.THUMB_TIER_MICRO;
+	final int[]					mVisibleRows		= new int[2];
 	Drawable					mVideoOverlay;
 	Drawable					mVideoMmsErrorOverlay;
+	// Per position: 0 unknown, else VIDEO_SIZE_OK or VIDEO_SIZE_TOO_LARGE.
+	final SparseIntArray		mVideoSizeState		= new SparseIntArray();
 
 	public GridViewPictures(Context context)
 	{
@@ -477,6 +721,7 @@ public class GridViewPictures extends View
 		super(context, attrs, defStyle);
 
 		mGestureDetector = new GestureDetector(context, new MyGestureDetector());
+		mScroller = new Scroller(context);
 
 		setFocusableInTouchMode(true);
 		TypedArray a;
@@ -488,6 +733,9 @@ public class GridViewPictures extends View
 			mCellSpacing = (int) a.getDimension(R.styleable.GalleryLayout_intercellSpacing, 8);
 			mHorizontal = (0 == a.getInt(R.styleable.GalleryLayout_orientation, 1));
 			mDragData.mDragEnabled = (a.getBoolean(R.styleable.GalleryLayout_dragEnabled, false));
+			mAtlasEnabled = a.getBoolean(R.styleable.GalleryLayout_atlasEnabled, false);
+			mStripsEnabled = a.getBoolean(R.styleable.GalleryLayout_rowStripsEnabled, false);
+			mFastScrollEnabled = a.getBoolean(R.styleable.GalleryLayout_fastScrollEnabled, false);
 			a.recycle();
 
 			if (mNumCols <= 0)
@@ -506,6 +754,22 @@ public class GridViewPictures extends View
 		mPaintBorder = new Paint();
 		mPaintBorder.setColor(Color.WHITE);
 		mPaintBorder.setStyle(Style.FILL);
+		mPaintVideoShade.setARGB(0x80, 0x00, 0x00, 0x00);
+
+		final float density = getResources().getDisplayMetrics().density;
+		mScrubTouchSize = Math.round(SCRUB_TOUCH_DIP * density);
+		mScrubThumbLength = Math.round(SCRUB_THUMB_DIP * density);
+		mScrubWidth = Math.round(SCRUB_WIDTH_DIP * density);
+		mPaintScrubThumb.setARGB(0xC0, 0x40, 0x40, 0x40);
+		mPaintScrubLabel.setColor(Color.WHITE);
+		mPaintScrubLabel.setTextSize(SCRUB_TEXT_DIP * density);
+
+		// Load everything the draw path needs up front so onDraw never allocates.
+		Resources res = getResources();
+		mVideoOverlay = res.getDrawable(R.drawable.ic_gallery_video_overlay);
+		mVideoMmsErrorOverlay = res.getDrawable(R.drawable.ic_error_mms_video_overlay);
+		mMissingImageThumbnailBitmap = BitmapFactory.decodeResource(res, R.drawable.ic_missing_thumbnail_picture);
+		mMissingVideoThumbnailBitmap = BitmapFactory.decodeResource(res, R.drawable.ic_missing_thumbnail_video);
 
 		init();
 
@@ -517,6 +781,52 @@ public class GridViewPictures extends View
 		}
 	}
 
+	// The thumbnail cache is keyed by position and source tier.
+	static int cacheKey(int position, int tier)
+	{
+		return position * IImage.THUMB_TIER_COUNT + tier;
+	}
+
+	/**
+	 * @return the cached thumbnail for a cacheKey(), or null.
+	 */
+	Bitmap cacheGet(int key)
+	{
+		if (key % IImage.THUMB_TIER_COUNT == IImage.THUMB_TIER_MICRO)
+		{
+			return mCache.get(key);
+		}
+		return mLargeCache.get(key);
+	}
+
+	void cachePut(int key, Bitmap bitmap)
+	{
+		if (key % IImage.THUMB_TIER_COUNT == IImage.THUMB_TIER_MICRO)
+		{
+			mCache.put(key, bitmap);
+		}
+		else
+		{
+			mLargeCache.put(key, bitmap);
+		}
+	}
+
+	/**
+	 * Remove a thumbnail from the cache without recycling it.
+	 *
+	 * @return the thumbnail that was cached, or null.
+	 */
+	Bitmap cacheRemove(int key)
+	{
+		if (key % IImage.THUMB_TIER_COUNT == IImage.THUMB_TIER_MICRO)
+		{
+			Bitmap bitmap = mCache.get(key);
+			mCache.delete(key);
+			return bitmap;
+		}
+		return mLargeCache.remove(key);
+	}
+
 	boolean canDrag()
 	{
 		return mAllImages != null && mDragData != null && mAllImages.canDrag() && mDragData.mDragEnabled;
@@ -524,11 +834,61 @@ public class GridViewPictures extends View
 
 	void clearCache()
 	{
-		for (Bitmap bitmap : mCache.values())
+		for (int i = 0, n = mCache.size(); i < n; i++)
 		{
-			bitmap.recycle();
+			mCache.valueAt(i).recycle();
 		}
 		mCache.clear();
+
+		for (Bitmap bitmap : mLargeCache.values())
+		{
+			bitmap.recycle();
+		}
+		mLargeCache.clear();
+		mVideoSizeState.clear();
+
+		if (mAtlas != null)
+		{
+			mAtlas.clear();
+		}
+		if (mStrips != null)
+		{
+			mStrips.clear();
+		}
+	}
+
+	/**
+	 * Compute the span of rows (columns when horizontal) that intersect the view at the current
+	 * scroll position.
+	 * 
+	 * @param range
+	 *        receives the first visible row and one past the last.
+	 */
+	void computeVisibleRows(int[] range)
+	{
+		int startRow;
+		int endRow;
+
+		if (mBlockSize <= 0)
+		{
+			// Not laid out yet.
+			range[0] = range[1] = 0;
+			return;
+		}
+		if (mHorizontal)
+		{
+			startRow = (getScrollX() - mCellSpacing) / mBlockSize;
+			endRow = (getScrollX() + getWidth() - mCellSpacing - 1) / mBlockSize + 1;
+		}
+		else
+		{
+			startRow = (getScrollY() - mCellSpacing) / mBlockSize;
+			endRow = (getScrollY() + getHeight() - mCellSpacing - 1) / mBlockSize + 1;
+		}
+		// Limit startRow and endRow to the valid range.
+		// Make sure we handle the mRows == 0 case right.
+		range[0] = Math.max(Math.min(startRow, mNumRows - 1), 0);
+		range[1] = Math.max(Math.min(endRow, mNumRows), 0);
 	}
 
 	@Override
@@ -544,10 +904,8 @@ public class GridViewPictures extends View
 	@Override
 	public void computeScroll()
 	{
-		if (mScroller != null)
+		if (mScroller.computeScrollOffset())
 		{
-			boolean more = mScroller.computeScrollOffset();
-
 			if (mHorizontal)
 			{
 				scrollTo(mScroller.getCurrX(), 0);
@@ -556,14 +914,10 @@ public class GridViewPictures extends View
 			{
 				scrollTo(0, mScroller.getCurrY());
 			}
-			if (more)
+			if (!mScroller.isFinished())
 			{
 				invalidate(); // So we draw again
 			}
-			else
-			{
-				mScroller = null;
-			}
 		}
 		else
 		{
@@ -606,97 +960,71 @@ public class GridViewPictures extends View
 
 	void drawCell(Canvas canvas, final int row, final int col, final int x, final int y, final int x2, final int y2)
 	{
-		final int innerX = x + mCellBorderSize;
-		final int innerY = y + mCellBorderSize;
-		final int innerX2 = x2 - mCellSpacing;
-		final int innerY2 = y2 - mCellSpacing;
-		final int innerW = innerX2 - innerX + 1;
-		final int innerH = innerY2 - innerY + 1;
 		final int imagePos = row * mNumCols + col;
 
 		if (imagePos < 0 || imagePos >= getImageCount())
 		{
 			return;
 		}
-		canvas.drawRect(x, y, innerX2 + mCellBorderSize, innerY2 + mCellBorderSize, mPaintBorder);
+		mCellsDrawn++;
 
+		final float scale = getInsertScale(imagePos);
+		if (scale < 1f)
+		{
+			canvas.save();
+			canvas.scale(scale, scale, (x + x2) / 2f, (y + y2) / 2f);
+		}
 		IImage image = mAllImages.getImageAt(imagePos);
 
-		Bitmap bitmap = getImageBitmap(image, imagePos);
-
-		if (bitmap != null)
+		if (mAtlas != null)
 		{
-			mDstRect.set(innerX, innerY, innerX2, innerY2);
-
-			final int bw = bitmap.getWidth();
-			final int bh = bitmap.getHeight();
-			int left;
-			int top;
-			int right;
-			int bottom;
+			ThumbnailAtlas.Slot slot = mAtlas.get(imagePos);
+			final int degrees = image.getDegreesRotated();
 
-			if (bw > bh)
+			if (slot != null && slot.mDegrees == degrees)
 			{
-				int diff = bw - bh;
-				left = diff / 2;
-				top = 0;
-				bottom = bh - 1;
-				right = bh - 1;
+				GalleryMetrics.count(GalleryMetrics.CACHE_HIT);
 			}
-			else
+			else if (mScrubbing)
 			{
-				int diff = bh - bw;
-				left = 0;
-				right = bw - 1;
-				top = diff / 2;
-				bottom = bw - 1;
+				// Nothing to bake from until decoding resumes.
+				paintCell(canvas, imagePos, image, null, x, y, x2, y2);
+				slot = null;
 			}
-			mSrcRect.set(left, top, right, bottom);
-			canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
-		}
-		else
-		{
-			/** If the thumbnail cannot be drawn, put up an error icon instead */
-			Bitmap error = getErrorBitmap(image);
-			int width = error.getWidth();
-			int height = error.getHeight();
-			mSrcRect.set(0, 0, width, height);
-			int left = (innerW - width) / 2 + innerX;
-			int top = (innerH - height) / 2 + innerY;
-			mDstRect.set(left, top, left + width, top + height);
-			canvas.drawBitmap(error, mSrcRect, mDstRect, null);
-		}
-		if (image.isVideo())
-		{
-
-			Drawable overlay = null;
-			long size = MenuHelper.getImageFileSize(image);
-			if (size >= 0 && size <= mVideoSizeLimit)
+			else
 			{
-				if (mVideoOverlay == null)
+				// Compose the cell once; the source thumbnail isn't needed after that.
+				Bitmap bitmap = getImageBitmap(image, imagePos);
+				for (int tier = 0; tier < IImage.THUMB_TIER_COUNT; tier++)
 				{
-					mVideoOverlay = getResources().getDrawable(R.drawable.ic_gallery_video_overlay);
+					Bitmap cached = cacheRemove(cacheKey(imagePos, tier));
+					if (cached != null && cached != bitmap)
+					{
+						cached.recycle();
+					}
 				}
-				overlay = mVideoOverlay;
-			}
-			else
-			{
-				if (mVideoMmsErrorOverlay == null)
+				slot = mAtlas.acquire(imagePos);
+				slot.mDegrees = degrees;
+				paintCell(mAtlas.beginBake(slot, x, y), imagePos, image, bitmap, x, y, x2, y2);
+				mAtlas.endBake();
+
+				if (bitmap != null)
 				{
-					mVideoMmsErrorOverlay = getResources().getDrawable(R.drawable.ic_error_mms_video_overlay);
+					bitmap.recycle();
 				}
-				overlay = mVideoMmsErrorOverlay;
-				Paint paint = new Paint();
-				paint.setARGB(0x80, 0x00, 0x00, 0x00);
-				canvas.drawRect(innerX, innerY, innerX + innerW, innerY + innerH, paint);
 			}
-			int width = overlay.getIntrinsicWidth();
-			int height = overlay.getIntrinsicHeight();
-			int left = (innerW - width) / 2 + innerX;
-			int top = (innerH - height) / 2 + innerY;
-			mSrcRect.set(left, top, left + width, top + height);
-			overlay.setBounds(mSrcRect);
-			overlay.draw(canvas);
+			if (slot != null)
+			{
+				mAtlas.draw(canvas, slot, x, y);
+			}
+		}
+		else
+		{
+			paintCell(canvas, imagePos, image, getImageBitmap(image, imagePos), x, y, x2, y2);
+		}
+		if (scale < 1f)
+		{
+			canvas.restore();
 		}
 	}
 
@@ -707,40 +1035,102 @@ public class GridViewPictures extends View
 	void drawHorizontal(Canvas canvas)
 	{
 		int x;
-		int xAdjusted;
 		int y;
 		int x2;
-		int x2Adjusted;
 		int y2;
+		final int height = getHeight();
+
+		/*
+		 * The canvas is already translated by getScrollX(), so cells are drawn at their unscrolled
+		 * position; only the rows that intersect the view are visited.
+		 */
+		computeVisibleRows(mVisibleRows);
+
+		// Inserted cells change every frame while they animate in, so strips would only be rerecorded;
+		// while scrubbing they would keep the placeholders.
+		if (mStrips != null && mInsertedPositions == null && !mScrubbing)
+		{
+			drawStrips(canvas);
+			return;
+		}
 
-		for (int row = 0; row < mNumRows; row++)
+		for (int row = mVisibleRows[0]; row < mVisibleRows[1]; row++)
 		{
-			/*
-			 * Note: I think the canvas itself is already being scrolled by this getScrollX()
-			 * amount. Therefore, we draw in the same place in the canvas irregardless of getScrollX(),
-			 * but we don't want to draw if it is offscreen. How confusing!
-			 */
 			x = row * mBlockSize;
 			x2 = x + mBlockSize - 1;
-			xAdjusted = x - getScrollX();
-			x2Adjusted = x2 - getScrollX();
 
-			if (x2Adjusted >= 0 && xAdjusted < getWidth())
+			for (int col = 0; col < mNumCols; col++)
 			{
-				for (int col = 0; col < mNumCols; col++)
-				{
-					y = col * mBlockSize;
-					y2 = y + mBlockSize - 1;
+				y = col * mBlockSize;
+				y2 = y + mBlockSize - 1;
 
-					if (y2 >= 0 && y < getHeight())
-					{
-						drawCell(canvas, row, col, x, y, x2, y2);
-					}
+				if (y2 >= 0 && y < height)
+				{
+					drawCell(canvas, row, col, x, y, x2, y2);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Draw the fast scroll thumb at the edge of the view and, while it is dragged, the label of the
+	 * section under it.
+	 */
+	void drawScrubber(Canvas canvas)
+	{
+		if (mMaxScrollPos <= 0)
+		{
+			return;
+		}
+		// The canvas is translated by the scroll position.
+		final int left = getScrollX();
+		final int top = getScrollY();
+		final int width = getWidth();
+		final int height = getHeight();
+		final float fraction = (float) (mHorizontal ? left : top) / mMaxScrollPos;
+		final float radius = mScrubWidth / 2f;
+		float centerX;
+		float centerY;
+
+		if (mHorizontal)
+		{
+			float thumbLeft = left + fraction * (width - mScrubThumbLength);
+			mScrubRect.set(thumbLeft, top + height - mScrubWidth, thumbLeft + mScrubThumbLength, top + height);
+			centerX = mScrubRect.centerX();
+			centerY = mScrubRect.top - mScrubTouchSize;
+		}
+		else
+		{
+			float thumbTop = top + fraction * (height - mScrubThumbLength);
+			mScrubRect.set(left + width - mScrubWidth, thumbTop, left + width, thumbTop + mScrubThumbLength);
+			centerX = mScrubRect.left - mScrubTouchSize;
+			centerY = mScrubRect.centerY();
+		}
+		canvas.drawRoundRect(mScrubRect, radius, radius, mPaintScrubThumb);
+
+		if (!mScrubbing || mSections == null || mScrubSection < 0 || mScrubSection >= mSections.getCount())
+		{
+			return;
+		}
+		final String label = mSections.getLabel(getContext(), mScrubSection);
+		final float textSize = mPaintScrubLabel.getTextSize();
+		final float halfW = mPaintScrubLabel.measureText(label) / 2 + textSize / 2;
+		final float halfH = textSize;
+
+		if (mHorizontal)
+		{
+			centerX = Math.max(left + halfW, Math.min(left + width - halfW, centerX));
+		}
+		else
+		{
+			centerX -= halfW;
+			centerY = Math.max(top + halfH, Math.min(top + height - halfH, centerY));
+		}
+		mScrubRect.set(centerX - halfW, centerY - halfH, centerX + halfW, centerY + halfH);
+		canvas.drawRoundRect(mScrubRect, halfH / 2, halfH / 2, mPaintScrubThumb);
+		canvas.drawText(label, centerX - halfW + textSize / 2, centerY + textSize / 3, mPaintScrubLabel);
+	}
+
 	void drawSelection(Canvas canvas)
 	{
 		if (mCurrentSelection == INDEX_NONE)
@@ -768,33 +1158,79 @@ public class GridViewPictures extends View
 		}
 	}
 
+	/**
+	 * Draw the visible rows from their strips. Only rows that were not on screen in the previous
+	 * frame are recorded; the rest cost one drawBitmap each, whatever the number of columns.
+	 */
+	void drawStrips(Canvas canvas)
+	{
+		final int first = mVisibleRows[0];
+		final int last = mVisibleRows[1];
+
+		mStrips.retain(first, last);
+
+		for (int row = first; row < last; row++)
+		{
+			final int rowPos = row * mBlockSize;
+			final int x = mHorizontal ? rowPos : 0;
+			final int y = mHorizontal ? 0 : rowPos;
+			RowStripCache.Strip strip = mStrips.get(row);
+
+			if (strip == null)
+			{
+				strip = mStrips.obtain(row);
+				Canvas stripCanvas = mStrips.begin(strip, x, y);
+
+				for (int col = 0; col < mNumCols; col++)
+				{
+					final int colPos = col * mBlockSize;
+
+					if (mHorizontal)
+					{
+						drawCell(stripCanvas, row, col, rowPos, colPos, rowPos + mBlockSize - 1, colPos + mBlockSize - 1);
+					}
+					else
+					{
+						drawCell(stripCanvas, row, col, colPos, rowPos, colPos + mBlockSize - 1, rowPos + mBlockSize - 1);
+					}
+				}
+				mStrips.end();
+			}
+			canvas.drawBitmap(strip.mBitmap, x, y, null);
+		}
+	}
+
 	void drawVertical(Canvas canvas)
 	{
 		int x;
 		int y;
-		int yAdjusted;
 		int x2;
 		int y2;
-		int y2Adjusted;
+		final int width = getWidth();
+
+		computeVisibleRows(mVisibleRows);
 
-		for (int row = 0; row < mNumRows; row++)
+		// Inserted cells change every frame while they animate in, so strips would only be rerecorded;
+		// while scrubbing they would keep the placeholders.
+		if (mStrips != null && mInsertedPositions == null && !mScrubbing)
+		{
+			drawStrips(canvas);
+			return;
+		}
+
+		for (int row = mVisibleRows[0]; row < mVisibleRows[1]; row++)
 		{
 			y = row * mBlockSize;
 			y2 = y + mBlockSize - 1;
-			yAdjusted = y - getScrollY();
-			y2Adjusted = y2 - getScrollY();
 
-			if (y2Adjusted >= 0 || yAdjusted < getHeight())
+			for (int col = 0; col < mNumCols; col++)
 			{
-				for (int col = 0; col < mNumCols; col++)
-				{
-					x = col * mBlockSize;
-					x2 = x + mBlockSize - 1;
+				x = col * mBlockSize;
+				x2 = x + mBlockSize - 1;
 
-					if (x2 >= 0 || x < getWidth())
-					{
-						drawCell(canvas, row, col, x, y, x2, y2);
-					}
+				if (x2 >= 0 && x < width)
+				{
+					drawCell(canvas, row, col, x, y, x2, y2);
 				}
 			}
 		}
@@ -811,12 +1247,10 @@ public class GridViewPictures extends View
 
 			if (r.right > right)
 			{
-				mScroller = new Scroller(getContext());
 				mScroller.startScroll(getScrollX(), getScrollY(), r.right - getWidth() - getScrollX(), 0, 200);
 			}
 			else if (r.left < left)
 			{
-				mScroller = new Scroller(getContext());
 				mScroller.startScroll(getScrollX(), getScrollY(), r.left - getScrollX(), 0, 200);
 			}
 		}
@@ -827,16 +1261,14 @@ public class GridViewPictures extends View
 
 			if (r.bottom > bot)
 			{
-				mScroller = new Scroller(getContext());
 				mScroller.startScroll(getScrollX(), getScrollY(), 0, r.bottom - getHeight() - getScrollY(), 200);
 			}
 			else if (r.top < top)
 			{
-				mScroller = new Scroller(getContext());
 				mScroller.startScroll(getScrollX(), getScrollY(), 0, r.top - getScrollY(), 200);
 			}
 		}
-		if (mScroller != null)
+		if (!mScroller.isFinished())
 		{
 			computeScroll();
 		}
@@ -896,6 +1328,15 @@ public class GridViewPictures extends View
 		canvas.drawLine(width / 2, 0, width / 2, h - 1, paint);
 	}
 
+	/**
+	 * @return the number of cells painted by the last frame. This should stay around the number of
+	 *         cells that fit on screen regardless of the list size.
+	 */
+	public int getCellsDrawn()
+	{
+		return mCellsDrawn;
+	}
+
 	public IImage getCurrentImage()
 	{
 		int currentSelection = getCurrentSelection();
@@ -939,23 +1380,54 @@ public class GridViewPictures extends View
 
 	Bitmap getImageBitmap(IImage image, int imagePos)
 	{
-		Bitmap bitmap = mCache.get(imagePos);
-		if (bitmap != null)
+		// Any cached tier at least as good as the one the cell size needs will do.
+		for (int tier = mThumbTier; tier < IImage.THUMB_TIER_COUNT; tier++)
 		{
-			return bitmap;
+			Bitmap bitmap = cacheGet(cacheKey(imagePos, tier));
+			if (bitmap != null)
+			{
+				GalleryMetrics.count(GalleryMetrics.CACHE_HIT);
+				return bitmap;
+			}
 		}
-		if (image != null)
+		if (image == null || mScrubbing)
 		{
-			bitmap = image.getMiniThumbBitmap();
+			return null;
+		}
+		GalleryMetrics.count(GalleryMetrics.CACHE_MISS);
+		// Cached unrotated; drawCell applies the rotation so rotating doesn't need a new decode.
+		Bitmap bitmap = image.getThumbBitmap(mThumbTier, mCellSize, IImage.NO_ROTATE);
 
-			if (bitmap != null)
+		if (bitmap != null)
+		{
+			// Cells have grown past the lower tiers, so they won't be used again.
+			for (int tier = 0; tier < mThumbTier; tier++)
 			{
-				mCache.put(imagePos, bitmap);
+				Bitmap old = cacheRemove(cacheKey(imagePos, tier));
+				if (old != null)
+				{
+					old.recycle();
+					GalleryMetrics.count(GalleryMetrics.CACHE_EVICT);
+				}
 			}
+			cachePut(cacheKey(imagePos, mThumbTier), bitmap);
 		}
 		return bitmap;
 	}
 
+	/**
+	 * @return the scale of the cell at position while inserted cells are animating in, else 1.
+	 */
+	float getInsertScale(int position)
+	{
+		if (mInsertedPositions == null || Arrays.binarySearch(mInsertedPositions, position) < 0)
+		{
+			return 1f;
+		}
+		long elapsed = SystemClock.uptimeMillis() - mInsertStart;
+		return elapsed >= INSERT_ANIMATION_MS ? 1f : (float) elapsed / INSERT_ANIMATION_MS;
+	}
+
 	public int getImageCount()
 	{
 		if (mAllImages == null)
@@ -975,7 +1447,8 @@ public class GridViewPictures extends View
 		return mMultiselect;
 	}
 
-	// Return the rectange for the thumbnail in the given position.
+	// Return the rectange for the thumbnail in the given position. The rect is reused by the next
+	// call, so don't hold on to it.
 	Rect getRectForPosition(int pos)
 	{
 		int row = pos / mNumCols;
@@ -993,7 +1466,17 @@ public class GridViewPictures extends View
 			left = col * mBlockSize;
 			top = row * mBlockSize;
 		}
-		return new Rect(left, top, left + mCellSize + mCellSpacing, top + mCellSize + mCellSpacing);
+		mPositionRect.set(left, top, left + mCellSize + mCellSpacing, top + mCellSize + mCellSpacing);
+		return mPositionRect;
+	}
+
+	/**
+	 * @return the month sections of the current list, or null while fast scroll is off or the
+	 *         index is still being built.
+	 */
+	public SectionIndex getSections()
+	{
+		return mSections;
 	}
 
 	public int getSelectedIndex()
@@ -1024,8 +1507,61 @@ public class GridViewPictures extends View
 	{
 		mCellSize = (altSize - mCellSpacing * (mNumCols - 1)) / mNumCols;
 		mBlockSize = mCellSpacing + mCellSize;
+		mThumbTier = ImageManager.getThumbTier(mCellSize);
 		mNumRows = (getImageCount() + mNumCols - 1) / mNumCols;
 		mMaxScrollPos = mNumRows * mBlockSize - mainSize;
+
+		if (mBlockSize > 0)
+		{
+			// A screenful plus a partial row at each end, twice over so scrolling back a little
+			// doesn't decode again.
+			mLargeCache.setCapacity(2 * mNumCols * (mainSize / mBlockSize + 2));
+		}
+
+		if (mAtlasEnabled && mBlockSize > 0)
+		{
+			// Enough slots for a screenful plus a partial row at each end.
+			int slotSize = mCellSize + mCellBorderSize;
+			int capacity = mNumCols * (mainSize / mBlockSize + 2);
+
+			if (mAtlas == null || mAtlas.mSlotSize != slotSize || mAtlas.mCapacity < capacity)
+			{
+				if (mAtlas != null)
+				{
+					mAtlas.recycle();
+				}
+				mAtlas = new ThumbnailAtlas(slotSize, capacity);
+			}
+		}
+		if (mStripsEnabled && mBlockSize > 0)
+		{
+			int stripW = mHorizontal ? mBlockSize : altSize;
+			int stripH = mHorizontal ? altSize : mBlockSize;
+			int capacity = mainSize / mBlockSize + 2;
+
+			if (mStrips == null || mStrips.mWidth != stripW || mStrips.mHeight != stripH
+					|| mStrips.mCapacity < capacity)
+			{
+				if (mStrips != null)
+				{
+					mStrips.recycle();
+				}
+				mStrips = new RowStripCache(stripW, stripH, capacity);
+			}
+			else
+			{
+				// The row count or contents may have changed with the layout.
+				mStrips.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return true if cells are drawn from pre-composited atlas slots.
+	 */
+	public boolean isAtlasEnabled()
+	{
+		return mAtlasEnabled;
 	}
 
 	public boolean isDragEnabled()
@@ -1033,13 +1569,147 @@ public class GridViewPictures extends View
 		return mDragData.mDragEnabled;
 	}
 
+	/**
+	 * @return true if the grid has a scrubber along its edge.
+	 */
+	public boolean isFastScrollEnabled()
+	{
+		return mFastScrollEnabled;
+	}
+
+	public boolean isHorizontal()
+	{
+		return mHorizontal;
+	}
+
+	/**
+	 * @return true if rows are kept in strips while scrolling.
+	 */
+	public boolean isRowStripsEnabled()
+	{
+		return mStripsEnabled;
+	}
+
+	/**
+	 * Call when the contents of the current image list have changed in a way the list couldn't
+	 * describe as a ListDelta. Cached cells and selections are dropped since positions may have
+	 * moved.
+	 */
+	public void notifyImageListChanged()
+	{
+		clearCache();
+		mMultiselect.deselectAll();
+		rebuildSections();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * The content of the image list changed. Thumbnails, atlas cells, video badges and selections
+	 * are all keyed by position, so they are shifted to their new positions rather than dropped;
+	 * only the inserted cells need new thumbnails, and they are animated in.
+	 */
+	void onListChanged(ListDelta delta)
+	{
+		if (delta == null)
+		{
+			mCurrentSelection = INDEX_NONE;
+			mInsertedPositions = null;
+			notifyImageListChanged();
+			return;
+		}
+		int n = mCache.size();
+		int[] keys = new int[n];
+		Bitmap[] bitmaps = new Bitmap[n];
+		for (int i = 0; i < n; i++)
+		{
+			keys[i] = mCache.keyAt(i);
+			bitmaps[i] = mCache.valueAt(i);
+		}
+		mCache.clear();
+
+		for (int i = 0; i < n; i++)
+		{
+			int position = delta.map(keys[i] / IImage.THUMB_TIER_COUNT);
+			if (position >= 0)
+			{
+				mCache.put(cacheKey(position, keys[i] % IImage.THUMB_TIER_COUNT), bitmaps[i]);
+			}
+			else
+			{
+				bitmaps[i].recycle();
+			}
+		}
+		// Re-inserted oldest first, so the recency order survives.
+		keys = mLargeCache.keys();
+		ArrayList<Bitmap> large = mLargeCache.values();
+		mLargeCache.clear();
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			int position = delta.map(keys[i] / IImage.THUMB_TIER_COUNT);
+			if (position >= 0)
+			{
+				mLargeCache.put(cacheKey(position, keys[i] % IImage.THUMB_TIER_COUNT), large.get(i));
+			}
+			else
+			{
+				large.get(i).recycle();
+			}
+		}
+		n = mVideoSizeState.size();
+		keys = new int[n];
+		int[] states = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			keys[i] = mVideoSizeState.keyAt(i);
+			states[i] = mVideoSizeState.valueAt(i);
+		}
+		mVideoSizeState.clear();
+
+		for (int i = 0; i < n; i++)
+		{
+			int position = delta.map(keys[i]);
+			if (position >= 0)
+			{
+				mVideoSizeState.put(position, states[i]);
+			}
+		}
+		if (mAtlas != null)
+		{
+			mAtlas.remap(delta);
+		}
+		if (mStrips != null)
+		{
+			mStrips.clear();
+		}
+		mMultiselect.remap(delta);
+		rebuildSections();
+
+		if (mCurrentSelection != INDEX_NONE)
+		{
+			mCurrentSelection = delta.map(mCurrentSelection);
+		}
+		if (delta.mInserted.length > 0)
+		{
+			mInsertedPositions = delta.mInserted;
+			mInsertStart = SystemClock.uptimeMillis();
+		}
+		requestLayout();
+		invalidate();
+	}
+
 	@Override
 	public void onDraw(Canvas canvas)
 	{
 		super.onDraw(canvas);
 
+		long start = GalleryMetrics.start();
+
 		canvas.drawColor(Color.TRANSPARENT);
 
+		mCellsDrawn = 0;
+
 		if (mHorizontal)
 		{
 			drawHorizontal(canvas);
@@ -1054,6 +1724,23 @@ public class GridViewPictures extends View
 		}
 		drawSelection(canvas);
 		mDragData.draw(canvas);
+
+		if (mFastScrollEnabled)
+		{
+			drawScrubber(canvas);
+		}
+
+		if (mInsertedPositions != null)
+		{
+			if (SystemClock.uptimeMillis() - mInsertStart >= INSERT_ANIMATION_MS)
+			{
+				mInsertedPositions = null;
+			}
+			invalidate();
+		}
+
+		GalleryMetrics.end(GalleryMetrics.GRID_FRAME, start);
+		GalleryMetrics.record(GalleryMetrics.CELLS_DRAWN, mCellsDrawn);
 	}
 
 	@Override
@@ -1261,12 +1948,234 @@ public class GridViewPictures extends View
 		setMeasuredDimension(width, height);
 	}
 
+	/**
+	 * Handle a drag of the fast scroll scrubber, which starts on the trailing edge of the view.
+	 * 
+	 * @return true if the event belonged to the scrubber.
+	 */
+	boolean onScrubTouch(MotionEvent ev)
+	{
+		final float along = mHorizontal ? ev.getX() / getWidth() : ev.getY() / getHeight();
+
+		switch (ev.getAction())
+		{
+			case MotionEvent.ACTION_DOWN:
+				if (!mFastScrollEnabled || mMaxScrollPos <= 0)
+				{
+					return false;
+				}
+				if (mHorizontal ? ev.getY() < getHeight() - mScrubTouchSize : ev.getX() < getWidth() - mScrubTouchSize)
+				{
+					return false;
+				}
+				mScrubbing = true;
+				mScrubSection = -1;
+				mScroller.forceFinished(true);
+
+				if (getParent() != null)
+				{
+					getParent().requestDisallowInterceptTouchEvent(true);
+				}
+				scrubTo(along);
+				return true;
+
+			case MotionEvent.ACTION_MOVE:
+				if (!mScrubbing)
+				{
+					return false;
+				}
+				scrubTo(along);
+				return true;
+
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				if (!mScrubbing)
+				{
+					return false;
+				}
+				// Draw again with decoding resumed, now only for the cells at the destination.
+				mScrubbing = false;
+				mScrubSection = -1;
+				invalidate();
+				return true;
+		}
+		return mScrubbing;
+	}
+
 	@Override
 	public boolean onTouchEvent(MotionEvent ev)
 	{
+		if (onScrubTouch(ev))
+		{
+			return true;
+		}
 		return mDragData.onTouchEvent(ev);
 	}
 
+	/**
+	 * Paint a cell: border, center-cropped thumbnail (or error icon) and the video badge.
+	 */
+	void paintCell(Canvas canvas, int imagePos, IImage image, Bitmap bitmap, final int x, final int y, final int x2,
+			final int y2)
+	{
+		final int innerX = x + mCellBorderSize;
+		final int innerY = y + mCellBorderSize;
+		final int innerX2 = x2 - mCellSpacing;
+		final int innerY2 = y2 - mCellSpacing;
+		final int innerW = innerX2 - innerX + 1;
+		final int innerH = innerY2 - innerY + 1;
+
+		canvas.drawRect(x, y, innerX2 + mCellBorderSize, innerY2 + mCellBorderSize, mPaintBorder);
+
+		if (bitmap != null)
+		{
+			mDstRect.set(innerX, innerY, innerX2, innerY2);
+
+			final int bw = bitmap.getWidth();
+			final int bh = bitmap.getHeight();
+			int left;
+			int top;
+			int right;
+			int bottom;
+
+			if (bw > bh)
+			{
+				int diff = bw - bh;
+				left = diff / 2;
+				top = 0;
+				bottom = bh - 1;
+				right = bh - 1;
+			}
+			else
+			{
+				int diff = bh - bw;
+				left = 0;
+				right = bw - 1;
+				top = diff / 2;
+				bottom = bw - 1;
+			}
+			mSrcRect.set(left, top, right, bottom);
+
+			// The crop is square, so turning the canvas about the cell centre keeps it in place.
+			final int degrees = image.getDegreesRotated();
+			if (degrees != 0)
+			{
+				canvas.save();
+				canvas.rotate(degrees, mDstRect.exactCenterX(), mDstRect.exactCenterY());
+				canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
+				canvas.restore();
+			}
+			else
+			{
+				canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
+			}
+		}
+		else if (!mScrubbing)
+		{
+			/** If the thumbnail cannot be drawn, put up an error icon instead */
+			Bitmap error = getErrorBitmap(image);
+			int width = error.getWidth();
+			int height = error.getHeight();
+			mSrcRect.set(0, 0, width, height);
+			int left = (innerW - width) / 2 + innerX;
+			int top = (innerH - height) / 2 + innerY;
+			mDstRect.set(left, top, left + width, top + height);
+			canvas.drawBitmap(error, mSrcRect, mDstRect, null);
+		}
+		if (image.isVideo())
+		{
+
+			Drawable overlay = null;
+			// Opening the file to size it allocates, so only do it the first time a cell is seen.
+			int sizeState = mVideoSizeState.get(imagePos);
+			if (sizeState == 0 && !mScrubbing)
+			{
+				long size = MenuHelper.getImageFileSize(image);
+				sizeState = (size >= 0 && size <= mVideoSizeLimit) ? VIDEO_SIZE_OK : VIDEO_SIZE_TOO_LARGE;
+				mVideoSizeState.put(imagePos, sizeState);
+			}
+			if (sizeState != VIDEO_SIZE_TOO_LARGE)
+			{
+				overlay = mVideoOverlay;
+			}
+			else
+			{
+				overlay = mVideoMmsErrorOverlay;
+				canvas.drawRect(innerX, innerY, innerX + innerW, innerY + innerH, mPaintVideoShade);
+			}
+			int width = overlay.getIntrinsicWidth();
+			int height = overlay.getIntrinsicHeight();
+			int left = (innerW - width) / 2 + innerX;
+			int top = (innerH - height) / 2 + innerY;
+			mSrcRect.set(left, top, left + width, top + height);
+			overlay.setBounds(mSrcRect);
+			overlay.draw(canvas);
+		}
+	}
+
+	/**
+	 * Build the section index of the current list in the background, if fast scroll is on. The
+	 * result is dropped if the list has been replaced or changed again meanwhile.
+	 */
+	void rebuildSections()
+	{
+		final int version = ++mSectionsVersion;
+		mSections = null;
+
+		if (!mFastScrollEnabled || mAllImages == null)
+		{
+			return;
+		}
+		final IImageList list = mAllImages;
+
+		ImageManager.getListExecutor().execute(new Runnable()
+		{
+			public void run()
+			{
+				SectionIndex sections = null;
+				try
+				{
+					sections = SectionIndex.build(list, SectionIndex.MONTH);
+				}
+				catch (RuntimeException ex)
+				{
+					// The list may have been closed under us.
+					Log.e(TAG, "section index failed", ex);
+				}
+				final SectionIndex result = sections;
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						if (version == mSectionsVersion && list == mAllImages)
+						{
+							mSections = result;
+							invalidate();
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Remove the image at the given position from the list, keeping the multiselect state and
+	 * thumbnail cache in step with the shifted positions.
+	 */
+	public boolean removeImageAt(int index)
+	{
+		if (mAllImages == null || !mAllImages.removeImageAt(index))
+		{
+			return false;
+		}
+		mMultiselect.remove(index);
+		clearCache();
+		rebuildSections();
+		requestLayout();
+		return true;
+	}
+
 	@Override
 	public void scrollBy(int x, int y)
 	{
@@ -1355,25 +2264,101 @@ public class GridViewPictures extends View
 		}
 	}
 
+	/**
+	 * Move the scrubber to the given fraction of the list and scroll with it. The label shows the
+	 * section of the image at that point.
+	 */
+	void scrubTo(float fraction)
+	{
+		fraction = Math.max(0, Math.min(1, fraction));
+		scrollTo(fraction);
+
+		int count = getImageCount();
+		mScrubSection = mSections != null && count > 0 ? mSections.getSectionForPosition(Math.round(fraction
+				* (count - 1))) : -1;
+		invalidate();
+	}
+
+	/**
+	 * Draw cells from pre-composited thumbnails. Each thumbnail is cropped and scaled to the cell
+	 * size once, with the border and video badge baked in, and kept in a shared atlas bitmap so a
+	 * frame is one unscaled drawBitmap per cell. Costs one or two atlas pages of memory.
+	 */
+	public void setAtlasEnabled(boolean enabled)
+	{
+		if (mAtlasEnabled == enabled)
+		{
+			return;
+		}
+		mAtlasEnabled = enabled;
+
+		if (!enabled && mAtlas != null)
+		{
+			mAtlas.recycle();
+			mAtlas = null;
+		}
+		requestLayout();
+		invalidate();
+	}
+
 	public void setDragEnabled(boolean drag)
 	{
 		mDragData.mDragEnabled = drag;
 	}
 
+	/**
+	 * Show a scrubber along the trailing edge that scrolls through the list by month, labelling
+	 * the month under it. No thumbnails are decoded while it is dragged.
+	 */
+	public void setFastScrollEnabled(boolean enabled)
+	{
+		if (mFastScrollEnabled == enabled)
+		{
+			return;
+		}
+		mFastScrollEnabled = enabled;
+		rebuildSections();
+		invalidate();
+	}
+
 	public void setHorizontal(boolean horizontal)
 	{
 		mHorizontal = horizontal;
 		requestLayout();
 	}
 
+	/**
+	 * Show the given list, closing the previous one. The grid follows changes to the list's
+	 * content until it is replaced.
+	 */
 	public void setImageList(IImageList list)
 	{
 		if (mAllImages != null)
 		{
+			mAllImages.setOnChangeListener(null);
 			mAllImages.close();
 		}
 		mAllImages = list;
 		mCache.clear();
+		mLargeCache.clear();
+		mVideoSizeState.clear();
+		mInsertedPositions = null;
+		mMultiselect.deselectAll();
+
+		if (mAllImages != null)
+		{
+			mAllImages.setOnChangeListener(mListChangeListener);
+		}
+
+		if (mAtlas != null)
+		{
+			mAtlas.clear();
+		}
+		if (mStrips != null)
+		{
+			mStrips.clear();
+		}
+		rebuildSections();
 		requestLayout();
 	}
 
@@ -1388,6 +2373,27 @@ public class GridViewPictures extends View
 		requestLayout();
 	}
 
+	/**
+	 * Keep each visible row in a reusable strip bitmap so scrolling only translates them and
+	 * records the rows that come into view. Costs about a screenful of extra bitmap memory.
+	 */
+	public void setRowStripsEnabled(boolean enabled)
+	{
+		if (mStripsEnabled == enabled)
+		{
+			return;
+		}
+		mStripsEnabled = enabled;
+
+		if (!enabled && mStrips != null)
+		{
+			mStrips.recycle();
+			mStrips = null;
+		}
+		requestLayout();
+		invalidate();
+	}
+
 	public void setSelectedIndex(int index)
 	{
 		if (mCurrentSelection == index)
@@ -1406,5 +2412,6 @@ public class GridViewPictures extends View
 	public void setVideoSizeLimit(long limit)
 	{
 		mVideoSizeLimit = limit;
+		mVideoSizeState.clear();
 	}
 }
@@ -54,7 +54,7 @@ public class HighlightView
 	public boolean				mIsFocused;
 	boolean						mHidden;
 	ModifyMode					mMode				= ModifyMode.None;
-	public Rect					mDrawRect;								// in screen space
+	public final Rect			mDrawRect			= new Rect();		// in screen space
 	RectF						mImageRect;							// in image space
 	public RectF				mCropRect;								// in image space
 	public Matrix				mMatrix;
@@ -66,6 +66,16 @@ public class HighlightView
 	final Paint					mFocusPaint			= new Paint();
 	final Paint					mNoFocusPaint		= new Paint();
 	final Paint					mOutlinePaint		= new Paint();
+	int							mHighlightColor;
+	int							mInvalidateMargin;
+
+	// Outline path, rebuilt only when mPathRect no longer matches mDrawRect.
+	final Path					mPath				= new Path();
+	final Rect					mPathRect			= new Rect();
+
+	// Scratch geometry so drawing and touch handling don't allocate.
+	final Rect					mDirtyRect			= new Rect();
+	final RectF					mTempRectF			= new RectF();
 
 	public HighlightView(View ctx)
 	{
@@ -73,11 +83,12 @@ public class HighlightView
 	}
 
 	// Maps the cropping rectangle from image space to screen space.
-	private Rect computeLayout()
+	private void computeLayout(Rect out)
 	{
-		RectF r = new RectF(mCropRect.left, mCropRect.top, mCropRect.right, mCropRect.bottom);
+		RectF r = mTempRectF;
+		r.set(mCropRect);
 		mMatrix.mapRect(r);
-		return new Rect(Math.round(r.left), Math.round(r.top), Math.round(r.right), Math.round(r.bottom));
+		out.set(Math.round(r.left), Math.round(r.top), Math.round(r.right), Math.round(r.bottom));
 	}
 
 	public void draw(Canvas canvas)
@@ -86,8 +97,6 @@ public class HighlightView
 		{
 			return;
 		}
-		canvas.save();
-		Path path = new Path();
 		if (!hasFocus())
 		{
 			mOutlinePaint.setColor(0xFF000000);
@@ -95,19 +104,21 @@ public class HighlightView
 		}
 		else
 		{
-			Rect viewDrawingRect = new Rect();
-			mContext.getDrawingRect(viewDrawingRect);
-
-			path.addRect(new RectF(mDrawRect), Path.Direction.CW);
+			if (!mPathRect.equals(mDrawRect))
+			{
+				mPathRect.set(mDrawRect);
+				mTempRectF.set(mDrawRect);
+				mPath.reset();
+				mPath.addRect(mTempRectF, Path.Direction.CW);
+			}
 			// Was: 0xFFFF8A00
-			mOutlinePaint.setColor(mContext.getResources().getColor(R.color.highlight));
+			mOutlinePaint.setColor(mHighlightColor);
 
 			// canvas.clipPath(path, Region.Op.DIFFERENCE);
 			// This causes the image to dim a bit, which I don't like:
 			// canvas.drawRect(viewDrawingRect, hasFocus() ? mFocusPaint : mNoFocusPaint);
 
-			canvas.restore();
-			canvas.drawPath(path, mOutlinePaint);
+			canvas.drawPath(mPath, mOutlinePaint);
 
 			if (mMode == ModifyMode.Grow)
 			{
@@ -146,13 +157,20 @@ public class HighlightView
 	// Returns the cropping rectangle in image space.
 	public Rect getCropRect()
 	{
-		return new Rect((int) mCropRect.left, (int) mCropRect.top, (int) mCropRect.right, (int) mCropRect.bottom);
+		return getCropRect(new Rect());
+	}
+
+	// Fills in and returns the cropping rectangle in image space.
+	public Rect getCropRect(Rect out)
+	{
+		out.set((int) mCropRect.left, (int) mCropRect.top, (int) mCropRect.right, (int) mCropRect.bottom);
+		return out;
 	}
 
 	// Determines which edges are hit by touching at (x, y).
 	public int getHit(float x, float y)
 	{
-		Rect r = computeLayout();
+		Rect r = mDrawRect;
 		final float hysteresis = 20F;
 		int retval = GROW_NONE;
 
@@ -205,7 +223,8 @@ public class HighlightView
 		// Don't let the cropping rectangle grow too fast.
 		// Grow at most half of the difference between the image rectangle and
 		// the cropping rectangle.
-		RectF r = new RectF(mCropRect);
+		RectF r = mTempRectF;
+		r.set(mCropRect);
 		if (dx > 0F && r.width() + 2 * dx > mImageRect.width())
 		{
 			float adjustment = (mImageRect.width() - r.width()) / 2F;
@@ -258,15 +277,14 @@ public class HighlightView
 		}
 
 		mCropRect.set(r);
-		mDrawRect = computeLayout();
-		mContext.invalidate();
+		updateLayout();
 	}
 
 	// Handles motion (dx, dy) in screen space.
 	// The "edge" parameter specifies which edges the user is dragging.
 	public void handleMotion(int edge, float dx, float dy)
 	{
-		Rect r = computeLayout();
+		Rect r = mDrawRect;
 		if (edge == GROW_NONE)
 		{
 			return;
@@ -307,18 +325,32 @@ public class HighlightView
 		mResizeDrawableWidth = resources.getDrawable(R.drawable.camera_crop_width);
 		mResizeDrawableHeight = resources.getDrawable(R.drawable.camera_crop_height);
 		mResizeDrawableDiagonal = resources.getDrawable(R.drawable.indicator_autocrop);
+		mHighlightColor = resources.getColor(R.color.highlight);
+
+		// The resize handles stick out past the rectangle by up to half their size, plus the
+		// offsets used in draw() and the outline stroke.
+		int handle = Math.max(Math.max(mResizeDrawableWidth.getIntrinsicWidth(),
+				mResizeDrawableWidth.getIntrinsicHeight()), Math.max(mResizeDrawableHeight.getIntrinsicWidth(),
+				mResizeDrawableHeight.getIntrinsicHeight()));
+		mInvalidateMargin = handle / 2 + 4 + (int) Math.ceil(mOutlinePaint.getStrokeWidth());
 	}
 
 	public void invalidate()
 	{
-		mDrawRect = computeLayout();
+		computeLayout(mDrawRect);
+	}
+
+	// Invalidate the area covered by the highlight, including its handles.
+	void invalidateView(Rect r)
+	{
+		mDirtyRect.set(r);
+		mDirtyRect.inset(-mInvalidateMargin, -mInvalidateMargin);
+		mContext.invalidate(mDirtyRect);
 	}
 
 	// Grows the cropping rectange by (dx, dy) in image space.
 	void moveBy(float dx, float dy)
 	{
-		Rect invalRect = new Rect(mDrawRect);
-
 		mCropRect.offset(dx, dy);
 
 		// Put the cropping rectangle inside image rectangle.
@@ -327,10 +359,7 @@ public class HighlightView
 		mCropRect.offset(Math.min(0, mImageRect.right - mCropRect.right),
 				Math.min(0, mImageRect.bottom - mCropRect.bottom));
 
-		mDrawRect = computeLayout();
-		invalRect.union(mDrawRect);
-		invalRect.inset(-10, -10);
-		mContext.invalidate(invalRect);
+		updateLayout();
 	}
 
 	public void setFocus(boolean f)
@@ -348,7 +377,8 @@ public class HighlightView
 		if (mode != mMode)
 		{
 			mMode = mode;
-			mContext.invalidate();
+			// Only the handles change.
+			invalidateView(mDrawRect);
 		}
 	}
 
@@ -361,7 +391,7 @@ public class HighlightView
 		mMaintainAspectRatio = maintainAspectRatio;
 
 		mInitialAspectRatio = mCropRect.width() / mCropRect.height();
-		mDrawRect = computeLayout();
+		computeLayout(mDrawRect);
 
 		mFocusPaint.setARGB(125, 50, 50, 50);
 		mNoFocusPaint.setARGB(125, 50, 50, 50);
@@ -372,4 +402,14 @@ public class HighlightView
 		mMode = ModifyMode.None;
 		init();
 	}
+
+	// Recompute the screen rectangle after the crop rectangle changed and invalidate the union of
+	// the old and new areas.
+	void updateLayout()
+	{
+		mDirtyRect.set(mDrawRect);
+		computeLayout(mDrawRect);
+		mDirtyRect.union(mDrawRect);
+		invalidateView(mDirtyRect);
+	}
 }
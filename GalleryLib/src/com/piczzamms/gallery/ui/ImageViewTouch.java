@@ -11,6 +11,7 @@ public class ImageViewTouch extends ImageViewTouchBase
 {
 	private final ViewImage	mViewImage;
 	private boolean			mEnableTrackballScroll;
+	private boolean			mEnableFling;
 
 	public ImageViewTouch(Context context)
 	{
@@ -29,8 +30,23 @@ public class ImageViewTouch extends ImageViewTouchBase
 		mEnableTrackballScroll = enable;
 	}
 
+	/**
+	 * When enabled, a fling on a zoomed image keeps panning with inertia instead of being left to
+	 * the caller.
+	 */
+	public void setEnableFling(boolean enable)
+	{
+		mEnableFling = enable;
+	}
+
+	public boolean isFlingEnabled()
+	{
+		return mEnableFling;
+	}
+
 	public void postTranslateCenter(float dx, float dy)
 	{
+		stopAnimation();
 		super.postTranslate(dx, dy);
 		center(true, true);
 	}
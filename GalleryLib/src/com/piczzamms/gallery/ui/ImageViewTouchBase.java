@@ -16,18 +16,32 @@
 
 package com.piczzamms.gallery.ui;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.widget.ImageView;
 
 public abstract class ImageViewTouchBase extends ImageView
 {
+	// Steps the current animation once per display frame. Only used on Jelly Bean and later.
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	class VsyncCallback implements Choreographer.FrameCallback
+	{
+		public void doFrame(long frameTimeNanos)
+		{
+			// Frame time is on the same monotonic clock as SystemClock.uptimeMillis().
+			onAnimationFrame(frameTimeNanos / 1000000);
+		}
+	}
 
 	// ImageViewTouchBase will pass a Bitmap to the Recycler if it has finished
 	// its use of that Bitmap.
@@ -77,6 +91,41 @@ public abstract class ImageViewTouchBase extends ImageView
 
 	static final float				SCALE_RATE			= 1.25F;
 
+	static final int				ANIM_NONE			= 0;
+	static final int				ANIM_ZOOM			= 1;
+	static final int				ANIM_FLING			= 2;
+
+	// Frame interval used before Choreographer is available.
+	static final long				FRAME_DELAY			= 16;
+
+	// Fling velocity decays by e^-FLING_FRICTION per second and stops below MIN_FLING_VELOCITY px/s.
+	static final float				FLING_FRICTION		= 4F;
+	static final float				MIN_FLING_VELOCITY	= 50F;
+
+	int								mAnimation			= ANIM_NONE;
+	long							mAnimStart;
+	long							mAnimLast;
+	float							mAnimDuration;
+	float							mZoomFrom;
+	float							mZoomTarget;
+	float							mZoomCenterX;
+	float							mZoomCenterY;
+	float							mFlingVelocityX;
+	float							mFlingVelocityY;
+
+	final Runnable					mFrameRunnable		= new Runnable()
+														{
+															public void run()
+															{
+																onAnimationFrame(SystemClock.uptimeMillis());
+															}
+														};
+	VsyncCallback					mVsyncCallback;
+
+	// Scratch objects so the per-frame paths don't allocate.
+	final RectF						mTempRect			= new RectF();
+	final Matrix					mTempMatrix			= new Matrix();
+
 	public ImageViewTouchBase(Context context)
 	{
 		super(context);
@@ -89,6 +138,22 @@ public abstract class ImageViewTouchBase extends ImageView
 		init();
 	}
 
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	void cancelFrame()
+	{
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+		{
+			if (mVsyncCallback != null)
+			{
+				Choreographer.getInstance().removeFrameCallback(mVsyncCallback);
+			}
+		}
+		else
+		{
+			mHandler.removeCallbacks(mFrameRunnable);
+		}
+	}
+
 	// Center as much as possible in one or both axis. Centering is
 	// defined as follows: if the image is scaled down below the
 	// view's dimensions then center it (literally). If the image
@@ -103,7 +168,8 @@ public abstract class ImageViewTouchBase extends ImageView
 
 		Matrix m = getImageViewMatrix();
 
-		RectF rect = new RectF(0, 0, mBitmapDisplayed.getBitmap().getWidth(), mBitmapDisplayed.getBitmap().getHeight());
+		RectF rect = mTempRect;
+		rect.set(0, 0, mBitmapDisplayed.getBitmap().getWidth(), mBitmapDisplayed.getBitmap().getHeight());
 
 		m.mapRect(rect);
 
@@ -155,6 +221,24 @@ public abstract class ImageViewTouchBase extends ImageView
 		setImageBitmapResetBase(null, true);
 	}
 
+	/**
+	 * Keep panning with the given velocity, in pixels per second, slowing down until it stops or
+	 * runs into an edge of the image.
+	 */
+	public void fling(float velocityX, float velocityY)
+	{
+		if (mBitmapDisplayed.getBitmap() == null)
+		{
+			return;
+		}
+		stopAnimation();
+		mFlingVelocityX = velocityX;
+		mFlingVelocityY = velocityY;
+		mAnimLast = SystemClock.uptimeMillis();
+		mAnimation = ANIM_FLING;
+		scheduleFrame();
+	}
+
 	// Combine the base matrix and the supp matrix to make the final matrix.
 	protected Matrix getImageViewMatrix()
 	{
@@ -226,6 +310,69 @@ public abstract class ImageViewTouchBase extends ImageView
 		return max;
 	}
 
+	// Advance the current animation to the given uptime and schedule the next frame if needed.
+	void onAnimationFrame(long now)
+	{
+		switch (mAnimation)
+		{
+			case ANIM_ZOOM:
+			{
+				float t = Math.min(1F, Math.max(0, now - mAnimStart) / mAnimDuration);
+				zoomTo(mZoomFrom + (mZoomTarget - mZoomFrom) * t, mZoomCenterX, mZoomCenterY);
+
+				if (t >= 1F)
+				{
+					mAnimation = ANIM_NONE;
+					return;
+				}
+				break;
+			}
+			case ANIM_FLING:
+			{
+				float dt = Math.max(0, now - mAnimLast) / 1000F;
+				mAnimLast = now;
+
+				float dx = mFlingVelocityX * dt;
+				float dy = mFlingVelocityY * dt;
+				float oldX = getValue(mSuppMatrix, Matrix.MTRANS_X);
+				float oldY = getValue(mSuppMatrix, Matrix.MTRANS_Y);
+
+				postTranslate(dx, dy);
+				center(true, true);
+
+				// Stop along an axis once centering holds us against an edge.
+				if (Math.abs(getValue(mSuppMatrix, Matrix.MTRANS_X) - oldX) < Math.abs(dx) / 2)
+				{
+					mFlingVelocityX = 0;
+				}
+				if (Math.abs(getValue(mSuppMatrix, Matrix.MTRANS_Y) - oldY) < Math.abs(dy) / 2)
+				{
+					mFlingVelocityY = 0;
+				}
+				float decay = (float) Math.exp(-FLING_FRICTION * dt);
+				mFlingVelocityX *= decay;
+				mFlingVelocityY *= decay;
+
+				if (Math.abs(mFlingVelocityX) < MIN_FLING_VELOCITY && Math.abs(mFlingVelocityY) < MIN_FLING_VELOCITY)
+				{
+					mAnimation = ANIM_NONE;
+					return;
+				}
+				break;
+			}
+			default:
+				return;
+		}
+		scheduleFrame();
+	}
+
+	@Override
+	protected void onDetachedFromWindow()
+	{
+		stopAnimation();
+		super.onDetachedFromWindow();
+	}
+
 	@Override
 	public boolean onKeyDown(int keyCode, KeyEvent event)
 	{
@@ -355,6 +502,35 @@ public abstract class ImageViewTouchBase extends ImageView
 		mRecycler = r;
 	}
 
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	void scheduleFrame()
+	{
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+		{
+			if (mVsyncCallback == null)
+			{
+				mVsyncCallback = new VsyncCallback();
+			}
+			Choreographer.getInstance().postFrameCallback(mVsyncCallback);
+		}
+		else
+		{
+			mHandler.postDelayed(mFrameRunnable, FRAME_DELAY);
+		}
+	}
+
+	/**
+	 * Stop any running zoom or fling animation where it is.
+	 */
+	public void stopAnimation()
+	{
+		if (mAnimation != ANIM_NONE)
+		{
+			mAnimation = ANIM_NONE;
+			cancelFrame();
+		}
+	}
+
 	public void zoomIn()
 	{
 		zoomIn(SCALE_RATE);
@@ -392,7 +568,8 @@ public abstract class ImageViewTouchBase extends ImageView
 		float cy = getHeight() / 2F;
 
 		// Zoom out to at most 1x.
-		Matrix tmp = new Matrix(mSuppMatrix);
+		Matrix tmp = mTempMatrix;
+		tmp.set(mSuppMatrix);
 		tmp.postScale(rate, rate, cx, cy);
 
 		if (getScale(tmp) < 1F)
@@ -430,27 +607,18 @@ public abstract class ImageViewTouchBase extends ImageView
 		center(true, true);
 	}
 
-	protected void zoomTo(final float scale, final float centerX, final float centerY, final float durationMs)
+	// Animate to the given scale, one step per display frame.
+	protected void zoomTo(float scale, float centerX, float centerY, float durationMs)
 	{
-		final float incrementPerMs = (scale - getScale()) / durationMs;
-		final float oldScale = getScale();
-		final long startTime = System.currentTimeMillis();
-
-		mHandler.post(new Runnable()
-		{
-			public void run()
-			{
-				long now = System.currentTimeMillis();
-				float currentMs = Math.min(durationMs, now - startTime);
-				float target = oldScale + (incrementPerMs * currentMs);
-				zoomTo(target, centerX, centerY);
-
-				if (currentMs < durationMs)
-				{
-					mHandler.post(this);
-				}
-			}
-		});
+		stopAnimation();
+		mZoomFrom = getScale();
+		mZoomTarget = scale;
+		mZoomCenterX = centerX;
+		mZoomCenterY = centerY;
+		mAnimDuration = Math.max(1F, durationMs);
+		mAnimStart = SystemClock.uptimeMillis();
+		mAnimation = ANIM_ZOOM;
+		scheduleFrame();
 	}
 
 	public void zoomToPoint(float scale, float pointX, float pointY)
@@ -55,9 +55,17 @@ public class RotateBitmap
 	}
 
 	public Matrix getRotateMatrix()
+	{
+		return getRotateMatrix(new Matrix());
+	}
+
+	/**
+	 * Set the given matrix to the one that draws the bitmap upright at the origin, and return it.
+	 */
+	public Matrix getRotateMatrix(Matrix matrix)
 	{
 		// By default this is an identity matrix.
-		Matrix matrix = new Matrix();
+		matrix.reset();
 		if (mRotation != 0)
 		{
 			// We want to do the rotation at origin, but since the bounding
@@ -0,0 +1,83 @@
+package com.piczzamms.gallery.ui;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws a RotateBitmap upright and scaled to the drawable's bounds, so an ImageView can show a
+ * rotated image without making a rotated copy of the bitmap.
+ */
+public class RotateBitmapDrawable extends Drawable
+{
+	final RotateBitmap	mBitmap;
+	final Matrix		mMatrix	= new Matrix();
+	final Paint			mPaint	= new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	public RotateBitmapDrawable(RotateBitmap bitmap)
+	{
+		mBitmap = bitmap;
+	}
+
+	@Override
+	public void draw(Canvas canvas)
+	{
+		if (mBitmap.getBitmap() != null)
+		{
+			canvas.drawBitmap(mBitmap.getBitmap(), mMatrix, mPaint);
+		}
+	}
+
+	@Override
+	public int getIntrinsicHeight()
+	{
+		return mBitmap.getBitmap() != null ? mBitmap.getHeight() : -1;
+	}
+
+	@Override
+	public int getIntrinsicWidth()
+	{
+		return mBitmap.getBitmap() != null ? mBitmap.getWidth() : -1;
+	}
+
+	@Override
+	public int getOpacity()
+	{
+		return PixelFormat.TRANSLUCENT;
+	}
+
+	public RotateBitmap getRotateBitmap()
+	{
+		return mBitmap;
+	}
+
+	@Override
+	protected void onBoundsChange(Rect bounds)
+	{
+		if (mBitmap.getBitmap() == null)
+		{
+			return;
+		}
+		mBitmap.getRotateMatrix(mMatrix);
+		mMatrix.postScale((float) bounds.width() / mBitmap.getWidth(), (float) bounds.height() / mBitmap.getHeight());
+		mMatrix.postTranslate(bounds.left, bounds.top);
+	}
+
+	@Override
+	public void setAlpha(int alpha)
+	{
+		mPaint.setAlpha(alpha);
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(ColorFilter cf)
+	{
+		mPaint.setColorFilter(cf);
+		invalidateSelf();
+	}
+}
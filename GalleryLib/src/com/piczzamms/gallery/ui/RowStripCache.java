@@ -0,0 +1,144 @@
+package com.piczzamms.gallery.ui;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.SparseArray;
+
+/**
+ * A small pool of bitmaps, each holding one fully drawn row of the grid.
+ *
+ * While scrolling, rows that stay on screen are drawn from their strip with a single drawBitmap at
+ * the new offset; only rows that become exposed are recorded. Strips of rows that scroll away go
+ * back to the pool for reuse.
+ */
+class RowStripCache
+{
+	static class Strip
+	{
+		Bitmap	mBitmap;
+		int		mRow	= -1;
+	}
+
+	final Canvas				mCanvas	= new Canvas();
+	final int					mCapacity;
+	final ArrayList<Strip>		mFree	= new ArrayList<Strip>();
+	final int					mHeight;
+	final SparseArray<Strip>	mRows	= new SparseArray<Strip>();
+	final int					mWidth;
+	int							mAllocated;
+
+	/**
+	 * @param width
+	 *        strip width in pixels.
+	 * @param height
+	 *        strip height in pixels.
+	 * @param capacity
+	 *        maximum number of strips. Should cover the visible rows plus one at each end.
+	 */
+	RowStripCache(int width, int height, int capacity)
+	{
+		mWidth = Math.max(1, width);
+		mHeight = Math.max(1, height);
+		mCapacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Prepare to record a row into the strip. The returned canvas is cleared and translated so that
+	 * drawing at (x, y) lands on the strip's origin.
+	 */
+	Canvas begin(Strip strip, int x, int y)
+	{
+		strip.mBitmap.eraseColor(0);
+		mCanvas.setBitmap(strip.mBitmap);
+		mCanvas.save();
+		mCanvas.translate(-x, -y);
+		return mCanvas;
+	}
+
+	/**
+	 * Drop all recorded rows, keeping the bitmaps for reuse.
+	 */
+	void clear()
+	{
+		for (int i = mRows.size() - 1; i >= 0; i--)
+		{
+			Strip strip = mRows.valueAt(i);
+			strip.mRow = -1;
+			mFree.add(strip);
+		}
+		mRows.clear();
+	}
+
+	void end()
+	{
+		mCanvas.restore();
+	}
+
+	Strip get(int row)
+	{
+		return mRows.get(row);
+	}
+
+	/**
+	 * Take a strip for the given row, from the pool if possible.
+	 */
+	Strip obtain(int row)
+	{
+		Strip strip;
+		int n = mFree.size();
+
+		if (n > 0)
+		{
+			strip = mFree.remove(n - 1);
+		}
+		else if (mAllocated < mCapacity || mRows.size() == 0)
+		{
+			strip = new Strip();
+			strip.mBitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+			mAllocated++;
+		}
+		else
+		{
+			// Everything is in use; steal the row furthest from this one.
+			int first = mRows.keyAt(0);
+			int last = mRows.keyAt(mRows.size() - 1);
+			int victim = Math.abs(row - first) > Math.abs(row - last) ? first : last;
+			strip = mRows.get(victim);
+			mRows.remove(victim);
+		}
+		strip.mRow = row;
+		mRows.put(row, strip);
+		return strip;
+	}
+
+	void recycle()
+	{
+		clear();
+		for (Strip strip : mFree)
+		{
+			strip.mBitmap.recycle();
+		}
+		mFree.clear();
+		mAllocated = 0;
+	}
+
+	/**
+	 * Return to the pool the strips of rows outside [first, last).
+	 */
+	void retain(int first, int last)
+	{
+		for (int i = mRows.size() - 1; i >= 0; i--)
+		{
+			int row = mRows.keyAt(i);
+			if (row < first || row >= last)
+			{
+				Strip strip = mRows.valueAt(i);
+				strip.mRow = -1;
+				mFree.add(strip);
+				mRows.delete(row);
+			}
+		}
+	}
+}
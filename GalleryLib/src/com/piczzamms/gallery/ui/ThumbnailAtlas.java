@@ -0,0 +1,200 @@
+package com.piczzamms.gallery.ui;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+import com.piczzamms.gallery.data.parts.ListDelta;
+import com.piczzamms.gallery.top.GalleryMetrics;
+
+/**
+ * Fixed-size slots packed into a few shared bitmaps, holding fully composed grid cells.
+ *
+ * Each slot is exactly one cell, already cropped, scaled, bordered and badged, so drawing a cell is
+ * a single unscaled drawBitmap. Slots are keyed by list position and reused least recently drawn
+ * first once the capacity is reached.
+ */
+class ThumbnailAtlas
+{
+	static class Slot
+	{
+		int		mPage;
+		int		mLeft;
+		int		mTop;
+		int		mDegrees;
+		int		mPosition;
+		long	mLastUsed;
+	}
+
+	static final int						PAGE_SIZE	= 1024;
+
+	final Canvas							mCanvas		= new Canvas();
+	final int								mCapacity;
+	final Rect								mDstRect	= new Rect();
+	// Slots whose cell was removed from the list, reused before evicting anything.
+	final ArrayList<Slot>					mFree		= new ArrayList<Slot>();
+	final ArrayList<Bitmap>					mPages		= new ArrayList<Bitmap>();
+	final int								mPageRows;
+	// Keyed by position without boxing; recency is tracked with a use counter.
+	final SparseArray<Slot>					mSlots		= new SparseArray<Slot>();
+	final int								mSlotSize;
+	final int								mSlotsPerRow;
+	final Rect								mSrcRect	= new Rect();
+	int										mAllocated;
+	long									mClock;
+
+	/**
+	 * @param slotSize
+	 *        width and height of one cell in pixels.
+	 * @param capacity
+	 *        number of cells to keep. Should cover at least one screen.
+	 */
+	ThumbnailAtlas(int slotSize, int capacity)
+	{
+		mSlotSize = Math.max(1, slotSize);
+		mCapacity = Math.max(1, capacity);
+		mSlotsPerRow = Math.max(1, PAGE_SIZE / mSlotSize);
+		int rows = (mCapacity + mSlotsPerRow - 1) / mSlotsPerRow;
+		mPageRows = Math.max(1, Math.min(rows, PAGE_SIZE / mSlotSize));
+	}
+
+	/**
+	 * Take a slot for the given position, evicting the least recently drawn one if the atlas is
+	 * full. The slot's contents are undefined until baked.
+	 */
+	Slot acquire(int position)
+	{
+		Slot slot = mSlots.get(position);
+
+		if (slot == null)
+		{
+			if (!mFree.isEmpty())
+			{
+				slot = mFree.remove(mFree.size() - 1);
+			}
+			else if (mAllocated < mCapacity)
+			{
+				int perPage = mSlotsPerRow * mPageRows;
+				int index = mAllocated++;
+				slot = new Slot();
+				slot.mPage = index / perPage;
+				int inPage = index - slot.mPage * perPage;
+				slot.mLeft = (inPage % mSlotsPerRow) * mSlotSize;
+				slot.mTop = (inPage / mSlotsPerRow) * mSlotSize;
+
+				if (slot.mPage == mPages.size())
+				{
+					mPages.add(Bitmap.createBitmap(mSlotsPerRow * mSlotSize, mPageRows * mSlotSize,
+							Bitmap.Config.ARGB_8888));
+				}
+			}
+			else
+			{
+				slot = mSlots.valueAt(0);
+				for (int i = 1, n = mSlots.size(); i < n; i++)
+				{
+					Slot candidate = mSlots.valueAt(i);
+					if (candidate.mLastUsed < slot.mLastUsed)
+					{
+						slot = candidate;
+					}
+				}
+				mSlots.delete(slot.mPosition);
+				GalleryMetrics.count(GalleryMetrics.CACHE_EVICT);
+			}
+			slot.mPosition = position;
+			mSlots.put(position, slot);
+		}
+		slot.mLastUsed = ++mClock;
+		return slot;
+	}
+
+	/**
+	 * Prepare to compose a cell into the slot. The returned canvas is cleared to the slot and
+	 * translated so that drawing at (x, y) lands on the slot's origin.
+	 */
+	Canvas beginBake(Slot slot, int x, int y)
+	{
+		mCanvas.setBitmap(mPages.get(slot.mPage));
+		mCanvas.save();
+		mCanvas.clipRect(slot.mLeft, slot.mTop, slot.mLeft + mSlotSize, slot.mTop + mSlotSize);
+		mCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+		mCanvas.translate(slot.mLeft - x, slot.mTop - y);
+		return mCanvas;
+	}
+
+	/**
+	 * Forget all cells, keeping the page bitmaps for reuse.
+	 */
+	void clear()
+	{
+		mSlots.clear();
+		mFree.clear();
+		mAllocated = 0;
+	}
+
+	void draw(Canvas canvas, Slot slot, int x, int y)
+	{
+		mSrcRect.set(slot.mLeft, slot.mTop, slot.mLeft + mSlotSize, slot.mTop + mSlotSize);
+		mDstRect.set(x, y, x + mSlotSize, y + mSlotSize);
+		canvas.drawBitmap(mPages.get(slot.mPage), mSrcRect, mDstRect, null);
+	}
+
+	void endBake()
+	{
+		mCanvas.restore();
+	}
+
+	Slot get(int position)
+	{
+		Slot slot = mSlots.get(position);
+		if (slot != null)
+		{
+			slot.mLastUsed = ++mClock;
+		}
+		return slot;
+	}
+
+	void recycle()
+	{
+		clear();
+		for (Bitmap page : mPages)
+		{
+			page.recycle();
+		}
+		mPages.clear();
+	}
+
+	/**
+	 * Move the cells to their new positions after the list changed. Cells of removed positions
+	 * are freed for reuse.
+	 */
+	void remap(ListDelta delta)
+	{
+		int n = mSlots.size();
+		Slot[] slots = new Slot[n];
+		for (int i = 0; i < n; i++)
+		{
+			slots[i] = mSlots.valueAt(i);
+		}
+		mSlots.clear();
+
+		for (Slot slot : slots)
+		{
+			int position = delta.map(slot.mPosition);
+			if (position >= 0)
+			{
+				slot.mPosition = position;
+				mSlots.put(position, slot);
+			}
+			else
+			{
+				mFree.add(slot);
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.piczzamms.gallery.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.format.Formatter;
+import android.util.Log;
+import android.view.View;
+import android.widget.ImageView;
+
+import com.piczzamms.gallery.R;
+import com.piczzamms.gallery.activities.ImageGallery;
+import com.piczzamms.gallery.data.ImageManager;
+import com.piczzamms.gallery.data.parts.IImage;
+import com.piczzamms.gallery.top.GalleryApplication;
+import com.piczzamms.gallery.top.GalleryMetrics;
+import com.piczzamms.gallery.ui.RotateBitmap;
+import com.piczzamms.gallery.ui.RotateBitmapDrawable;
+
+/**
+ * Fills in the slow fields of the details dialog in the background.
+ *
+ * The dialog is shown straight away with placeholders. Each field (thumbnail, file size,
+ * resolution, EXIF and, through EXIF, location) is then loaded by its own job on a shared pool and
+ * posted back to the UI thread as soon as it is ready. The time each load takes is recorded as
+ * GalleryMetrics.DETAILS_FIELD, and logged per field in debug builds.
+ */
+public class DetailsLoader
+{
+	static final String				TAG				= ImageGallery.TAG + "-DetailsLoader";
+
+	public static final int			FIELD_THUMBNAIL	= 0;
+	public static final int			FIELD_SIZE		= 1;
+	public static final int			FIELD_RESOLUTION	= 2;
+	public static final int			FIELD_EXIF		= 3;
+	public static final int			FIELD_COUNT		= 4;
+
+	static final String[]			FIELD_NAMES		= new String[] {
+			"thumbnail", "size", "resolution", "exif"	};
+
+	static ExecutorService			sExecutor;
+
+	static synchronized ExecutorService getExecutor()
+	{
+		if (sExecutor == null)
+		{
+			sExecutor = Executors.newCachedThreadPool();
+		}
+		return sExecutor;
+	}
+
+	final Activity					mActivity;
+	final Handler					mHandler;
+	final IImage					mImage;
+	final View						mView;
+	final long[]					mTimings		= new long[FIELD_COUNT];
+	int								mRemaining;
+
+	public DetailsLoader(Activity activity, Handler handler, IImage image, View d)
+	{
+		mActivity = activity;
+		mHandler = handler;
+		mImage = image;
+		mView = d;
+	}
+
+	/**
+	 * Called on the UI thread once a field has been filled in.
+	 */
+	void fieldDone(int field, long elapsed)
+	{
+		mTimings[field] = elapsed;
+
+		if (--mRemaining == 0 && GalleryApplication.LOG)
+		{
+			StringBuilder sb = new StringBuilder("details timing:");
+			for (int i = 0; i < FIELD_COUNT; i++)
+			{
+				sb.append(' ').append(FIELD_NAMES[i]).append('=').append(mTimings[i]).append("ms");
+			}
+			Log.d(TAG, sb.toString());
+		}
+	}
+
+	Object load(int field)
+	{
+		switch (field)
+		{
+			case FIELD_THUMBNAIL:
+				return mImage.getMiniThumbBitmap(IImage.NO_ROTATE);
+			case FIELD_SIZE:
+				return MenuHelper.getImageFileSize(mImage);
+			case FIELD_RESOLUTION:
+				// getWidth is much slower than reading from EXIF
+				return new int[] {
+						mImage.getWidth(), mImage.getHeight() };
+			case FIELD_EXIF:
+				return MenuHelper.getExif(mImage);
+		}
+		return null;
+	}
+
+	void show(int field, Object value)
+	{
+		switch (field)
+		{
+			case FIELD_THUMBNAIL:
+			{
+				ImageView imageView = (ImageView) mView.findViewById(R.id.details_thumbnail_image);
+				imageView.setImageDrawable(new RotateBitmapDrawable(new RotateBitmap((Bitmap) value, mImage
+						.getDegreesRotated())));
+				break;
+			}
+			case FIELD_SIZE:
+			{
+				long length = (Long) value;
+				String lengthString = length < 0 ? MenuHelper.EMPTY_STRING : Formatter.formatFileSize(mActivity,
+						length);
+				MenuHelper.setDetailsValue(mView, lengthString, R.id.details_file_size_value);
+				break;
+			}
+			case FIELD_RESOLUTION:
+			{
+				int[] dimension = (int[]) value;
+				if (dimension[0] > 0 && dimension[1] > 0)
+				{
+					String text = String.format(mActivity.getString(R.string.details_dimension_x), dimension[0],
+							dimension[1]);
+					MenuHelper.setDetailsValue(mView, text, R.id.details_resolution_value);
+				}
+				else
+				{
+					MenuHelper.hideDetailsRow(mView, R.id.details_resolution_row);
+				}
+				break;
+			}
+			case FIELD_EXIF:
+			{
+				ExifInterface exif = (ExifInterface) value;
+				if (exif == null)
+				{
+					MenuHelper.hideExifInformation(mView);
+				}
+				else
+				{
+					MenuHelper.showExifInformation(exif, mView, mActivity);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Start loading. Must be called on the UI thread.
+	 */
+	public void start()
+	{
+		boolean isImage = ImageManager.isImage(mImage);
+		boolean isJpeg = MenuHelper.JPEG_MIME_TYPE.equals(mImage.getMimeType());
+
+		mRemaining = FIELD_COUNT;
+		submit(FIELD_THUMBNAIL);
+		submit(FIELD_SIZE);
+
+		if (isImage)
+		{
+			submit(FIELD_RESOLUTION);
+		}
+		else
+		{
+			MenuHelper.hideDetailsRow(mView, R.id.details_resolution_row);
+			fieldDone(FIELD_RESOLUTION, 0);
+		}
+		if (isJpeg)
+		{
+			submit(FIELD_EXIF);
+		}
+		else
+		{
+			MenuHelper.hideExifInformation(mView);
+			fieldDone(FIELD_EXIF, 0);
+		}
+	}
+
+	void submit(final int field)
+	{
+		getExecutor().execute(new Runnable()
+		{
+			public void run()
+			{
+				final long start = SystemClock.uptimeMillis();
+				final long metricStart = GalleryMetrics.start();
+				Object result;
+				try
+				{
+					result = load(field);
+				}
+				catch (RuntimeException ex)
+				{
+					Log.e(TAG, "failed to load " + FIELD_NAMES[field], ex);
+					result = null;
+				}
+				GalleryMetrics.end(GalleryMetrics.DETAILS_FIELD, metricStart);
+				final Object value = result;
+				final long elapsed = SystemClock.uptimeMillis() - start;
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						if (value != null || field == FIELD_EXIF)
+						{
+							show(field, value);
+						}
+						fieldDone(field, elapsed);
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,246 @@
+package com.piczzamms.gallery.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Geocoder;
+import android.os.Build;
+
+import com.piczzamms.gallery.core.GeoCellCache;
+
+/**
+ * Persistent cache of reverse geocoding results.
+ *
+ * Coordinates are quantized into geohash cells, so photos taken a few meters apart share one
+ * lookup. Entries expire after a TTL and the cache is bounded in size, evicting the least recently
+ * used cell; GeoCellCache does that bookkeeping, and this class persists it. Concurrent lookups for
+ * a cell that is already being resolved are queued behind the in-flight request instead of
+ * starting another one.
+ *
+ * setResolver() swaps the geocoder for a stand-in, so the cache and the request sharing can be
+ * exercised from an instrumentation test without network access. A null SharedPreferences keeps
+ * the cache in memory only.
+ *
+ * All public methods must be called from the UI thread.
+ */
+public class GeocodeCache
+{
+	static final String			PREFS_NAME			= "geocode_cache";
+
+	/** Precision 7 gives cells of roughly 150m x 150m. */
+	public static final int		DEFAULT_PRECISION	= 7;
+	public static final long	DEFAULT_TTL			= 30L * 24 * 60 * 60 * 1000;
+	public static final int		DEFAULT_MAX_ENTRIES	= 256;
+
+	static GeocodeCache			sInstance;
+
+	public static synchronized GeocodeCache instance(Context context)
+	{
+		if (sInstance == null)
+		{
+			Context app = context.getApplicationContext();
+			sInstance = new GeocodeCache(app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+					new ReverseGeocoderTask.GeocoderResolver(new Geocoder(app)));
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Encode a coordinate as a geohash string of the given length.
+	 */
+	public static String geohash(double lat, double lng, int precision)
+	{
+		return GeoCellCache.geohash(lat, lng, precision);
+	}
+
+	final GeoCellCache												mCells;
+	final HashMap<String, ArrayList<ReverseGeocoderTask.Callback>>	mPending	=
+			new HashMap<String, ArrayList<ReverseGeocoderTask.Callback>>();
+	final SharedPreferences											mPrefs;
+	ReverseGeocoderTask.Resolver									mResolver;
+	int																mPrecision	= DEFAULT_PRECISION;
+
+	public GeocodeCache(SharedPreferences prefs, ReverseGeocoderTask.Resolver resolver)
+	{
+		mPrefs = prefs;
+		mResolver = resolver;
+		mCells = new GeoCellCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL)
+		{
+			@Override
+			protected void onRemove(String cell)
+			{
+				if (mPrefs != null)
+				{
+					apply(mPrefs.edit().remove(cell));
+				}
+			}
+		};
+		load();
+	}
+
+	@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+	static void apply(SharedPreferences.Editor editor)
+	{
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+		{
+			editor.apply();
+		}
+		else
+		{
+			editor.commit();
+		}
+	}
+
+	public void clear()
+	{
+		mCells.clear();
+		if (mPrefs != null)
+		{
+			apply(mPrefs.edit().clear());
+		}
+	}
+
+	/**
+	 * @return the cached location for the cell containing this coordinate, or null.
+	 */
+	public String get(float[] latlng)
+	{
+		return get(geohash(latlng[0], latlng[1], mPrecision));
+	}
+
+	String get(String cell)
+	{
+		return mCells.get(cell, System.currentTimeMillis());
+	}
+
+	void load()
+	{
+		if (mPrefs == null)
+		{
+			return;
+		}
+		long now = System.currentTimeMillis();
+		ArrayList<String> expired = new ArrayList<String>();
+
+		for (Map.Entry<String, ?> pref : mPrefs.getAll().entrySet())
+		{
+			Object value = pref.getValue();
+			int sep = value instanceof String ? ((String) value).indexOf('|') : -1;
+			if (sep <= 0)
+			{
+				expired.add(pref.getKey());
+				continue;
+			}
+			String s = (String) value;
+			long time;
+			try
+			{
+				time = Long.parseLong(s.substring(0, sep));
+			}
+			catch (NumberFormatException ex)
+			{
+				expired.add(pref.getKey());
+				continue;
+			}
+			if (mCells.isExpired(time, now))
+			{
+				expired.add(pref.getKey());
+			}
+			else
+			{
+				mCells.put(pref.getKey(), s.substring(sep + 1), time);
+			}
+		}
+		if (!expired.isEmpty())
+		{
+			SharedPreferences.Editor editor = mPrefs.edit();
+			for (String key : expired)
+			{
+				editor.remove(key);
+			}
+			apply(editor);
+		}
+	}
+
+	/**
+	 * Resolve a coordinate. The callback is invoked immediately if the cell is cached, otherwise
+	 * once the (possibly shared) geocoder request for the cell completes.
+	 */
+	public void lookup(float[] latlng, ReverseGeocoderTask.Callback callback)
+	{
+		final String cell = geohash(latlng[0], latlng[1], mPrecision);
+		String location = get(cell);
+		if (location != null)
+		{
+			callback.onComplete(location);
+			return;
+		}
+		ArrayList<ReverseGeocoderTask.Callback> pending = mPending.get(cell);
+		if (pending != null)
+		{
+			pending.add(callback);
+			return;
+		}
+		pending = new ArrayList<ReverseGeocoderTask.Callback>();
+		pending.add(callback);
+		mPending.put(cell, pending);
+
+		new ReverseGeocoderTask(mResolver, latlng, new ReverseGeocoderTask.Callback()
+		{
+			public void onComplete(String location)
+			{
+				ArrayList<ReverseGeocoderTask.Callback> waiting = mPending.remove(cell);
+				// Failures come back empty; don't cache them so the next request retries.
+				if (location != null && location.length() > 0)
+				{
+					put(cell, location);
+				}
+				if (waiting != null)
+				{
+					for (ReverseGeocoderTask.Callback cb : waiting)
+					{
+						cb.onComplete(location);
+					}
+				}
+			}
+		}).execute();
+	}
+
+	void put(String cell, String location)
+	{
+		long now = System.currentTimeMillis();
+		if (mPrefs != null)
+		{
+			apply(mPrefs.edit().putString(cell, now + "|" + location));
+		}
+		mCells.put(cell, location, now);
+	}
+
+	public void setMaxEntries(int maxEntries)
+	{
+		mCells.setMaxEntries(maxEntries);
+	}
+
+	/**
+	 * Set the geohash length used to bucket coordinates. Changing it does not invalidate existing
+	 * entries; they simply stop matching and age out.
+	 */
+	public void setPrecision(int precision)
+	{
+		mPrecision = precision;
+	}
+
+	public void setResolver(ReverseGeocoderTask.Resolver resolver)
+	{
+		mResolver = resolver;
+	}
+
+	public void setTtl(long ttl)
+	{
+		mCells.setTtl(ttl);
+	}
+}
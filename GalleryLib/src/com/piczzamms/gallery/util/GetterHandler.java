@@ -1,11 +1,19 @@
 package com.piczzamms.gallery.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import android.os.Handler;
 import android.os.Message;
 
+import com.piczzamms.gallery.top.GalleryMetrics;
+
 public class GetterHandler extends Handler
 {
 	private static final int	IMAGE_GETTER_CALLBACK	= 1;
+	private static final int	IMAGE_LOADED_CALLBACK	= 2;
+
+	// Number of loaded images posted but not yet delivered, counted only while metrics are on.
+	final AtomicInteger			mPendingImages			= new AtomicInteger();
 
 	@Override
 	public void handleMessage(Message message)
@@ -15,6 +23,13 @@ public class GetterHandler extends Handler
 			case IMAGE_GETTER_CALLBACK:
 				((Runnable) message.obj).run();
 				break;
+			case IMAGE_LOADED_CALLBACK:
+				if (message.arg1 != 0)
+				{
+					mPendingImages.decrementAndGet();
+				}
+				((Runnable) message.obj).run();
+				break;
 		}
 	}
 
@@ -35,8 +50,35 @@ public class GetterHandler extends Handler
 		sendMessageDelayed(message, delay);
 	}
 
+	/**
+	 * Post the delivery of a loaded image. While metrics are enabled, the number waiting is sampled
+	 * into GalleryMetrics.GETTER_QUEUE_DEPTH on each post; otherwise nothing is counted.
+	 */
+	public void postImageCallback(Runnable callback)
+	{
+		if (callback == null)
+		{
+			throw new NullPointerException();
+		}
+		Message message = Message.obtain();
+		message.what = IMAGE_LOADED_CALLBACK;
+		message.obj = callback;
+
+		if (GalleryMetrics.isEnabled())
+		{
+			// Marked, so only deliveries that were counted are subtracted.
+			message.arg1 = 1;
+			GalleryMetrics.record(GalleryMetrics.GETTER_QUEUE_DEPTH, mPendingImages.incrementAndGet());
+		}
+		sendMessage(message);
+	}
+
 	public void removeAllGetterCallbacks()
 	{
 		removeMessages(IMAGE_GETTER_CALLBACK);
+		removeMessages(IMAGE_LOADED_CALLBACK);
+		// Every image still counted was waiting in the queue, so all of them were dropped. An
+		// image posted from another thread meanwhile can leave it off by one; it only feeds a gauge.
+		mPendingImages.set(0);
 	}
 }
@@ -200,7 +200,7 @@ public class ImageGetter
 
 					Runnable cb = callback(mCurrentPosition, offset, true,
 							new RotateBitmap(b, image.getDegreesRotated()), mCurrentSerial);
-					mHandler.postGetterCallback(cb);
+					mHandler.postImageCallback(cb);
 				}
 			}
 
@@ -243,7 +243,7 @@ public class ImageGetter
 					RotateBitmap rb = new RotateBitmap(b, image.getDegreesRotated());
 
 					Runnable cb = callback(mCurrentPosition, offset, false, rb, mCurrentSerial);
-					mHandler.postGetterCallback(cb);
+					mHandler.postImageCallback(cb);
 				}
 			}
 			mHandler.postGetterCallback(completedCallback(mCurrentSerial));
@@ -31,7 +31,6 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
-import android.location.Geocoder;
 import android.media.ExifInterface;
 import android.net.Uri;
 import android.os.Build;
@@ -39,12 +38,10 @@ import android.os.Environment;
 import android.os.Handler;
 import android.os.StatFs;
 import android.preference.PreferenceManager;
-import android.text.format.Formatter;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -589,6 +586,10 @@ public class MenuHelper
 		return true;
 	}
 
+	/**
+	 * Show the details dialog right away and let a DetailsLoader fill in the fields that need disk
+	 * access (thumbnail, file size, resolution, EXIF and location) as they become available.
+	 */
 	public static void showDetails(Activity activity, Handler handler, Uri u, IImage image)
 	{
 		if (image == null)
@@ -599,46 +600,30 @@ public class MenuHelper
 
 		final View d = View.inflate(activity, R.layout.details_view, null);
 
-		ImageView imageView = (ImageView) d.findViewById(R.id.details_thumbnail_image);
-		imageView.setImageBitmap(image.getMiniThumbBitmap());
-
 		TextView textView = (TextView) d.findViewById(R.id.details_image_title);
 		textView.setText(image.getTitle());
 
-		long length = getImageFileSize(image);
-		String lengthString = length < 0 ? EMPTY_STRING : Formatter.formatFileSize(activity, length);
-		((TextView) d.findViewById(R.id.details_file_size_value)).setText(lengthString);
+		String loading = activity.getString(R.string.details_loading);
+		setDetailsValue(d, loading, R.id.details_file_size_value);
 
 		d.findViewById(R.id.details_frame_rate_row).setVisibility(View.GONE);
 		d.findViewById(R.id.details_bit_rate_row).setVisibility(View.GONE);
 		d.findViewById(R.id.details_format_row).setVisibility(View.GONE);
 		d.findViewById(R.id.details_codec_row).setVisibility(View.GONE);
 
-		int dimensionWidth = 0;
-		int dimensionHeight = 0;
 		if (ImageManager.isImage(image))
 		{
-			// getWidth is much slower than reading from EXIF
-			dimensionWidth = image.getWidth();
-			dimensionHeight = image.getHeight();
+			setDetailsValue(d, loading, R.id.details_resolution_value);
 			d.findViewById(R.id.details_duration_row).setVisibility(View.GONE);
 		}
-		String value = null;
-		if (dimensionWidth > 0 && dimensionHeight > 0)
-		{
-			value = String.format(activity.getString(R.string.details_dimension_x), dimensionWidth, dimensionHeight);
-		}
-
-		if (value != null)
-		{
-			setDetailsValue(d, value, R.id.details_resolution_value);
-		}
-		else
+		if (JPEG_MIME_TYPE.equals(image.getMimeType()))
 		{
-			hideDetailsRow(d, R.id.details_resolution_row);
+			setDetailsValue(d, loading, R.id.details_make_value);
+			setDetailsValue(d, loading, R.id.details_model_value);
+			setDetailsValue(d, loading, R.id.details_whitebalance_value);
 		}
 
-		value = EMPTY_STRING;
+		String value = EMPTY_STRING;
 		long dateTaken = image.getDateTaken();
 		if (dateTaken != 0)
 		{
@@ -667,16 +652,6 @@ public class MenuHelper
 			hideDetailsRow(d, R.id.details_date_taken_row);
 		}
 
-		// Show more EXIF header details for JPEG images.
-		if (JPEG_MIME_TYPE.equals(image.getMimeType()))
-		{
-			showExifInformation(image, d, activity);
-		}
-		else
-		{
-			hideExifInformation(d);
-		}
-
 		builder.setNeutralButton(R.string.details_ok, new DialogInterface.OnClickListener()
 		{
 			public void onClick(DialogInterface dialog, int which)
@@ -685,12 +660,15 @@ public class MenuHelper
 			}
 		});
 
+		final DetailsLoader loader = new DetailsLoader(activity, handler, image, d);
+
 		handler.post(new Runnable()
 		{
 			public void run()
 			{
 				builder.setIcon(android.R.drawable.ic_dialog_info).setTitle(R.string.details_panel_title).setView(d)
 						.show();
+				loader.start();
 			}
 		});
 	}
@@ -788,8 +766,7 @@ public class MenuHelper
 			}
 
 			UpdateLocationCallback cb = new UpdateLocationCallback(new WeakReference<View>(d));
-			Geocoder geocoder = new Geocoder(context);
-			new ReverseGeocoderTask(geocoder, latlng, cb).execute();
+			GeocodeCache.instance(context).lookup(latlng, cb);
 		}
 		else
 		{
@@ -799,15 +776,9 @@ public class MenuHelper
 		}
 	}
 
-	private static void showExifInformation(IImage image, View d, Activity activity)
+	// Must be called on the UI thread; the ExifInterface should already be loaded.
+	static void showExifInformation(ExifInterface exif, View d, Activity activity)
 	{
-		ExifInterface exif = getExif(image);
-		if (exif == null)
-		{
-			hideExifInformation(d);
-			return;
-		}
-
 		String value = exif.getAttribute(ExifInterface.TAG_MAKE);
 		if (value != null)
 		{
@@ -0,0 +1,362 @@
+package com.piczzamms.gallery.util;
+
+import java.util.Locale;
+import java.util.Random;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.widget.Scroller;
+
+import com.piczzamms.gallery.activities.ViewImage;
+import com.piczzamms.gallery.core.ShuffleOrder;
+import com.piczzamms.gallery.top.GalleryMetrics;
+import com.piczzamms.gallery.top.GalleryMetrics.Snapshot;
+import com.piczzamms.gallery.ui.GridViewPictures;
+
+/**
+ * Scripted interaction for performance runs: flings through the grid, and swipes and slideshows
+ * in the viewer, one step per frame on the UI thread.
+ *
+ * On Jelly Bean and later each step is a Choreographer frame callback, so the time between steps
+ * is the time between display frames and a long one is a dropped frame. Before that there is no
+ * frame clock, and steps are Handler messages FRAME_MS apart, so the time between them only shows
+ * how late a message ran because the UI thread was busy. Report.mVsync says which was measured.
+ *
+ * A run turns GalleryMetrics on until it ends or is cancelled, then restores whether it was on,
+ * and reports the step times along with the decode, cache and grid frame metrics recorded
+ * meanwhile. Those are the difference between snapshots taken at the start and the end, so the
+ * histograms an IGalleryMetrics listener reads are left as they were. Use it with ImageManager.setSyntheticSpec()
+ * for the same data set on every device, from an instrumentation test or a debug menu. Must be
+ * used from the UI thread.
+ */
+public class PerfHarness
+{
+	public interface Listener
+	{
+		public void onRunFinished(Report report);
+	}
+
+	public static class Report
+	{
+		/** Steps further apart than this count as janky. */
+		public static final long			JANK_MS	= 2 * FRAME_MS;
+
+		public final long					mElapsedMs;
+		/** Steps taken: display frames if mVsync, else Handler messages. */
+		public final int					mFrames;
+		/** Steps that came more than JANK_MS after the one before. */
+		public final int					mJankFrames;
+		public final GalleryMetrics.Snapshot	mMetrics;
+		public final String					mName;
+		/** True if steps followed display frames; false if they were Handler messages. */
+		public final boolean				mVsync;
+		/** The longest time between two steps. */
+		public final long					mWorstFrameMs;
+
+		Report(String name, boolean vsync, int frames, int jankFrames, long worstFrameMs, long elapsedMs,
+				GalleryMetrics.Snapshot metrics)
+		{
+			mName = name;
+			mVsync = vsync;
+			mFrames = frames;
+			mJankFrames = jankFrames;
+			mWorstFrameMs = worstFrameMs;
+			mElapsedMs = elapsedMs;
+			mMetrics = metrics;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.US, "%s: %d %s in %d ms, %d janky, worst %d ms", mName, mFrames,
+					mVsync ? "frames" : "steps", mElapsedMs, mJankFrames, mWorstFrameMs));
+
+			for (int metric = 0; metric < GalleryMetrics.METRIC_COUNT; metric++)
+			{
+				long count = mMetrics.getCount(metric);
+				if (count == 0)
+				{
+					continue;
+				}
+				sb.append(String.format(Locale.US, "\n  %-20s count %d, mean %d, p50 %d, p95 %d",
+						GalleryMetrics.METRIC_NAMES[metric], count, mMetrics.getMean(metric),
+						mMetrics.getPercentile(metric, 50), mMetrics.getPercentile(metric, 95)));
+			}
+			return sb.toString();
+		}
+	}
+
+	public interface Script
+	{
+		/**
+		 * Perform the given frame's step.
+		 *
+		 * @return false once the script has finished.
+		 */
+		public boolean step(int frame);
+	}
+
+	// Steps the run once per display frame. Only used on Jelly Bean and later.
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	class VsyncCallback implements Choreographer.FrameCallback
+	{
+		public void doFrame(long frameTimeNanos)
+		{
+			// Frame time is on the same monotonic clock as SystemClock.uptimeMillis().
+			step(frameTimeNanos / 1000000);
+		}
+	}
+
+	static final long	FRAME_MS	= 16;
+
+	/**
+	 * Fling back and forth through the grid, starting each fling when the last one has settled
+	 * and turning round at either end.
+	 *
+	 * @param velocity
+	 *        pixels per second.
+	 */
+	public static Script fling(final GridViewPictures grid, final int flings, final int velocity)
+	{
+		return new Script()
+		{
+			int				mDirection	= 1;
+			int				mDone;
+			final Scroller	mScroller	= new Scroller(grid.getContext());
+
+			int position()
+			{
+				return grid.isHorizontal() ? grid.getScrollX() : grid.getScrollY();
+			}
+
+			public boolean step(int frame)
+			{
+				if (mScroller.computeScrollOffset())
+				{
+					int before = position();
+					scroll(grid.isHorizontal() ? mScroller.getCurrX() : mScroller.getCurrY());
+					if (position() == before)
+					{
+						// Hit the end of the grid.
+						mScroller.forceFinished(true);
+						mDirection = -mDirection;
+					}
+					return true;
+				}
+				if (mDone == flings)
+				{
+					return false;
+				}
+				mDone++;
+				int pos = position();
+				if (grid.isHorizontal())
+				{
+					mScroller.fling(pos, 0, mDirection * velocity, 0, 0, Integer.MAX_VALUE, 0, 0);
+				}
+				else
+				{
+					mScroller.fling(0, pos, 0, mDirection * velocity, 0, 0, 0, Integer.MAX_VALUE);
+				}
+				return true;
+			}
+
+			void scroll(int pos)
+			{
+				if (grid.isHorizontal())
+				{
+					grid.scrollTo(pos, 0);
+				}
+				else
+				{
+					grid.scrollTo(0, pos);
+				}
+				grid.invalidate();
+			}
+		};
+	}
+
+	/**
+	 * Show images in a shuffled order, one every framesPerSlide frames.
+	 */
+	public static Script slideshow(final ViewImage viewer, final int slides, final int framesPerSlide, long seed)
+	{
+		final int[] order = ShuffleOrder.shuffle(null, viewer.getCount(), new Random(seed));
+
+		return new Script()
+		{
+			public boolean step(int frame)
+			{
+				if (frame % framesPerSlide != 0)
+				{
+					return true;
+				}
+				int slide = frame / framesPerSlide;
+				if (slide >= slides || order.length == 0)
+				{
+					return false;
+				}
+				viewer.setImage(order[slide % order.length], false);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Swipe to the next image every framesPerSwipe frames, wrapping at the end.
+	 */
+	public static Script swipe(final ViewImage viewer, final int swipes, final int framesPerSwipe)
+	{
+		return new Script()
+		{
+			public boolean step(int frame)
+			{
+				if (frame % framesPerSwipe != 0)
+				{
+					return true;
+				}
+				if (frame / framesPerSwipe >= swipes || viewer.getCount() == 0)
+				{
+					return false;
+				}
+				viewer.setImage((viewer.mCurrentPosition + 1) % viewer.getCount(), false);
+				return true;
+			}
+		};
+	}
+
+	// The metrics when the run started, subtracted from those at the end.
+	Snapshot			mBaseline;
+	int					mFrame;
+	final Handler		mHandler	= new Handler();
+	int					mJankFrames;
+	long				mLastStep;
+	Listener			mListener;
+	String				mName;
+	Script				mScript;
+	long				mStart;
+	final Runnable		mStepRunner	= new Runnable()
+									{
+										public void run()
+										{
+											step(SystemClock.uptimeMillis());
+										}
+									};
+	// Set while a run steps on display frames.
+	VsyncCallback		mVsync;
+	// Whether GalleryMetrics was on before the run.
+	boolean				mWasEnabled;
+	long				mWorstFrameMs;
+
+	/**
+	 * Stop the current run without reporting it.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	public void cancel()
+	{
+		mHandler.removeCallbacks(mStepRunner);
+		if (mVsync != null)
+		{
+			Choreographer.getInstance().removeFrameCallback(mVsync);
+			mVsync = null;
+		}
+		if (mScript != null)
+		{
+			GalleryMetrics.setEnabled(mWasEnabled);
+		}
+		mScript = null;
+		mListener = null;
+		mBaseline = null;
+	}
+
+	public boolean isRunning()
+	{
+		return mScript != null;
+	}
+
+	/**
+	 * Start a run, cancelling any current one. The listener is called on the UI thread when the
+	 * script finishes.
+	 */
+	public void run(String name, Script script, Listener listener)
+	{
+		cancel();
+		mName = name;
+		mScript = script;
+		mListener = listener;
+		mFrame = 0;
+		mJankFrames = 0;
+		mWorstFrameMs = 0;
+
+		mWasEnabled = GalleryMetrics.isEnabled();
+		GalleryMetrics.setEnabled(true);
+		mBaseline = GalleryMetrics.snapshot(false);
+
+		mStart = SystemClock.uptimeMillis();
+		mLastStep = mStart;
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+		{
+			mVsync = new VsyncCallback();
+		}
+		scheduleStep(0);
+	}
+
+	// Run the next step on the next display frame, or after delay without a frame clock.
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	void scheduleStep(long delay)
+	{
+		if (mVsync != null)
+		{
+			Choreographer.getInstance().postFrameCallback(mVsync);
+		}
+		else
+		{
+			mHandler.postDelayed(mStepRunner, delay);
+		}
+	}
+
+	/**
+	 * @param now
+	 *        the frame time, or the current time without a frame clock, in uptime milliseconds.
+	 */
+	void step(long now)
+	{
+		if (mScript == null)
+		{
+			return;
+		}
+		long frameMs = now - mLastStep;
+		mLastStep = now;
+
+		if (mFrame > 0)
+		{
+			mWorstFrameMs = Math.max(mWorstFrameMs, frameMs);
+			if (frameMs > Report.JANK_MS)
+			{
+				mJankFrames++;
+			}
+		}
+		if (mScript.step(mFrame++))
+		{
+			scheduleStep(FRAME_MS);
+			return;
+		}
+		Report report = new Report(mName, mVsync != null, mFrame, mJankFrames, mWorstFrameMs,
+				SystemClock.uptimeMillis() - mStart, GalleryMetrics.snapshot(false).since(mBaseline));
+		GalleryMetrics.setEnabled(mWasEnabled);
+		Listener listener = mListener;
+		mScript = null;
+		mListener = null;
+		mVsync = null;
+		mBaseline = null;
+
+		if (listener != null)
+		{
+			listener.onRunFinished(report);
+		}
+	}
+}
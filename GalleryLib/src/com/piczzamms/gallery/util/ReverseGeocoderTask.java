@@ -36,14 +36,42 @@ public class ReverseGeocoderTask extends AsyncTask<Void, Void, String>
 		public void onComplete(String location);
 	}
 
-	private Geocoder	mGeocoder;
+	/**
+	 * Turns a coordinate into a location string. Called on the background thread.
+	 */
+	public static interface Resolver
+	{
+		public String resolve(float lat, float lng);
+	}
+
+	static class GeocoderResolver implements Resolver
+	{
+		private Geocoder	mGeocoder;
+
+		GeocoderResolver(Geocoder geocoder)
+		{
+			mGeocoder = geocoder;
+		}
+
+		public String resolve(float lat, float lng)
+		{
+			return getLocation(mGeocoder, lat, lng);
+		}
+	}
+
+	private Resolver	mResolver;
 	private float		mLat;
 	private float		mLng;
 	private Callback	mCallback;
 
 	public ReverseGeocoderTask(Geocoder geocoder, float[] latlng, Callback callback)
 	{
-		mGeocoder = geocoder;
+		this(new GeocoderResolver(geocoder), latlng, callback);
+	}
+
+	public ReverseGeocoderTask(Resolver resolver, float[] latlng, Callback callback)
+	{
+		mResolver = resolver;
 		mLat = latlng[0];
 		mLng = latlng[1];
 		mCallback = callback;
@@ -51,11 +79,16 @@ public class ReverseGeocoderTask extends AsyncTask<Void, Void, String>
 
 	@Override
 	protected String doInBackground(Void... params)
+	{
+		return mResolver.resolve(mLat, mLng);
+	}
+
+	static String getLocation(Geocoder geocoder, float lat, float lng)
 	{
 		String value = MenuHelper.EMPTY_STRING;
 		try
 		{
-			List<Address> address = mGeocoder.getFromLocation(mLat, mLng, 1);
+			List<Address> address = geocoder.getFromLocation(lat, lng, 1);
 			StringBuilder sb = new StringBuilder();
 			for (Address addr : address)
 			{
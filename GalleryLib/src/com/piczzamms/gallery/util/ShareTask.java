@@ -0,0 +1,127 @@
+package com.piczzamms.gallery.util;
+
+import java.util.ArrayList;
+
+import android.annotation.TargetApi;
+import android.content.ClipData;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
+
+import com.piczzamms.gallery.data.ImageManager;
+import com.piczzamms.gallery.data.parts.BaseImageList;
+import com.piczzamms.gallery.data.parts.IImage;
+
+/**
+ * Builds the share intent for a multiselection off the UI thread.
+ *
+ * The images are resolved from the selection on the UI thread, since positions can shift while
+ * the task runs, and the mime-type union and URI list are computed in one pass over them. On
+ * Jelly Bean and later the URIs are also handed over through a ClipData so the read grant covers
+ * every item without the framework having to migrate EXTRA_STREAM itself.
+ */
+public class ShareTask extends AsyncTask<Void, Void, Intent>
+{
+	public static interface Callback
+	{
+		/**
+		 * Called on the UI thread with the prepared intent and the number of items in it, or null
+		 * if there was nothing to share.
+		 */
+		public void onComplete(Intent intent, int count);
+	}
+
+	/**
+	 * Upper bound on the number of URIs we put into one intent. Beyond this the parcel risks
+	 * exceeding the binder transaction limit, so larger selections share their first items.
+	 */
+	public static final int	MAX_SHARE_ITEMS	= 1000;
+
+	static final int		FLAG_IMAGE		= 1;
+	static final int		FLAG_VIDEO		= 2;
+
+	final ArrayList<IImage>	mImages;
+	final Callback			mCallback;
+	final ContentResolver	mResolver;
+	int						mCount;
+
+	/**
+	 * @param images
+	 *        at most MAX_SHARE_ITEMS images; see GridViewPictures.Multiselect.getList(int).
+	 */
+	public ShareTask(ContentResolver cr, ArrayList<IImage> images, Callback callback)
+	{
+		mResolver = cr;
+		mImages = images;
+		mCallback = callback;
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	static void setClipData(ContentResolver cr, Intent intent, ArrayList<Uri> uris)
+	{
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || uris.isEmpty())
+		{
+			return;
+		}
+		ClipData clip = ClipData.newUri(cr, null, uris.get(0));
+		for (int i = 1, n = uris.size(); i < n; i++)
+		{
+			clip.addItem(new ClipData.Item(uris.get(i)));
+		}
+		intent.setClipData(clip);
+		intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+	}
+
+	@Override
+	protected Intent doInBackground(Void... params)
+	{
+		int count = Math.min(mImages.size(), MAX_SHARE_ITEMS);
+		ArrayList<Uri> uris = new ArrayList<Uri>(count);
+		String singleMimeType = null;
+		int flag = 0;
+
+		// One query per list for the mime types, rather than one per image.
+		BaseImageList.loadDetails(mImages.subList(0, count));
+
+		for (int i = 0; i < count; i++)
+		{
+			if (isCancelled())
+			{
+				return null;
+			}
+			IImage image = mImages.get(i);
+			flag |= ImageManager.isImage(image) ? FLAG_IMAGE : FLAG_VIDEO;
+			singleMimeType = image.getMimeType();
+			uris.add(image.getImageUri());
+		}
+		mCount = uris.size();
+
+		Intent intent = new Intent();
+		if (mCount == 0)
+		{
+			return null;
+		}
+		else if (mCount == 1)
+		{
+			intent.setAction(Intent.ACTION_SEND);
+			intent.setType(singleMimeType != null ? singleMimeType : flag == FLAG_IMAGE ? "image/*" : "video/*");
+			intent.putExtra(Intent.EXTRA_STREAM, uris.get(0));
+		}
+		else
+		{
+			intent.setAction(Intent.ACTION_SEND_MULTIPLE);
+			intent.setType(flag == FLAG_IMAGE ? "image/*" : flag == FLAG_VIDEO ? "video/*" : "*/*");
+			intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+		}
+		setClipData(mResolver, intent, uris);
+		return intent;
+	}
+
+	@Override
+	protected void onPostExecute(Intent intent)
+	{
+		mCallback.onComplete(intent, mCount);
+	}
+}
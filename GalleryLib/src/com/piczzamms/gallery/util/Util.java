@@ -46,6 +46,7 @@ import android.view.View.OnClickListener;
 
 import com.piczzamms.gallery.activities.ImageGallery;
 import com.piczzamms.gallery.activities.MonitoredActivity;
+import com.piczzamms.gallery.core.SampleSize;
 import com.piczzamms.gallery.data.BitmapManager;
 import com.piczzamms.gallery.data.parts.IImage;
 import com.piczzamms.gallery.top.GalleryApplication;
@@ -168,74 +169,13 @@ public class Util
 		}
 	}
 
-	private static int computeInitialSampleSize(BitmapFactory.Options options, int minSideLength, int maxNumOfPixels)
-	{
-		double w = options.outWidth;
-		double h = options.outHeight;
-
-		int lowerBound = (maxNumOfPixels == IImage.UNCONSTRAINED) ? 1 : (int) Math.ceil(Math.sqrt(w * h
-				/ maxNumOfPixels));
-		int upperBound = (minSideLength == IImage.UNCONSTRAINED) ? 128 : (int) Math.min(Math.floor(w / minSideLength),
-				Math.floor(h / minSideLength));
-
-		if (upperBound < lowerBound)
-		{
-			// return the larger one when there is no overlapping zone.
-			return lowerBound;
-		}
-
-		if ((maxNumOfPixels == IImage.UNCONSTRAINED) && (minSideLength == IImage.UNCONSTRAINED))
-		{
-			return 1;
-		}
-		else if (minSideLength == IImage.UNCONSTRAINED)
-		{
-			return lowerBound;
-		}
-		else
-		{
-			return upperBound;
-		}
-	}
-
 	/*
-	 * Compute the sample size as a function of minSideLength
-	 * and maxNumOfPixels.
-	 * minSideLength is used to specify that minimal width or height of a
-	 * bitmap.
-	 * maxNumOfPixels is used to specify the maximal size in pixels that is
-	 * tolerable in terms of memory usage.
-	 * 
-	 * The function returns a sample size based on the constraints.
-	 * Both size and minSideLength can be passed in as IImage.UNCONSTRAINED,
-	 * which indicates no care of the corresponding constraint.
-	 * The functions prefers returning a sample size that
-	 * generates a smaller bitmap, unless minSideLength = IImage.UNCONSTRAINED.
-	 * 
-	 * Also, the function rounds up the sample size to a power of 2 or multiple
-	 * of 8 because BitmapFactory only honors sample size this way.
-	 * For example, BitmapFactory downsamples an image by 2 even though the
-	 * request is 3. So we round up the sample size to avoid OOM.
+	 * Compute the sample size as a function of minSideLength and maxNumOfPixels. See
+	 * SampleSize.compute().
 	 */
 	public static int computeSampleSize(BitmapFactory.Options options, int minSideLength, int maxNumOfPixels)
 	{
-		int initialSize = computeInitialSampleSize(options, minSideLength, maxNumOfPixels);
-
-		int roundedSize;
-		if (initialSize <= 8)
-		{
-			roundedSize = 1;
-			while (roundedSize < initialSize)
-			{
-				roundedSize <<= 1;
-			}
-		}
-		else
-		{
-			roundedSize = (initialSize + 7) / 8 * 8;
-		}
-
-		return roundedSize;
+		return SampleSize.compute(options.outWidth, options.outHeight, minSideLength, maxNumOfPixels);
 	}
 
 	public static int CopyStream(InputStream input, OutputStream output) throws IOException
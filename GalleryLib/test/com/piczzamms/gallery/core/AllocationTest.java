@@ -0,0 +1,143 @@
+package com.piczzamms.gallery.core;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the cache lookups the grid makes on every frame don't allocate, by reading the
+ * thread's allocation counter around many hits. Keys are kept above the range Integer.valueOf()
+ * caches, so any boxing would show.
+ *
+ * The counter is a HotSpot extension; on a JVM without it these tests pass without checking.
+ */
+public class AllocationTest
+{
+	static final int		KEYS	= 300;
+	static final int		LOOKUPS	= 100000;
+	static final int		BASE	= 1000;
+
+	// Written by the control so the JIT can't drop the boxing it measures.
+	static volatile Object	sSink;
+
+	static com.sun.management.ThreadMXBean bean()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+		{
+			return null;
+		}
+		com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+		return sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled() ? sun : null;
+	}
+
+	/**
+	 * @return the fewest bytes the current thread allocated over a few runs of r. Taking the
+	 *         fewest leaves out one-off allocations by the JIT as it recompiles the loop.
+	 */
+	static long measure(com.sun.management.ThreadMXBean bean, Runnable r)
+	{
+		long id = Thread.currentThread().getId();
+		long fewest = Long.MAX_VALUE;
+		for (int run = 0; run < 5; run++)
+		{
+			long before = bean.getThreadAllocatedBytes(id);
+			r.run();
+			fewest = Math.min(fewest, bean.getThreadAllocatedBytes(id) - before);
+		}
+		return fewest;
+	}
+
+	static CoreTests.Test[] tests()
+	{
+		return new CoreTests.Test[] {
+				new CoreTests.Test("Boxing keys is caught by the allocation counter")
+				{
+					@Override
+					protected void run()
+					{
+						com.sun.management.ThreadMXBean bean = bean();
+						if (bean == null)
+						{
+							return;
+						}
+						long allocated = measure(bean, new Runnable()
+						{
+							public void run()
+							{
+								for (int i = 0; i < LOOKUPS; i++)
+								{
+									sSink = Integer.valueOf(BASE + i % KEYS);
+								}
+							}
+						});
+						CoreTests.check(allocated >= LOOKUPS, "control allocated only " + allocated);
+					}
+				}, new CoreTests.Test("IntLruCache hits don't allocate")
+				{
+					@Override
+					protected void run()
+					{
+						com.sun.management.ThreadMXBean bean = bean();
+						if (bean == null)
+						{
+							return;
+						}
+						final IntLruCache<String> cache = new IntLruCache<String>(KEYS);
+						for (int i = 0; i < KEYS; i++)
+						{
+							cache.put(BASE + i, "v" + i);
+						}
+						final String value = "replaced";
+						long allocated = measure(bean, new Runnable()
+						{
+							public void run()
+							{
+								for (int i = 0; i < LOOKUPS; i++)
+								{
+									int key = BASE + i % KEYS;
+									if (cache.get(key) == null)
+									{
+										throw new AssertionError("miss " + key);
+									}
+									// Replacing an existing key, as the grid does, doesn't allocate either.
+									if (i % 7 == 0)
+									{
+										cache.put(key, value);
+									}
+								}
+							}
+						});
+						CoreTests.checkEquals(0, allocated, "bytes allocated");
+					}
+				}, new CoreTests.Test("LruCache hits don't allocate")
+				{
+					@Override
+					protected void run()
+					{
+						com.sun.management.ThreadMXBean bean = bean();
+						if (bean == null)
+						{
+							return;
+						}
+						final LruCache<String> cache = new LruCache<String>(KEYS);
+						for (int i = 0; i < KEYS; i++)
+						{
+							cache.put(BASE + i, "v" + i);
+						}
+						long allocated = measure(bean, new Runnable()
+						{
+							public void run()
+							{
+								for (int i = 0; i < LOOKUPS; i++)
+								{
+									if (cache.get(BASE + i % KEYS) == null)
+									{
+										throw new AssertionError("miss " + (BASE + i % KEYS));
+									}
+								}
+							}
+						});
+						CoreTests.checkEquals(0, allocated, "bytes allocated");
+					}
+				} };
+	}
+}
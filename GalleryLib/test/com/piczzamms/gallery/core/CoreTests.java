@@ -0,0 +1,77 @@
+package com.piczzamms.gallery.core;
+
+/**
+ * Runs the correctness tests of the core package.
+ *
+ * Like the benchmarks, these need nothing but a JDK, from GalleryLib:
+ *
+ * <pre>
+ * javac -d test/out src/com/piczzamms/gallery/core/*.java test/com/piczzamms/gallery/core/*.java
+ * java -cp test/out com.piczzamms.gallery.core.CoreTests
+ * </pre>
+ *
+ * Every test runs even if an earlier one fails, and the run exits with status 1 if any did.
+ */
+public class CoreTests
+{
+	public static abstract class Test
+	{
+		final String	mName;
+
+		protected Test(String name)
+		{
+			mName = name;
+		}
+
+		protected abstract void run() throws Exception;
+	}
+
+	static void check(boolean condition, String message)
+	{
+		if (!condition)
+		{
+			throw new AssertionError(message);
+		}
+	}
+
+	static void checkEquals(long expected, long actual, String message)
+	{
+		if (expected != actual)
+		{
+			throw new AssertionError(message + ": expected " + expected + ", got " + actual);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		Test[][] suites = new Test[][] {
+				MergeIndexTest.tests(), WorkQueueTest.tests(), PositionCacheTest.tests(), GeoCellCacheTest.tests(),
+				IntLruCacheTest.tests(), AllocationTest.tests() };
+		int failures = 0;
+		int count = 0;
+
+		for (Test[] suite : suites)
+		{
+			for (Test test : suite)
+			{
+				count++;
+				try
+				{
+					test.run();
+					System.out.println("ok    " + test.mName);
+				}
+				catch (Throwable ex)
+				{
+					failures++;
+					System.out.println("FAIL  " + test.mName + ": " + ex);
+				}
+			}
+		}
+		System.out.println((count - failures) + " of " + count + " passed");
+
+		if (failures > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+
+/**
+ * Checks geohash() against known cells, and GeoCellCache's expiry and least recently used eviction.
+ */
+public class GeoCellCacheTest
+{
+	static class RecordingCache extends GeoCellCache
+	{
+		final ArrayList<String>	mRemoved	= new ArrayList<String>();
+
+		RecordingCache(int maxEntries, long ttl)
+		{
+			super(maxEntries, ttl);
+		}
+
+		@Override
+		protected void onRemove(String cell)
+		{
+			mRemoved.add(cell);
+		}
+	}
+
+	static CoreTests.Test[] tests()
+	{
+		return new CoreTests.Test[] {
+				new CoreTests.Test("GeoCellCache.geohash matches known cells")
+				{
+					@Override
+					protected void run()
+					{
+						CoreTests.check("u4pruydqqvj".equals(GeoCellCache.geohash(57.64911, 10.40744, 11)), "jutland");
+						CoreTests.check("ezs42".equals(GeoCellCache.geohash(42.6, -5.6, 5)), "leon");
+						CoreTests.check("s0000".equals(GeoCellCache.geohash(0, 0, 5)), "origin");
+						CoreTests.check("7zzzz".equals(GeoCellCache.geohash(-0.00001, -0.00001, 5)), "below origin");
+
+						// A shorter hash is a prefix of a longer one for the same point.
+						String full = GeoCellCache.geohash(-33.8568, 151.2153, 9);
+						CoreTests.checkEquals(9, full.length(), "length");
+						CoreTests.check(full.startsWith(GeoCellCache.geohash(-33.8568, 151.2153, 6)), "prefix " + full);
+						CoreTests.checkEquals(0, GeoCellCache.geohash(1, 1, 0).length(), "no precision");
+					}
+				}, new CoreTests.Test("GeoCellCache.get expires entries after the TTL")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(10, 100);
+						cache.put("a", "Alpha", 1000);
+
+						CoreTests.check("Alpha".equals(cache.get("a", 1000)), "fresh");
+						CoreTests.check("Alpha".equals(cache.get("a", 1100)), "at the TTL");
+						CoreTests.check(cache.get("a", 1101) == null, "past the TTL");
+						CoreTests.checkEquals(0, cache.size(), "size after expiry");
+						CoreTests.check(cache.mRemoved.size() == 1 && "a".equals(cache.mRemoved.get(0)), "removed "
+								+ cache.mRemoved);
+
+						// A missing cell is not an expiry.
+						CoreTests.check(cache.get("b", 0) == null, "missing");
+						CoreTests.checkEquals(1, cache.mRemoved.size(), "removed after miss");
+					}
+				}, new CoreTests.Test("GeoCellCache evicts the least recently used entry")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(3, 100);
+						cache.put("a", "A", 0);
+						cache.put("b", "B", 0);
+						cache.put("c", "C", 0);
+
+						// Reading "a" makes "b" the least recently used.
+						cache.get("a", 0);
+						cache.put("d", "D", 0);
+						CoreTests.check(cache.mRemoved.size() == 1 && "b".equals(cache.mRemoved.get(0)), "evicted "
+								+ cache.mRemoved);
+						CoreTests.check(cache.get("b", 0) == null && "A".equals(cache.get("a", 0)), "after eviction");
+
+						// Putting a cell again replaces it without evicting anything.
+						cache.put("c", "C2", 0);
+						CoreTests.checkEquals(3, cache.size(), "size after replace");
+						CoreTests.check("C2".equals(cache.get("c", 0)), "replaced");
+
+						// Shrinking evicts from the least recently used end: "d", then "a".
+						cache.setMaxEntries(1);
+						CoreTests.checkEquals(1, cache.size(), "size after shrink");
+						CoreTests.check("d".equals(cache.mRemoved.get(1)) && "a".equals(cache.mRemoved.get(2)),
+								"evicted " + cache.mRemoved);
+
+						cache.clear();
+						CoreTests.checkEquals(0, cache.size(), "size after clear");
+						CoreTests.checkEquals(3, cache.mRemoved.size(), "clear calls no onRemove");
+					}
+				} };
+	}
+}
@@ -0,0 +1,156 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks IntLruCache against a LinkedHashMap in access order, and its eviction and resizing.
+ */
+public class IntLruCacheTest
+{
+	static class RecordingCache extends IntLruCache<String>
+	{
+		final ArrayList<Integer>	mEvicted	= new ArrayList<Integer>();
+
+		RecordingCache(int capacity)
+		{
+			super(capacity);
+		}
+
+		@Override
+		protected void onEvict(int key, String value)
+		{
+			CoreTests.check(value.equals("v" + key), "evicted value " + value + " for " + key);
+			mEvicted.add(key);
+		}
+	}
+
+	static CoreTests.Test[] tests()
+	{
+		return new CoreTests.Test[] {
+				new CoreTests.Test("IntLruCache evicts the least recently used key")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(3);
+						cache.put(1, "v1");
+						cache.put(2, "v2");
+						cache.put(3, "v3");
+
+						// Reading 1 makes 2 the least recently used.
+						CoreTests.check("v1".equals(cache.get(1)), "get 1");
+						cache.put(4, "v4");
+						CoreTests.check(cache.mEvicted.size() == 1 && cache.mEvicted.get(0) == 2, "evicted "
+								+ cache.mEvicted);
+						CoreTests.check(cache.get(2) == null, "get 2 after eviction");
+
+						// Replacing a value returns the old one and evicts nothing.
+						CoreTests.check("v3".equals(cache.put(3, "v3")), "replace");
+						CoreTests.checkEquals(3, cache.size(), "size");
+						CoreTests.checkEquals(1, cache.mEvicted.size(), "evicted after replace");
+
+						// Removing doesn't count as an eviction.
+						CoreTests.check("v4".equals(cache.remove(4)), "remove");
+						CoreTests.check(cache.remove(4) == null, "remove again");
+						CoreTests.checkEquals(1, cache.mEvicted.size(), "evicted after remove");
+
+						int[] keys = cache.keys();
+						CoreTests.check(keys.length == 2 && keys[0] == 1 && keys[1] == 3, "keys in order of use");
+						CoreTests.check("v1".equals(cache.values().get(0)), "values in order of use");
+					}
+				}, new CoreTests.Test("IntLruCache.setCapacity keeps the most recently used")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(4);
+						for (int i = 0; i < 4; i++)
+						{
+							cache.put(i, "v" + i);
+						}
+						cache.get(0);
+						cache.setCapacity(2);
+						CoreTests.check(cache.mEvicted.size() == 2 && cache.mEvicted.get(0) == 1
+								&& cache.mEvicted.get(1) == 2, "evicted " + cache.mEvicted);
+						CoreTests.checkEquals(2, cache.getCapacity(), "capacity");
+
+						// Growing keeps the order, so 3 is still the next to go.
+						cache.setCapacity(3);
+						cache.put(4, "v4");
+						cache.put(5, "v5");
+						CoreTests.check(cache.mEvicted.size() == 3 && cache.mEvicted.get(2) == 3, "evicted "
+								+ cache.mEvicted);
+						CoreTests.check(cache.get(0) != null && cache.get(4) != null && cache.get(5) != null,
+								"kept");
+
+						cache.clear();
+						CoreTests.checkEquals(0, cache.size(), "size after clear");
+						CoreTests.check(cache.get(0) == null, "get after clear");
+						CoreTests.checkEquals(3, cache.mEvicted.size(), "clear evicts nothing");
+					}
+				}, new CoreTests.Test("IntLruCache matches a LinkedHashMap in access order")
+				{
+					@Override
+					protected void run()
+					{
+						Random random = new Random(5);
+						for (int round = 0; round < 200; round++)
+						{
+							final int capacity = 1 + random.nextInt(40);
+							// Keys that share their low bits land in the same bucket.
+							int stride = random.nextBoolean() ? 1 : 1 << (4 + random.nextInt(12));
+							int range = 1 + random.nextInt(3 * capacity);
+							RecordingCache cache = new RecordingCache(capacity);
+							LinkedHashMap<Integer, String> expected = new LinkedHashMap<Integer, String>(16, 0.75f,
+									true);
+							ArrayList<Integer> evicted = new ArrayList<Integer>();
+
+							for (int op = 0; op < 500; op++)
+							{
+								int key = (random.nextInt(range) - range / 2) * stride;
+								String message = "round " + round + " op " + op + " key " + key;
+								switch (random.nextInt(4))
+								{
+									case 0:
+									case 1:
+										CoreTests.check(eq(expected.get(key), cache.get(key)), message + " get");
+										break;
+									case 2:
+										CoreTests.check(eq(expected.put(key, "v" + key), cache.put(key, "v" + key)),
+												message + " put");
+										if (expected.size() > capacity)
+										{
+											Iterator<Map.Entry<Integer, String>> it = expected.entrySet().iterator();
+											evicted.add(it.next().getKey());
+											it.remove();
+										}
+										break;
+									default:
+										CoreTests.check(eq(expected.remove(key), cache.remove(key)), message
+												+ " remove");
+										break;
+								}
+								CoreTests.checkEquals(expected.size(), cache.size(), message + " size");
+							}
+							CoreTests.check(evicted.equals(cache.mEvicted), "round " + round + " evicted");
+
+							int[] keys = cache.keys();
+							int i = 0;
+							for (int key : expected.keySet())
+							{
+								CoreTests.checkEquals(key, keys[i++], "round " + round + " key order");
+							}
+						}
+					}
+				} };
+	}
+
+	static boolean eq(String a, String b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,263 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks MergeIndex against a naive merge that compares every head for every position, over
+ * random sources with both narrow key ranges, where ties and long runs are common, and wide ones.
+ */
+public class MergeIndexTest
+{
+	static class ListSource implements MergeIndex.Source
+	{
+		final List<Long>	mKeys;
+
+		ListSource(List<Long> keys)
+		{
+			mKeys = keys;
+		}
+
+		public int getCount()
+		{
+			return mKeys.size();
+		}
+
+		public long getKey(int position)
+		{
+			return mKeys.get(position);
+		}
+	}
+
+	static final int	ROUNDS	= 2000;
+
+	// Check that every merged position so far agrees with the naive merge, both ways.
+	static void checkMerged(MergeIndex index, long[] expected, String round)
+	{
+		MergeIndex.Snapshot snapshot = index.snapshot();
+		CoreTests.checkEquals(index.getMergedCount(), snapshot.getMergedCount(), round + " snapshot count");
+
+		for (int i = 0; i < index.getMergedCount(); i++)
+		{
+			long location = index.locate(i);
+			CoreTests.checkEquals(expected[i], location, round + " locate " + i);
+			CoreTests.checkEquals(location, snapshot.locate(i), round + " snapshot locate " + i);
+			int list = MergeIndex.listOf(location);
+			int offset = MergeIndex.offsetOf(location);
+			CoreTests.checkEquals(i, index.indexOf(list, offset, false), round + " indexOf " + i);
+			CoreTests.checkEquals(i, snapshot.indexOf(list, offset), round + " snapshot indexOf " + i);
+		}
+		CoreTests.checkEquals(-1, snapshot.locate(index.getMergedCount()), round + " snapshot past merge");
+	}
+
+	/**
+	 * @return the location, as MergeIndex.locate() gives it, of every merged position. Equal keys
+	 *         come from the lower source first.
+	 */
+	static long[] naiveMerge(List<List<Long>> sources, boolean ascending)
+	{
+		int total = 0;
+		for (List<Long> source : sources)
+		{
+			total += source.size();
+		}
+		long[] merged = new long[total];
+		int[] heads = new int[sources.size()];
+
+		for (int i = 0; i < total; i++)
+		{
+			int best = -1;
+			for (int list = 0; list < sources.size(); list++)
+			{
+				if (heads[list] >= sources.get(list).size())
+				{
+					continue;
+				}
+				long key = sources.get(list).get(heads[list]);
+				if (best < 0)
+				{
+					best = list;
+					continue;
+				}
+				long bestKey = sources.get(best).get(heads[best]);
+				if (ascending ? key < bestKey : key > bestKey)
+				{
+					best = list;
+				}
+			}
+			merged[i] = (((long) best) << 32) | heads[best];
+			heads[best]++;
+		}
+		return merged;
+	}
+
+	static List<List<Long>> randomSources(Random random, boolean ascending)
+	{
+		List<List<Long>> sources = new ArrayList<List<Long>>();
+		int count = 1 + random.nextInt(4);
+
+		for (int list = 0; list < count; list++)
+		{
+			int size = random.nextInt(random.nextBoolean() ? 300 : 20);
+			int range = random.nextBoolean() ? 10 : 100000;
+			List<Long> keys = new ArrayList<Long>();
+			for (int i = 0; i < size; i++)
+			{
+				keys.add((long) random.nextInt(range));
+			}
+			Collections.sort(keys);
+			if (!ascending)
+			{
+				Collections.reverse(keys);
+			}
+			sources.add(keys);
+		}
+		return sources;
+	}
+
+	static MergeIndex.Source[] toSources(List<List<Long>> sources)
+	{
+		MergeIndex.Source[] result = new MergeIndex.Source[sources.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = new ListSource(sources.get(i));
+		}
+		return result;
+	}
+
+	static CoreTests.Test[] tests()
+	{
+		return new CoreTests.Test[] {
+				new CoreTests.Test("MergeIndex.locate matches a naive merge")
+				{
+					@Override
+					protected void run()
+					{
+						Random random = new Random(1);
+						for (int round = 0; round < ROUNDS; round++)
+						{
+							boolean ascending = random.nextBoolean();
+							List<List<Long>> sources = randomSources(random, ascending);
+							long[] expected = naiveMerge(sources, ascending);
+							MergeIndex index = new MergeIndex(toSources(sources), ascending);
+
+							// Random order, so the merge is extended from many different points.
+							for (int i = 0; i < 20 && expected.length > 0; i++)
+							{
+								int position = random.nextInt(expected.length);
+								CoreTests.checkEquals(expected[position], index.locate(position), "round " + round
+										+ " locate " + position);
+							}
+							CoreTests.checkEquals(-1, index.locate(expected.length), "round " + round + " past end");
+							CoreTests.check(index.mergeTo(expected.length), "round " + round + " mergeTo");
+							checkMerged(index, expected, "round " + round);
+						}
+					}
+				}, new CoreTests.Test("MergeIndex.indexOf extends the merge")
+				{
+					@Override
+					protected void run()
+					{
+						Random random = new Random(2);
+						for (int round = 0; round < ROUNDS; round++)
+						{
+							boolean ascending = random.nextBoolean();
+							List<List<Long>> sources = randomSources(random, ascending);
+							long[] expected = naiveMerge(sources, ascending);
+							MergeIndex index = new MergeIndex(toSources(sources), ascending);
+							if (expected.length == 0)
+							{
+								continue;
+							}
+							int position = random.nextInt(expected.length);
+							int list = MergeIndex.listOf(expected[position]);
+							int offset = MergeIndex.offsetOf(expected[position]);
+
+							if (index.getMergedCount() <= position)
+							{
+								CoreTests.checkEquals(-1, index.indexOf(list, offset, false), "round " + round
+										+ " unmerged");
+							}
+							CoreTests.checkEquals(position, index.indexOf(list, offset, true), "round " + round);
+							CoreTests.checkEquals(-1, index.indexOf(list, sources.get(list).size(), true), "round "
+									+ round + " past end");
+						}
+					}
+				}, new CoreTests.Test("MergeIndex.removeAt keeps the merge in step")
+				{
+					@Override
+					protected void run()
+					{
+						Random random = new Random(3);
+						for (int round = 0; round < ROUNDS; round++)
+						{
+							boolean ascending = random.nextBoolean();
+							List<List<Long>> sources = randomSources(random, ascending);
+							MergeIndex index = new MergeIndex(toSources(sources), ascending);
+							long[] expected = naiveMerge(sources, ascending);
+
+							for (int i = 0; i < 10 && expected.length > 0; i++)
+							{
+								int position = random.nextInt(expected.length);
+								index.mergeTo(position + 1 + random.nextInt(20));
+								long location = index.locate(position);
+								sources.get(MergeIndex.listOf(location)).remove(MergeIndex.offsetOf(location));
+								index.removeAt(position);
+
+								expected = naiveMerge(sources, ascending);
+								checkMerged(index, expected, "round " + round + " removal " + i);
+							}
+						}
+					}
+				}, new CoreTests.Test("MergeIndex.Snapshot doesn't change with the index")
+				{
+					@Override
+					protected void run()
+					{
+						Random random = new Random(4);
+						for (int round = 0; round < ROUNDS; round++)
+						{
+							boolean ascending = random.nextBoolean();
+							List<List<Long>> sources = randomSources(random, ascending);
+							long[] expected = naiveMerge(sources, ascending);
+							MergeIndex index = new MergeIndex(toSources(sources), ascending);
+							index.mergeTo(expected.length / 2);
+							MergeIndex.Snapshot snapshot = index.snapshot();
+							int merged = snapshot.getMergedCount();
+
+							index.mergeTo(expected.length);
+							index.reset();
+
+							CoreTests.checkEquals(merged, snapshot.getMergedCount(), "round " + round + " count");
+							for (int i = 0; i < merged; i++)
+							{
+								CoreTests.checkEquals(expected[i], snapshot.locate(i), "round " + round + " locate " + i);
+							}
+						}
+					}
+				}, new CoreTests.Test("MergeIndex gallops through a dominant source")
+				{
+					@Override
+					protected void run()
+					{
+						// One item from the second source in the middle of 100000 from the first.
+						List<List<Long>> sources = new ArrayList<List<Long>>();
+						List<Long> photos = new ArrayList<Long>();
+						for (int i = 0; i < 100000; i++)
+						{
+							photos.add((long) (2 * i));
+						}
+						sources.add(photos);
+						sources.add(Collections.singletonList(100001L));
+						long[] expected = naiveMerge(sources, true);
+						MergeIndex index = new MergeIndex(toSources(sources), true);
+
+						CoreTests.check(index.mergeTo(expected.length), "mergeTo");
+						CoreTests.check(index.getRunCount() <= 4, "runs " + index.getRunCount());
+						checkMerged(index, expected, "dominant");
+					}
+				} };
+	}
+}
@@ -0,0 +1,94 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+
+/**
+ * Checks PositionCache's lookups and that it evicts the value furthest from the one being added.
+ */
+public class PositionCacheTest
+{
+	static class RecordingCache extends PositionCache<String>
+	{
+		final ArrayList<String>	mEvicted	= new ArrayList<String>();
+
+		RecordingCache(int size)
+		{
+			super(size);
+		}
+
+		@Override
+		protected void onEvict(String value)
+		{
+			mEvicted.add(value);
+		}
+	}
+
+	static CoreTests.Test[] tests()
+	{
+		return new CoreTests.Test[] {
+				new CoreTests.Test("PositionCache.get finds what was put")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(3);
+						cache.put(4, "four");
+						cache.put(5, "five");
+
+						CoreTests.check("four".equals(cache.get(4)), "get 4");
+						CoreTests.check("five".equals(cache.get(5)), "get 5");
+						CoreTests.check(cache.get(6) == null, "get 6");
+						CoreTests.check(cache.contains(4) && !cache.contains(6), "contains");
+						CoreTests.check(cache.holds("five") && !cache.holds("six"), "holds");
+
+						// A position that already has a value keeps it.
+						cache.put(4, "other");
+						CoreTests.check("four".equals(cache.get(4)), "get 4 after second put");
+						CoreTests.checkEquals(0, cache.mEvicted.size(), "evicted");
+					}
+				}, new CoreTests.Test("PositionCache evicts the furthest position")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(3);
+						cache.put(10, "10");
+						cache.put(11, "11");
+						cache.put(12, "12");
+
+						// Stepping forward drops the position furthest behind.
+						cache.put(13, "13");
+						CoreTests.check(cache.mEvicted.size() == 1 && "10".equals(cache.mEvicted.get(0)), "evicted "
+								+ cache.mEvicted);
+						CoreTests.check(!cache.contains(10) && cache.contains(13), "after step forward");
+
+						// Stepping back drops the position furthest ahead.
+						cache.put(9, "9");
+						CoreTests.check(cache.mEvicted.size() == 2 && "13".equals(cache.mEvicted.get(1)), "evicted "
+								+ cache.mEvicted);
+						CoreTests.check(cache.contains(9) && cache.contains(11) && cache.contains(12), "after step back");
+					}
+				}, new CoreTests.Test("PositionCache.clear evicts everything")
+				{
+					@Override
+					protected void run()
+					{
+						RecordingCache cache = new RecordingCache(4);
+						cache.put(0, "0");
+						cache.put(1, "1");
+						cache.clear();
+
+						CoreTests.checkEquals(2, cache.mEvicted.size(), "evicted");
+						CoreTests.check(!cache.contains(0) && !cache.contains(1), "contains after clear");
+						CoreTests.check(!cache.holds("0"), "holds after clear");
+
+						// Cleared slots are empty, so filling them evicts nothing.
+						for (int i = 0; i < 4; i++)
+						{
+							cache.put(i + 100, "x");
+						}
+						CoreTests.checkEquals(2, cache.mEvicted.size(), "evicted after refill");
+					}
+				} };
+	}
+}
@@ -0,0 +1,151 @@
+package com.piczzamms.gallery.core;
+
+import java.util.ArrayList;
+
+/**
+ * Checks WorkQueue's order, cancellation by key and closing.
+ */
+public class WorkQueueTest
+{
+	static CoreTests.Test[] tests()
+	{
+		return new CoreTests.Test[] {
+				new CoreTests.Test("WorkQueue.take is first in, first out")
+				{
+					@Override
+					protected void run()
+					{
+						WorkQueue<Object, Integer> queue = new WorkQueue<Object, Integer>();
+						for (int i = 0; i < 5; i++)
+						{
+							queue.add(new Object(), i);
+						}
+						CoreTests.checkEquals(5, queue.size(), "size");
+						for (int i = 0; i < 5; i++)
+						{
+							CoreTests.checkEquals(i, queue.take(), "take");
+						}
+						CoreTests.checkEquals(0, queue.size(), "size after");
+					}
+				}, new CoreTests.Test("WorkQueue.cancel removes the first item with the same key")
+				{
+					@Override
+					protected void run()
+					{
+						WorkQueue<String, Integer> queue = new WorkQueue<String, Integer>();
+						String key = new String("a");
+						queue.add(new String("a"), 0);
+						queue.add(key, 1);
+						queue.add(key, 2);
+
+						// Keys are compared by identity, so an equal key cancels nothing.
+						CoreTests.check(queue.cancel(new String("a")) == null, "equal key");
+						CoreTests.checkEquals(1, queue.cancel(key), "first with key");
+						CoreTests.checkEquals(0, queue.take(), "take");
+						CoreTests.checkEquals(2, queue.take(), "take after cancel");
+						CoreTests.check(queue.cancel(key) == null, "nothing left");
+					}
+				}, new CoreTests.Test("WorkQueue.clear returns the waiting items in order")
+				{
+					@Override
+					protected void run()
+					{
+						WorkQueue<Object, Integer> queue = new WorkQueue<Object, Integer>();
+						for (int i = 0; i < 4; i++)
+						{
+							queue.add(new Object(), i);
+						}
+						ArrayList<Integer> items = queue.clear();
+						CoreTests.checkEquals(4, items.size(), "cleared");
+						for (int i = 0; i < 4; i++)
+						{
+							CoreTests.checkEquals(i, items.get(i), "cleared item");
+						}
+						CoreTests.checkEquals(0, queue.size(), "size after");
+						CoreTests.checkEquals(0, queue.clear().size(), "clear again");
+					}
+				}, new CoreTests.Test("WorkQueue.close wakes a waiting worker")
+				{
+					@Override
+					protected void run() throws Exception
+					{
+						final WorkQueue<Object, Integer> queue = new WorkQueue<Object, Integer>();
+						final Object[] result = new Object[] {
+							"not returned" };
+						Thread worker = new Thread()
+						{
+							@Override
+							public void run()
+							{
+								result[0] = queue.take();
+							}
+						};
+						worker.start();
+						// Give the worker time to block in take().
+						Thread.sleep(50);
+						queue.close();
+						worker.join(5000);
+
+						CoreTests.check(!worker.isAlive(), "worker still waiting");
+						CoreTests.check(result[0] == null, "take after close returned " + result[0]);
+						CoreTests.check(queue.isClosed(), "closed");
+
+						queue.add(new Object(), 7);
+						CoreTests.check(queue.take() == null, "closed queue handed out an item");
+						queue.open();
+						CoreTests.checkEquals(7, queue.take(), "take after open");
+					}
+				}, new CoreTests.Test("WorkQueue hands each item to exactly one worker")
+				{
+					@Override
+					protected void run() throws Exception
+					{
+						final WorkQueue<Object, Integer> queue = new WorkQueue<Object, Integer>();
+						final int items = 10000;
+						final int[] seen = new int[items];
+						Thread[] workers = new Thread[4];
+
+						for (int i = 0; i < workers.length; i++)
+						{
+							workers[i] = new Thread()
+							{
+								@Override
+								public void run()
+								{
+									Integer item;
+									while ((item = queue.take()) != null)
+									{
+										synchronized (seen)
+										{
+											seen[item]++;
+										}
+									}
+								}
+							};
+							workers[i].start();
+						}
+						for (int i = 0; i < items; i++)
+						{
+							queue.add(new Object(), i);
+						}
+						while (queue.size() > 0)
+						{
+							Thread.sleep(1);
+						}
+						// Every item has been taken; joining waits for the last ones to be counted.
+						queue.close();
+						for (Thread worker : workers)
+						{
+							worker.join(5000);
+						}
+						synchronized (seen)
+						{
+							for (int i = 0; i < items; i++)
+							{
+								CoreTests.checkEquals(1, seen[i], "item " + i);
+							}
+						}
+					}
+				} };
+	}
+}